@@ -0,0 +1,109 @@
+package social.nostr.signer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+
+/** BIP-173 bech32 without the 90 character limit, as used for npub/nsec and NIP-57 private zaps. */
+final class Bech32 {
+
+	private static final String CHARSET = "qpzry9x8gf2tvdw0s3jn54khce6mua7l";
+	private static final int[] GENERATOR = { 0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3 };
+
+	private Bech32() {
+	}
+
+	static String encode(String hrp, byte[] data) {
+		byte[] words = convertBits(data, 8, 5, true);
+		byte[] checksum = checksum(hrp, words);
+		StringBuilder builder = new StringBuilder(hrp.length() + 1 + words.length + 6);
+		builder.append(hrp).append('1');
+		for (byte word : words) {
+			builder.append(CHARSET.charAt(word));
+		}
+		for (byte word : checksum) {
+			builder.append(CHARSET.charAt(word));
+		}
+		return builder.toString();
+	}
+
+	/** Returns the data part of a bech32 string whose prefix is {@code hrp}. */
+	static byte[] decode(String hrp, String value) {
+		String lower = value.toLowerCase(Locale.ROOT);
+		int separator = lower.lastIndexOf('1');
+		if (separator < 1 || !lower.substring(0, separator).equals(hrp) || lower.length() - separator - 1 < 6) {
+			throw new IllegalArgumentException("Invalid bech32 string");
+		}
+		byte[] words = new byte[lower.length() - separator - 1];
+		for (int i = 0; i < words.length; i++) {
+			int word = CHARSET.indexOf(lower.charAt(separator + 1 + i));
+			if (word < 0) {
+				throw new IllegalArgumentException("Invalid bech32 character");
+			}
+			words[i] = (byte) word;
+		}
+		if (polymod(hrp, words) != 1) {
+			throw new IllegalArgumentException("Invalid bech32 checksum");
+		}
+		byte[] data = new byte[words.length - 6];
+		System.arraycopy(words, 0, data, 0, data.length);
+		return convertBits(data, 5, 8, false);
+	}
+
+	private static byte[] checksum(String hrp, byte[] words) {
+		byte[] padded = new byte[words.length + 6];
+		System.arraycopy(words, 0, padded, 0, words.length);
+		int mod = polymod(hrp, padded) ^ 1;
+		byte[] checksum = new byte[6];
+		for (int i = 0; i < 6; i++) {
+			checksum[i] = (byte) ((mod >>> (5 * (5 - i))) & 31);
+		}
+		return checksum;
+	}
+
+	private static int polymod(String hrp, byte[] words) {
+		int checksum = 1;
+		for (int i = 0; i < hrp.length(); i++) {
+			checksum = step(checksum, hrp.charAt(i) >> 5);
+		}
+		checksum = step(checksum, 0);
+		for (int i = 0; i < hrp.length(); i++) {
+			checksum = step(checksum, hrp.charAt(i) & 31);
+		}
+		for (byte word : words) {
+			checksum = step(checksum, word);
+		}
+		return checksum;
+	}
+
+	private static int step(int checksum, int value) {
+		int top = checksum >>> 25;
+		checksum = (checksum & 0x1ffffff) << 5 ^ value;
+		for (int i = 0; i < 5; i++) {
+			if (((top >>> i) & 1) != 0) {
+				checksum ^= GENERATOR[i];
+			}
+		}
+		return checksum;
+	}
+
+	private static byte[] convertBits(byte[] data, int from, int to, boolean pad) {
+		int accumulator = 0;
+		int bits = 0;
+		int mask = (1 << to) - 1;
+		ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * from / to + 1);
+		for (byte value : data) {
+			accumulator = ((accumulator << from) | (value & ((1 << from) - 1))) & ((1 << (from + to - 1)) - 1);
+			bits += from;
+			while (bits >= to) {
+				bits -= to;
+				output.write((accumulator >>> bits) & mask);
+			}
+		}
+		if (pad && bits > 0) {
+			output.write((accumulator << (to - bits)) & mask);
+		} else if (!pad && (bits >= from || ((accumulator << (to - bits)) & mask) != 0)) {
+			throw new IllegalArgumentException("Invalid bech32 padding");
+		}
+		return output.toByteArray();
+	}
+}
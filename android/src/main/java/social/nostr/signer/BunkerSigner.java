@@ -0,0 +1,694 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.util.Base64;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Signs through a NIP-46 remote signer ("bunker") over one persistent relay connection,
+ * selected with the pseudo package name {@link #PACKAGE_NAME}. Requests are pipelined: up to
+ * {@code maxInFlight} are outstanding at once and responses are matched back by id, so a
+ * batch costs about one relay round trip instead of one per item. The connection is opened on
+ * the first request and reopened after it drops; requests in flight when it drops fail.
+ */
+class BunkerSigner implements SignerBackend {
+
+	static final String PACKAGE_NAME = "bunker";
+
+	private static final int KIND = 24133;
+	private static final long SUBSCRIPTION_LOOKBACK_SECONDS = 10;
+
+	interface Callback {
+		void onResult(String result, String signedEventJson);
+
+		void onError(String message);
+	}
+
+	/**
+	 * Receives the URL a bunker asks the user to open before it answers a request. Only https
+	 * URLs with a host are passed on; the bunker is remote and anything else it sends is dropped.
+	 */
+	interface AuthListener {
+		void onAuthUrl(String url);
+	}
+
+	/** A parsed bunker://<remote-signer-pubkey>?relay=...&secret=... connection string. */
+	static class Target {
+		final String remotePubKey;
+		final String relay;
+		final String secret;
+
+		Target(String remotePubKey, String relay, String secret) {
+			this.remotePubKey = remotePubKey;
+			this.relay = relay;
+			this.secret = secret;
+		}
+
+		static Target parse(String url) {
+			if (url == null || !url.startsWith("bunker://")) {
+				throw new IllegalArgumentException("Not a bunker:// URL");
+			}
+			String rest = url.substring("bunker://".length());
+			int query = rest.indexOf('?');
+			String remotePubKey = query >= 0 ? rest.substring(0, query) : rest;
+			if (Hex.decode(remotePubKey).length != 32) {
+				throw new IllegalArgumentException("Invalid remote signer pubkey");
+			}
+			String relay = null;
+			String secret = null;
+			if (query >= 0) {
+				for (String parameter : rest.substring(query + 1).split("&")) {
+					int equals = parameter.indexOf('=');
+					if (equals < 0) {
+						continue;
+					}
+					String name = parameter.substring(0, equals);
+					String value = decode(parameter.substring(equals + 1));
+					// Only the first relay is used; one connection is kept open.
+					if ("relay".equals(name) && relay == null) {
+						relay = value;
+					} else if ("secret".equals(name)) {
+						secret = value;
+					}
+				}
+			}
+			if (relay == null) {
+				throw new IllegalArgumentException("The bunker URL has no relay");
+			}
+			return new Target(remotePubKey.toLowerCase(Locale.ROOT), relay, secret);
+		}
+
+		/** The connection string without the one-time secret, for persisting the session. */
+		String toUrl() {
+			try {
+				return "bunker://" + remotePubKey + "?relay=" + URLEncoder.encode(relay, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private static String decode(String value) {
+			try {
+				return URLDecoder.decode(value, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/** One outstanding request; {@link #await()} blocks until it is answered, fails or times out. */
+	static class Request {
+		final String id;
+		final String method;
+		final JSONArray params;
+		private final Callback callback;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private String eventId;
+		private long sentNanos;
+		private ScheduledFuture<?> timeout;
+		private String[] result;
+		private String error;
+
+		Request(String id, String method, JSONArray params, Callback callback) {
+			this.id = id;
+			this.method = method;
+			this.params = params;
+			this.callback = callback;
+		}
+
+		/** Returns {result, signed event JSON or null}, or throws with the bunker's error. */
+		String[] await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the bunker", e);
+			}
+			if (error != null) {
+				throw new IllegalStateException(error);
+			}
+			return result;
+		}
+	}
+
+	private final int maxInFlight;
+	private final int timeoutMs;
+	private final SignerMetrics metrics;
+	private final AuthListener authListener;
+	private final SecureRandom random = new SecureRandom();
+	private final ScheduledThreadPoolExecutor worker;
+	private final String idPrefix;
+	private final AtomicLong nextId = new AtomicLong();
+	private final ArrayDeque<Request> queued = new ArrayDeque<>();
+	private final Map<String, Request> inFlight = new HashMap<>();
+	private final Map<String, Request> byEventId = new HashMap<>();
+
+	private volatile String userNpub;
+
+	// Guarded by this.
+	private Target target;
+	private Secp256k1.KeyPair clientKey;
+	private byte[] conversationKey;
+	private RelaySocket socket;
+
+	BunkerSigner(int maxInFlight, int timeoutMs, SignerMetrics metrics, AuthListener authListener) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+		this.timeoutMs = Math.max(1, timeoutMs);
+		this.metrics = metrics;
+		this.authListener = authListener;
+		this.worker = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "NostrSigner-bunker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.worker.setRemoveOnCancelPolicy(true);
+		byte[] prefix = new byte[4];
+		random.nextBytes(prefix);
+		this.idPrefix = Hex.encode(prefix) + "-";
+	}
+
+	static boolean isAuthUrl(String url) {
+		if (url == null) {
+			return false;
+		}
+		try {
+			URI uri = new URI(url);
+			return "https".equalsIgnoreCase(uri.getScheme()) && uri.getHost() != null && !uri.getHost().isEmpty();
+		} catch (URISyntaxException e) {
+			return false;
+		}
+	}
+
+	/** Points the backend at a bunker with the given client key, e.g. a session restored at startup. */
+	void use(Target target, byte[] clientSecretKey, String userNpub) {
+		Secp256k1.KeyPair key = new Secp256k1.KeyPair(clientSecretKey);
+		byte[] conversation = Nip44.conversationKey(key, Hex.decode(target.remotePubKey));
+		List<Request> failed;
+		synchronized (this) {
+			failed = disconnect();
+			forget();
+			this.target = target;
+			this.clientKey = key;
+			this.conversationKey = conversation;
+			this.userNpub = userNpub;
+		}
+		fail(failed, "Switched to another bunker");
+	}
+
+	/**
+	 * Runs the NIP-46 connect handshake with a new client key, then asks for the user's public
+	 * key. Blocks until both are answered and returns the user's npub.
+	 */
+	String connect(Target target, byte[] clientSecretKey, String permissions) {
+		use(target, clientSecretKey, null);
+		JSONArray params = new JSONArray();
+		params.put(target.remotePubKey);
+		params.put(target.secret != null ? target.secret : "");
+		if (permissions != null) {
+			params.put(permissions);
+		}
+		String ack = send(new Request(nextId(), "connect", params, null)).await()[0];
+		if (!"ack".equals(ack) && (target.secret == null || !target.secret.equals(ack))) {
+			throw new IllegalStateException("Unexpected connect response from bunker: " + ack);
+		}
+		String npub = fetchPublicKey();
+		userNpub = npub;
+		return npub;
+	}
+
+	synchronized boolean isConfigured() {
+		return target != null;
+	}
+
+	/** Closes the relay connection and forgets the bunker and client key. */
+	void close() {
+		List<Request> failed;
+		synchronized (this) {
+			failed = disconnect();
+			forget();
+		}
+		fail(failed, "Disconnected from bunker");
+	}
+
+	void release() {
+		close();
+		worker.shutdownNow();
+	}
+
+	/**
+	 * Sends a NIP-55 style operation (the same {@code type} strings as {@link SignerRequest})
+	 * to the bunker without blocking. The callback, if any, runs on the relay reader thread.
+	 */
+	Request submit(String type, String content, String pubKey, Callback callback) {
+		String method;
+		JSONArray params = new JSONArray();
+		try {
+			switch (type) {
+				case "get_public_key":
+					method = "get_public_key";
+					break;
+				case "sign_event":
+					method = "sign_event";
+					params.put(content);
+					break;
+				case "nip04_encrypt":
+				case "nip04_decrypt":
+				case "nip44_encrypt":
+				case "nip44_decrypt":
+					method = type;
+					params.put(hexPubKey(pubKey));
+					params.put(content);
+					break;
+				case "decrypt_zap_event":
+					// NIP-46 has no zap method, but the "anon" tag is NIP-04 ciphertext in bech32 clothing.
+					JSONObject event = new JSONObject(content);
+					method = "nip04_decrypt";
+					params.put(event.getString("pubkey"));
+					params.put(zapCipherText(event));
+					break;
+				default:
+					throw new IllegalArgumentException("Unsupported type " + type);
+			}
+		} catch (JSONException | IllegalArgumentException e) {
+			Request request = new Request(nextId(), type, params, callback);
+			finish(request, null, e.getMessage());
+			return request;
+		}
+		return send(new Request(nextId(), method, params, callback));
+	}
+
+	/** Fails {@code request} as cancelled and frees its slot; a late response to it is ignored. */
+	void cancel(Request request) {
+		finish(request, null, PendingCalls.CANCELLED);
+	}
+
+	@Override
+	public String getPublicKey(Context context, String packageName) {
+		String npub = userNpub;
+		if (npub != null) {
+			return npub;
+		}
+		npub = fetchPublicKey();
+		userNpub = npub;
+		return npub;
+	}
+
+	@Override
+	public String[] signEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
+		return submit("sign_event", eventJson, null, null).await();
+	}
+
+	@Override
+	public String nip04Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
+		return submit("nip04_encrypt", plainText, recipientPubKey, null).await()[0];
+	}
+
+	@Override
+	public String nip04Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
+		return submit("nip04_decrypt", encryptedText, senderPubKey, null).await()[0];
+	}
+
+	@Override
+	public String nip44Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
+		return submit("nip44_encrypt", plainText, recipientPubKey, null).await()[0];
+	}
+
+	@Override
+	public String nip44Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
+		return submit("nip44_decrypt", encryptedText, senderPubKey, null).await()[0];
+	}
+
+	@Override
+	public String decryptZapEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
+		return submit("decrypt_zap_event", eventJson, null, null).await()[0];
+	}
+
+	private String fetchPublicKey() {
+		String hex = send(new Request(nextId(), "get_public_key", new JSONArray(), null)).await()[0];
+		return Bech32.encode("npub", Hex.decode(hex));
+	}
+
+	private String nextId() {
+		return idPrefix + nextId.incrementAndGet();
+	}
+
+	private Request send(Request request) {
+		boolean configured;
+		synchronized (this) {
+			configured = target != null;
+			if (configured) {
+				request.timeout = worker.schedule(() -> timedOut(request),
+						timeoutMs, TimeUnit.MILLISECONDS);
+				queued.add(request);
+			}
+		}
+		if (!configured) {
+			finish(request, null, "Not connected to a bunker. Call connectBunker first.");
+		} else {
+			worker.execute(this::pump);
+		}
+		return request;
+	}
+
+	// Runs on the worker thread, so only one connection is ever being opened: opens it if needed
+	// and sends queued requests while fewer than maxInFlight are outstanding.
+	private void pump() {
+		Target connectTo;
+		synchronized (this) {
+			if (queued.isEmpty() || target == null) {
+				return;
+			}
+			connectTo = socket == null ? target : null;
+		}
+		if (connectTo != null) {
+			RelaySocket opened;
+			try {
+				opened = open(connectTo);
+			} catch (IOException e) {
+				List<Request> failed;
+				synchronized (this) {
+					failed = new ArrayList<>(queued);
+				}
+				fail(failed, "Could not reach the bunker relay: " + e.getMessage());
+				return;
+			}
+			synchronized (this) {
+				if (target != connectTo) {
+					opened.close();
+					return;
+				}
+				socket = opened;
+			}
+		}
+		List<Request> sending = new ArrayList<>();
+		RelaySocket relay;
+		synchronized (this) {
+			while (inFlight.size() < maxInFlight && !queued.isEmpty()) {
+				Request request = queued.poll();
+				inFlight.put(request.id, request);
+				sending.add(request);
+			}
+			relay = socket;
+		}
+		for (Request request : sending) {
+			String message;
+			try {
+				message = new JSONArray().put("EVENT").put(requestEvent(request)).toString();
+			} catch (JSONException | RuntimeException e) {
+				finish(request, null, "Could not build the bunker request: " + e.getMessage());
+				continue;
+			}
+			synchronized (this) {
+				if (!inFlight.containsKey(request.id)) {
+					continue;
+				}
+				byEventId.put(request.eventId, request);
+				request.sentNanos = System.nanoTime();
+			}
+			try {
+				relay.send(message);
+			} catch (IOException e) {
+				onDisconnected(relay, e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private RelaySocket open(Target target) throws IOException {
+		String clientPubKey;
+		synchronized (this) {
+			clientPubKey = Hex.encode(clientKey.publicKey);
+		}
+		RelaySocket relay = RelaySocket.open(target.relay, timeoutMs, new RelaySocket.Listener() {
+			@Override
+			public void onMessage(RelaySocket socket, String message) {
+				BunkerSigner.this.onMessage(message);
+			}
+
+			@Override
+			public void onClosed(RelaySocket closed, String reason) {
+				onDisconnected(closed, reason);
+			}
+		});
+		byte[] subscription = new byte[8];
+		random.nextBytes(subscription);
+		try {
+			JSONObject filter = new JSONObject();
+			filter.put("kinds", new JSONArray().put(KIND));
+			filter.put("#p", new JSONArray().put(clientPubKey));
+			filter.put("since", System.currentTimeMillis() / 1000 - SUBSCRIPTION_LOOKBACK_SECONDS);
+			relay.send(new JSONArray().put("REQ").put(Hex.encode(subscription)).put(filter).toString());
+		} catch (JSONException | IOException e) {
+			relay.close();
+			throw e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+		return relay;
+	}
+
+	private JSONObject requestEvent(Request request) throws JSONException {
+		Secp256k1.KeyPair key;
+		byte[] conversation;
+		String remotePubKey;
+		synchronized (this) {
+			key = clientKey;
+			conversation = conversationKey;
+			remotePubKey = target != null ? target.remotePubKey : null;
+		}
+		if (key == null || conversation == null || remotePubKey == null) {
+			throw new IllegalStateException("Disconnected from bunker");
+		}
+		JSONObject body = new JSONObject();
+		body.put("id", request.id);
+		body.put("method", request.method);
+		body.put("params", request.params);
+		JSONObject event = new JSONObject();
+		event.put("pubkey", Hex.encode(key.publicKey));
+		event.put("created_at", System.currentTimeMillis() / 1000);
+		event.put("kind", KIND);
+		event.put("tags", new JSONArray().put(new JSONArray().put("p").put(remotePubKey)));
+		event.put("content", Nip44.encrypt(body.toString(), conversation));
+		byte[] id = Nip01.eventId(event);
+		byte[] auxRand = new byte[32];
+		random.nextBytes(auxRand);
+		event.put("id", Hex.encode(id));
+		event.put("sig", Hex.encode(Secp256k1.sign(id, key, auxRand)));
+		request.eventId = event.getString("id");
+		return event;
+	}
+
+	private void onMessage(String message) {
+		try {
+			JSONArray frame = new JSONArray(message);
+			String type = frame.getString(0);
+			if ("OK".equals(type) && !frame.optBoolean(2, true)) {
+				Request request;
+				synchronized (this) {
+					request = byEventId.get(frame.getString(1));
+				}
+				if (request != null) {
+					finish(request, null, "Relay rejected the request: " + frame.optString(3, ""));
+				}
+			} else if ("EVENT".equals(type) && frame.length() > 2) {
+				onResponse(frame.getJSONObject(2));
+			}
+		} catch (JSONException e) {
+			// Not a frame we understand; relays also send NOTICE and EOSE.
+		}
+	}
+
+	// The NIP-44 MAC already proves the response came from the bunker, so the event signature is not checked.
+	private void onResponse(JSONObject event) throws JSONException {
+		byte[] conversation;
+		Secp256k1.KeyPair key;
+		synchronized (this) {
+			if (target == null || !target.remotePubKey.equals(event.optString("pubkey")) || event.optInt("kind") != KIND) {
+				return;
+			}
+			conversation = conversationKey;
+			key = clientKey;
+		}
+		String content = event.getString("content");
+		String plainText;
+		try {
+			plainText = content.contains("?iv=")
+					? Nip04.decrypt(content, Secp256k1.sharedX(key, Hex.decode(event.getString("pubkey"))))
+					: Nip44.decrypt(content, conversation);
+		} catch (RuntimeException e) {
+			return;
+		}
+		JSONObject response = new JSONObject(plainText);
+		String id = response.optString("id", null);
+		Request request;
+		synchronized (this) {
+			request = id != null ? inFlight.get(id) : null;
+		}
+		if (request == null) {
+			return;
+		}
+		String result = response.optString("result", null);
+		String error = response.optString("error", null);
+		if ("auth_url".equals(result)) {
+			// The bunker wants the user to approve in a browser; give them a full timeout to do so.
+			synchronized (this) {
+				if (request.timeout != null) {
+					request.timeout.cancel(false);
+				}
+				request.timeout = worker.schedule(() -> timedOut(request),
+						timeoutMs, TimeUnit.MILLISECONDS);
+			}
+			if (authListener != null && isAuthUrl(error)) {
+				authListener.onAuthUrl(error);
+			}
+			return;
+		}
+		if (error != null && !error.isEmpty()) {
+			finish(request, null, error);
+		} else if (result == null) {
+			finish(request, null, "Empty response from bunker");
+		} else if ("sign_event".equals(request.method)) {
+			try {
+				finish(request, new String[] { new JSONObject(result).getString("sig"), result }, null);
+			} catch (JSONException e) {
+				finish(request, null, "Invalid signed event from bunker");
+			}
+		} else {
+			finish(request, new String[] { result, null }, null);
+		}
+	}
+
+	// A relay answers every EVENT with OK, so hearing nothing since the request went out means the
+	// connection is likely half open. It is dropped so the next request reconnects instead of waiting too.
+	private void timedOut(Request request) {
+		RelaySocket stale = null;
+		synchronized (this) {
+			if (request.sentNanos != 0 && inFlight.containsKey(request.id) && socket != null
+					&& socket.lastReceivedNanos() - request.sentNanos < 0) {
+				stale = socket;
+			}
+		}
+		finish(request, null, "Timed out waiting for the bunker");
+		if (stale != null) {
+			onDisconnected(stale, "No frame from the relay since the request was sent");
+		}
+	}
+
+	private void onDisconnected(RelaySocket closed, String reason) {
+		List<Request> failed;
+		synchronized (this) {
+			if (closed != socket) {
+				return;
+			}
+			socket = null;
+			failed = new ArrayList<>(inFlight.values());
+		}
+		closed.close();
+		fail(failed, "Lost the bunker relay connection: " + reason);
+	}
+
+	// Must be called while holding this. Returns the requests to fail once the lock is released.
+	private List<Request> disconnect() {
+		List<Request> failed = new ArrayList<>(inFlight.values());
+		failed.addAll(queued);
+		if (socket != null) {
+			socket.close();
+			socket = null;
+		}
+		return failed;
+	}
+
+	// Must be called while holding this.
+	private void forget() {
+		target = null;
+		clientKey = null;
+		userNpub = null;
+		if (conversationKey != null) {
+			Arrays.fill(conversationKey, (byte) 0);
+			conversationKey = null;
+		}
+	}
+
+	private void fail(List<Request> requests, String error) {
+		for (Request request : requests) {
+			finish(request, null, error);
+		}
+	}
+
+	private void finish(Request request, String[] result, String error) {
+		long sentNanos;
+		synchronized (this) {
+			if (request.done.getCount() == 0) {
+				return;
+			}
+			inFlight.remove(request.id);
+			queued.remove(request);
+			if (request.eventId != null) {
+				byEventId.remove(request.eventId);
+			}
+			if (request.timeout != null) {
+				request.timeout.cancel(false);
+			}
+			request.result = result;
+			request.error = error;
+			request.done.countDown();
+			sentNanos = request.sentNanos;
+		}
+		if (sentNanos != 0 && metrics != null) {
+			metrics.recordLatency(SignerMetrics.STAGE_BUNKER_ROUND_TRIP, System.nanoTime() - sentNanos);
+		}
+		if (request.callback != null) {
+			if (error != null) {
+				request.callback.onError(error);
+			} else {
+				request.callback.onResult(result[0], result[1]);
+			}
+		}
+		if (!worker.isShutdown()) {
+			worker.execute(this::pump);
+		}
+	}
+
+	private static String hexPubKey(String pubKey) {
+		if (pubKey == null) {
+			throw new IllegalArgumentException("Missing pubKey");
+		}
+		return pubKey.startsWith("npub1") ? Hex.encode(Bech32.decode("npub", pubKey)) : pubKey;
+	}
+
+	private static String zapCipherText(JSONObject event) throws JSONException {
+		JSONArray tags = event.getJSONArray("tags");
+		for (int i = 0; i < tags.length(); i++) {
+			JSONArray tag = tags.getJSONArray(i);
+			if (tag.length() > 1 && "anon".equals(tag.getString(0))) {
+				String[] parts = tag.getString(1).split("_");
+				if (parts.length == 2) {
+					return Base64.encodeToString(Bech32.decode("pzap", parts[0]), Base64.NO_WRAP) + "?iv="
+							+ Base64.encodeToString(Bech32.decode("iv", parts[1]), Base64.NO_WRAP);
+				}
+			}
+		}
+		throw new IllegalArgumentException("Not a private zap");
+	}
+}
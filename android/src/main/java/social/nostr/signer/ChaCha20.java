@@ -0,0 +1,72 @@
+package social.nostr.signer;
+
+/** RFC 8439 ChaCha20 stream cipher. javax.crypto only provides it from API 28. */
+final class ChaCha20 {
+
+	private ChaCha20() {
+	}
+
+	/** XORs {@code data} in place with the keystream for a 32-byte key and 12-byte nonce. */
+	static void xor(byte[] key, byte[] nonce, int counter, byte[] data, int offset, int length) {
+		xor(key, 0, nonce, 0, counter, data, offset, length);
+	}
+
+	static void xor(byte[] key, int keyOffset, byte[] nonce, int nonceOffset, int counter, byte[] data, int offset,
+			int length) {
+		int[] state = new int[16];
+		state[0] = 0x61707865;
+		state[1] = 0x3320646e;
+		state[2] = 0x79622d32;
+		state[3] = 0x6b206574;
+		for (int i = 0; i < 8; i++) {
+			state[4 + i] = littleEndian(key, keyOffset + i * 4);
+		}
+		state[12] = counter;
+		for (int i = 0; i < 3; i++) {
+			state[13 + i] = littleEndian(nonce, nonceOffset + i * 4);
+		}
+		int[] working = new int[16];
+		byte[] block = new byte[64];
+		for (int position = 0; position < length; position += 64) {
+			System.arraycopy(state, 0, working, 0, 16);
+			for (int round = 0; round < 10; round++) {
+				quarterRound(working, 0, 4, 8, 12);
+				quarterRound(working, 1, 5, 9, 13);
+				quarterRound(working, 2, 6, 10, 14);
+				quarterRound(working, 3, 7, 11, 15);
+				quarterRound(working, 0, 5, 10, 15);
+				quarterRound(working, 1, 6, 11, 12);
+				quarterRound(working, 2, 7, 8, 13);
+				quarterRound(working, 3, 4, 9, 14);
+			}
+			for (int i = 0; i < 16; i++) {
+				int word = working[i] + state[i];
+				block[i * 4] = (byte) word;
+				block[i * 4 + 1] = (byte) (word >>> 8);
+				block[i * 4 + 2] = (byte) (word >>> 16);
+				block[i * 4 + 3] = (byte) (word >>> 24);
+			}
+			int count = Math.min(64, length - position);
+			for (int i = 0; i < count; i++) {
+				data[offset + position + i] ^= block[i];
+			}
+			state[12]++;
+		}
+	}
+
+	private static void quarterRound(int[] x, int a, int b, int c, int d) {
+		x[a] += x[b];
+		x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+		x[c] += x[d];
+		x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+		x[a] += x[b];
+		x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+		x[c] += x[d];
+		x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+	}
+
+	private static int littleEndian(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+				| (bytes[offset + 3] & 0xff) << 24;
+	}
+}
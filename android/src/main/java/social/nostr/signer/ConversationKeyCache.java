@@ -0,0 +1,94 @@
+package social.nostr.signer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of ECDH-derived keys (NIP-44 conversation keys, NIP-04 shared secrets), keyed by
+ * the user's npub and the counterparty pubkey. Keys are zeroed when they are evicted, removed
+ * or cleared; callers get a copy and should zero it once done.
+ */
+class ConversationKeyCache {
+
+	private final int maxEntries;
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	ConversationKeyCache(int maxEntries) {
+		this.maxEntries = Math.max(0, maxEntries);
+	}
+
+	static String key(String kind, String npub, String counterparty) {
+		return npub + '|' + counterparty + '|' + kind;
+	}
+
+	synchronized byte[] get(String key) {
+		byte[] value = entries.get(key);
+		if (value == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return value.clone();
+	}
+
+	synchronized void put(String key, byte[] value) {
+		if (maxEntries == 0) {
+			return;
+		}
+		byte[] previous = entries.put(key, value.clone());
+		if (previous != null) {
+			Arrays.fill(previous, (byte) 0);
+		}
+		Iterator<byte[]> iterator = entries.values().iterator();
+		while (entries.size() > maxEntries && iterator.hasNext()) {
+			Arrays.fill(iterator.next(), (byte) 0);
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/** Removes the keys derived for the given user. */
+	synchronized void remove(String npub) {
+		String prefix = npub + '|';
+		Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, byte[]> entry = iterator.next();
+			if (entry.getKey().startsWith(prefix)) {
+				Arrays.fill(entry.getValue(), (byte) 0);
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		for (byte[] value : entries.values()) {
+			Arrays.fill(value, (byte) 0);
+		}
+		entries.clear();
+	}
+
+	synchronized Stats stats() {
+		return new Stats(entries.size(), maxEntries, hits, misses, evictions);
+	}
+
+	static class Stats {
+		final int entries;
+		final int maxEntries;
+		final long hits;
+		final long misses;
+		final long evictions;
+
+		Stats(int entries, int maxEntries, long hits, long misses, long evictions) {
+			this.entries = entries;
+			this.maxEntries = maxEntries;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+		}
+	}
+}
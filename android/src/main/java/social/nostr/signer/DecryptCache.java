@@ -0,0 +1,106 @@
+package social.nostr.signer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of decrypted payloads, bounded by an estimate of the bytes held.
+ * Entries are keyed by signer package, current user, counterparty and the SHA-256 of the
+ * ciphertext, so the ciphertext itself is never retained.
+ */
+class DecryptCache {
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	DecryptCache(long maxBytes) {
+		this.maxBytes = Math.max(0, maxBytes);
+	}
+
+	boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	String key(String method, String packageName, String npub, String counterparty, String cipherText) {
+		return method + '|' + packageName + '|' + npub + '|' + counterparty + '|' + Digests.sha256Hex(cipherText);
+	}
+
+	synchronized String get(String key) {
+		String value = entries.get(key);
+		if (value != null) {
+			hits++;
+		} else {
+			misses++;
+		}
+		return value;
+	}
+
+	synchronized void put(String key, String value) {
+		long size = sizeOf(key, value);
+		if (size > maxBytes) {
+			return;
+		}
+		String previous = entries.put(key, value);
+		if (previous != null) {
+			bytes -= sizeOf(key, previous);
+		}
+		bytes += size;
+		Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<String, String> eldest = iterator.next();
+			bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	/** Drops the entries of one account, e.g. when it logs out. */
+	synchronized void removeAccount(String npub) {
+		String part = '|' + npub + '|';
+		Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, String> entry = iterator.next();
+			if (entry.getKey().contains(part)) {
+				bytes -= sizeOf(entry.getKey(), entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	synchronized Stats stats() {
+		return new Stats(entries.size(), bytes, maxBytes, hits, misses, evictions);
+	}
+
+	// Java strings are UTF-16, so two bytes per char plus a rough per-entry overhead.
+	private static long sizeOf(String key, String value) {
+		return 2L * (key.length() + value.length()) + 64;
+	}
+
+	static class Stats {
+		final int entries;
+		final long bytes;
+		final long maxBytes;
+		final long hits;
+		final long misses;
+		final long evictions;
+
+		Stats(int entries, long bytes, long maxBytes, long hits, long misses, long evictions) {
+			this.entries = entries;
+			this.bytes = bytes;
+			this.maxBytes = maxBytes;
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+		}
+	}
+}
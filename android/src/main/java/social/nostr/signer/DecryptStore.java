@@ -0,0 +1,489 @@
+package social.nostr.signer;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decrypted NIP-04, NIP-44 and zap payloads kept on disk across restarts, by event id, so a
+ * cold start does not decrypt the same inbox through the signer again. Like the keys of
+ * {@link DecryptCache}, each record also holds the counterparty and the SHA-256 of the
+ * ciphertext, and is only returned for a lookup that matches both, so a caller cannot read a
+ * stored plaintext by naming a known event id with some other payload. Each account has its
+ * own append-only file of AES-GCM records under a random data key, which is itself stored
+ * wrapped by the Android Keystore key of {@link LocalKeyStore}. Only the ids and file offsets
+ * are held in memory. A file that outgrows {@code maxBytes} is compacted to its newest
+ * records; one that cannot be decrypted any more, e.g. after the Keystore key was lost, is
+ * dropped.
+ */
+class DecryptStore {
+
+	interface KeySource {
+		SecretKey key() throws GeneralSecurityException;
+	}
+
+	private static final String DIRECTORY = "NostrSignerPluginDecryptStore";
+	private static final String KEY_PREFS_NAME = "NostrSignerPluginDecryptStoreKey";
+	private static final String DATA_KEY_NAME = "data";
+	// Part of the associated data, so files in an older record layout fail to decrypt and are started over.
+	private static final String FORMAT = "2|";
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+		@Override
+		protected Cipher initialValue() {
+			try {
+				return Cipher.getInstance(TRANSFORMATION);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private final File directory;
+	private final long maxBytes;
+	private final KeySource keySource;
+	private final Map<String, Partition> partitions = new HashMap<>();
+	private SecretKey dataKey;
+	private boolean keyFailed;
+	private long hits = 0;
+	private long misses = 0;
+	private long compactions = 0;
+
+	DecryptStore(File directory, long maxBytes, KeySource keySource) {
+		this.directory = directory;
+		this.maxBytes = Math.max(0, maxBytes);
+		this.keySource = keySource;
+	}
+
+	/**
+	 * A store in the app's files directory, with its data key wrapped by the Keystore. If the
+	 * wrapped key cannot be read, e.g. because app data was restored on another device, a new
+	 * one is made and the old files are dropped as they fail to decrypt.
+	 */
+	static DecryptStore create(Context context, long maxBytes) {
+		LocalKeyStore keys = new LocalKeyStore(context, KEY_PREFS_NAME);
+		return new DecryptStore(new File(context.getFilesDir(), DIRECTORY), LocalKeyStore.isSupported() ? maxBytes : 0, () -> {
+			byte[] key;
+			try {
+				key = keys.load(DATA_KEY_NAME);
+			} catch (GeneralSecurityException e) {
+				key = null;
+			}
+			if (key == null) {
+				key = new byte[32];
+				RANDOM.nextBytes(key);
+				keys.save(DATA_KEY_NAME, key);
+			}
+			return new SecretKeySpec(key, "AES");
+		});
+	}
+
+	boolean isEnabled() {
+		return maxBytes > 0;
+	}
+
+	/** What a record is bound to besides its event id: the counterparty and the hash of the ciphertext. */
+	static String binding(String counterparty, String cipherText) {
+		return (counterparty != null ? counterparty : "") + '|' + Digests.sha256Hex(cipherText);
+	}
+
+	/** The stored result of {@code method} for the event, or null if none was stored for this counterparty and ciphertext. */
+	String get(String npub, String method, String eventId, String counterparty, String cipherText) {
+		Partition partition = partition(npub);
+		String[] record = partition != null ? partition.get(eventId) : null;
+		String value = record != null && record[0].equals(method) && record[1].equals(binding(counterparty, cipherText))
+				? record[2] : null;
+		synchronized (this) {
+			if (value != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Looks up {event id, counterparty, ciphertext} triples. Returns {method, result} for each,
+	 * or null for those that are not stored for that counterparty and ciphertext.
+	 */
+	List<String[]> getAll(String npub, List<String[]> lookups) {
+		Partition partition = partition(npub);
+		List<String[]> results = new ArrayList<>(lookups.size());
+		int found = 0;
+		for (String[] lookup : lookups) {
+			String[] record = partition != null && lookup[0] != null && lookup[2] != null ? partition.get(lookup[0]) : null;
+			if (record != null && record[1].equals(binding(lookup[1], lookup[2]))) {
+				results.add(new String[] { record[0], record[2] });
+				found++;
+			} else {
+				results.add(null);
+			}
+		}
+		synchronized (this) {
+			hits += found;
+			misses += lookups.size() - found;
+		}
+		return results;
+	}
+
+	void put(String npub, String method, String eventId, String counterparty, String cipherText, String result) {
+		Partition partition = partition(npub);
+		if (partition != null) {
+			partition.put(method, eventId, binding(counterparty, cipherText), result);
+		}
+	}
+
+	void removeAccount(String npub) {
+		Partition partition;
+		synchronized (this) {
+			partition = partitions.remove(npub);
+		}
+		if (partition != null) {
+			partition.delete();
+		} else {
+			new Partition(npub).delete();
+		}
+	}
+
+	void clear() {
+		List<Partition> removed;
+		synchronized (this) {
+			removed = new ArrayList<>(partitions.values());
+			partitions.clear();
+		}
+		for (Partition partition : removed) {
+			partition.delete();
+		}
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+
+	void release() {
+		List<Partition> open;
+		synchronized (this) {
+			open = new ArrayList<>(partitions.values());
+			partitions.clear();
+		}
+		for (Partition partition : open) {
+			partition.close();
+		}
+	}
+
+	Stats stats() {
+		List<Partition> open;
+		synchronized (this) {
+			open = new ArrayList<>(partitions.values());
+		}
+		int entries = 0;
+		long bytes = 0;
+		for (Partition partition : open) {
+			synchronized (partition) {
+				entries += partition.index.size();
+				bytes += partition.length;
+			}
+		}
+		synchronized (this) {
+			return new Stats(entries, bytes, maxBytes, hits, misses, compactions);
+		}
+	}
+
+	// Partitions are loaded on first use, outside the store's lock so one account's file does not hold up the others.
+	private Partition partition(String npub) {
+		if (maxBytes == 0 || npub == null) {
+			return null;
+		}
+		Partition partition;
+		synchronized (this) {
+			if (dataKey == null && !keyFailed) {
+				try {
+					dataKey = keySource.key();
+				} catch (GeneralSecurityException | RuntimeException e) {
+					keyFailed = true;
+				}
+			}
+			if (dataKey == null) {
+				return null;
+			}
+			partition = partitions.get(npub);
+			if (partition == null) {
+				partition = new Partition(npub);
+				partitions.put(npub, partition);
+			}
+		}
+		return partition.open(dataKey) ? partition : null;
+	}
+
+	private synchronized void compacted() {
+		compactions++;
+	}
+
+	private static class Record {
+		final String method;
+		final long offset;
+		final int length;
+
+		Record(String method, long offset, int length) {
+			this.method = method;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * One account's file: records of a 4-byte length, then the IV and the AES-GCM ciphertext of
+	 * {method length, method, id length, id, binding length, binding, result}, with the format and
+	 * npub as associated data.
+	 */
+	private class Partition {
+		final File file;
+		final byte[] associatedData;
+		final LinkedHashMap<String, Record> index = new LinkedHashMap<>();
+		RandomAccessFile raf;
+		SecretKey key;
+		long length;
+		boolean failed;
+
+		Partition(String npub) {
+			// Hashed, so the file name neither shows the account nor depends on what JS passed as npub.
+			this.file = new File(directory, Digests.sha256Hex(npub));
+			this.associatedData = (FORMAT + npub).getBytes(StandardCharsets.UTF_8);
+		}
+
+		synchronized boolean open(SecretKey key) {
+			if (raf != null || failed) {
+				return raf != null;
+			}
+			this.key = key;
+			try {
+				directory.mkdirs();
+				raf = new RandomAccessFile(file, "rw");
+				load();
+				return true;
+			} catch (IOException e) {
+				close();
+				failed = true;
+				return false;
+			}
+		}
+
+		// Reads the ids of all records; a torn record at the end is cut off, an undecryptable file is started over.
+		private void load() throws IOException {
+			long fileLength = raf.length();
+			long position = 0;
+			while (position + 4 <= fileLength) {
+				raf.seek(position);
+				int recordLength = raf.readInt();
+				if (recordLength <= IV_LENGTH || position + 4 + recordLength > fileLength) {
+					break;
+				}
+				byte[] blob = new byte[recordLength];
+				raf.readFully(blob);
+				String[] record;
+				try {
+					record = decrypt(blob, false);
+				} catch (GeneralSecurityException e) {
+					index.clear();
+					position = 0;
+					break;
+				}
+				index.remove(record[1]);
+				index.put(record[1], new Record(record[0], position + 4, recordLength));
+				position += 4 + recordLength;
+			}
+			raf.setLength(position);
+			length = position;
+		}
+
+		// Returns {method, binding, result}.
+		synchronized String[] get(String eventId) {
+			Record record = raf != null ? index.get(eventId) : null;
+			if (record == null) {
+				return null;
+			}
+			try {
+				byte[] blob = new byte[record.length];
+				raf.seek(record.offset);
+				raf.readFully(blob);
+				String[] decrypted = decrypt(blob, true);
+				return new String[] { decrypted[0], decrypted[2], decrypted[3] };
+			} catch (IOException | GeneralSecurityException e) {
+				index.remove(eventId);
+				return null;
+			}
+		}
+
+		synchronized void put(String method, String eventId, String binding, String result) {
+			if (raf == null) {
+				return;
+			}
+			try {
+				byte[] blob = encrypt(method, eventId, binding, result);
+				// Larger records would crowd out most of the others at the next compaction.
+				if (4L + blob.length > maxBytes / 4) {
+					return;
+				}
+				raf.seek(length);
+				raf.writeInt(blob.length);
+				raf.write(blob);
+				index.remove(eventId);
+				index.put(eventId, new Record(method, length + 4, blob.length));
+				length += 4 + blob.length;
+				if (length > maxBytes) {
+					compact();
+				}
+			} catch (IOException | GeneralSecurityException e) {
+				// Not stored; the result is decrypted through the signer again next time.
+			}
+		}
+
+		// Rewrites the newest records that fit in three quarters of maxBytes, copying their encrypted bytes as they are.
+		private void compact() throws IOException {
+			List<Map.Entry<String, Record>> records = new ArrayList<>(index.entrySet());
+			long kept = 0;
+			int first = records.size();
+			while (first > 0 && kept + 4 + records.get(first - 1).getValue().length <= maxBytes * 3 / 4) {
+				first--;
+				kept += 4 + records.get(first).getValue().length;
+			}
+			File compactedFile = new File(directory, file.getName() + ".compact");
+			LinkedHashMap<String, Record> compactedIndex = new LinkedHashMap<>();
+			try (RandomAccessFile out = new RandomAccessFile(compactedFile, "rw")) {
+				out.setLength(0);
+				long position = 0;
+				for (int i = first; i < records.size(); i++) {
+					Record record = records.get(i).getValue();
+					byte[] blob = new byte[record.length];
+					raf.seek(record.offset);
+					raf.readFully(blob);
+					out.writeInt(blob.length);
+					out.write(blob);
+					compactedIndex.put(records.get(i).getKey(), new Record(record.method, position + 4, blob.length));
+					position += 4 + blob.length;
+				}
+				out.getFD().sync();
+			}
+			raf.close();
+			boolean replaced = compactedFile.renameTo(file);
+			raf = new RandomAccessFile(file, "rw");
+			if (!replaced) {
+				compactedFile.delete();
+				throw new IOException("Could not replace " + file);
+			}
+			index.clear();
+			index.putAll(compactedIndex);
+			length = kept;
+			compacted();
+		}
+
+		synchronized void close() {
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+					// Nothing left to write.
+				}
+				raf = null;
+			}
+			index.clear();
+			length = 0;
+		}
+
+		synchronized void delete() {
+			close();
+			failed = true;
+			file.delete();
+		}
+
+		private byte[] encrypt(String method, String eventId, String binding, String result) throws GeneralSecurityException {
+			byte[] methodBytes = method.getBytes(StandardCharsets.UTF_8);
+			byte[] idBytes = eventId.getBytes(StandardCharsets.UTF_8);
+			byte[] bindingBytes = binding.getBytes(StandardCharsets.UTF_8);
+			byte[] resultBytes = result.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer plaintext = ByteBuffer.allocate(1 + methodBytes.length + 2 + idBytes.length + 2 + bindingBytes.length
+					+ resultBytes.length);
+			plaintext.put((byte) methodBytes.length).put(methodBytes);
+			plaintext.putShort((short) idBytes.length).put(idBytes);
+			plaintext.putShort((short) bindingBytes.length).put(bindingBytes);
+			plaintext.put(resultBytes);
+			byte[] iv = new byte[IV_LENGTH];
+			RANDOM.nextBytes(iv);
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+			cipher.updateAAD(associatedData);
+			byte[] blob = new byte[IV_LENGTH + cipher.getOutputSize(plaintext.capacity())];
+			System.arraycopy(iv, 0, blob, 0, IV_LENGTH);
+			cipher.doFinal(plaintext.array(), 0, plaintext.capacity(), blob, IV_LENGTH);
+			return blob;
+		}
+
+		// Returns {method, event id, binding, result}; the binding and result are only decoded if asked for.
+		private String[] decrypt(byte[] blob, boolean withResult) throws GeneralSecurityException {
+			Cipher cipher = CIPHER.get();
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, blob, 0, IV_LENGTH));
+			cipher.updateAAD(associatedData);
+			byte[] plaintext = cipher.doFinal(blob, IV_LENGTH, blob.length - IV_LENGTH);
+			try {
+				ByteBuffer buffer = ByteBuffer.wrap(plaintext);
+				int methodLength = buffer.get() & 0xff;
+				String method = new String(plaintext, buffer.position(), methodLength, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + methodLength);
+				int idLength = buffer.getShort() & 0xffff;
+				String eventId = new String(plaintext, buffer.position(), idLength, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + idLength);
+				if (!withResult) {
+					return new String[] { method, eventId, null, null };
+				}
+				int bindingLength = buffer.getShort() & 0xffff;
+				String binding = new String(plaintext, buffer.position(), bindingLength, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + bindingLength);
+				String result = new String(plaintext, buffer.position(), buffer.remaining(), StandardCharsets.UTF_8);
+				return new String[] { method, eventId, binding, result };
+			} catch (RuntimeException e) {
+				throw new GeneralSecurityException("Malformed record", e);
+			} finally {
+				Arrays.fill(plaintext, (byte) 0);
+			}
+		}
+	}
+
+	static class Stats {
+		final int entries;
+		final long bytes;
+		final long maxBytes;
+		final long hits;
+		final long misses;
+		final long compactions;
+
+		Stats(int entries, long bytes, long maxBytes, long hits, long misses, long compactions) {
+			this.entries = entries;
+			this.bytes = bytes;
+			this.maxBytes = maxBytes;
+			this.hits = hits;
+			this.misses = misses;
+			this.compactions = compactions;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package social.nostr.signer;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks events' ids and BIP-340 signatures off the plugin thread. A batch is split into one
+ * chunk per worker so all cores verify at once, and the results come back in input order once
+ * every chunk is done. Events are either JSON objects or the JSON string a signer returned.
+ */
+class EventVerifier {
+
+	interface Callback {
+		void onResult(JSObject[] results);
+	}
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final ThreadPoolExecutor pool;
+	private final int parallelism;
+
+	EventVerifier(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		this.pool = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = new Thread(runnable, "NostrSigner-verify");
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	void verify(List<Object> events, Callback callback) {
+		JSObject[] results = new JSObject[events.size()];
+		if (results.length == 0) {
+			callback.onResult(results);
+			return;
+		}
+		int chunks = Math.min(parallelism, results.length);
+		int chunkSize = (results.length + chunks - 1) / chunks;
+		AtomicInteger remaining = new AtomicInteger((results.length + chunkSize - 1) / chunkSize);
+		for (int start = 0; start < results.length; start += chunkSize) {
+			int from = start;
+			int to = Math.min(results.length, start + chunkSize);
+			pool.execute(() -> {
+				try {
+					for (int i = from; i < to; i++) {
+						results[i] = verify(events.get(i));
+					}
+				} finally {
+					// Counted down even if a chunk fails, so the batch always resolves.
+					if (remaining.decrementAndGet() == 0) {
+						callback.onResult(results);
+					}
+				}
+			});
+		}
+	}
+
+	void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/** Returns {@code {id, valid}}, with an {@code error} saying why an event is not valid. */
+	static JSObject verify(Object event) {
+		JSObject ret = new JSObject();
+		String error;
+		try {
+			JSONObject json = event instanceof JSONObject ? (JSONObject) event : new JSONObject(String.valueOf(event));
+			String id = json.optString("id", null);
+			ret.put("id", id);
+			byte[] computed = Nip01.eventId(json);
+			if (id == null || !Arrays.equals(computed, Hex.decode(id))) {
+				error = "Invalid id";
+			} else if (!Secp256k1.verify(computed, Hex.decode(json.getString("pubkey")), Hex.decode(json.getString("sig")))) {
+				error = "Invalid signature";
+			} else {
+				error = null;
+			}
+		} catch (JSONException | RuntimeException e) {
+			// Includes e.g. a ClassCastException from an odd tags shape.
+			error = "Malformed event";
+		}
+		ret.put("valid", error == null);
+		if (error != null) {
+			ret.put("error", error);
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,34 @@
+package social.nostr.signer;
+
+final class Hex {
+
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+	private Hex() {
+	}
+
+	static String encode(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	static byte[] decode(String hex) {
+		if (hex.length() % 2 != 0) {
+			throw new IllegalArgumentException("Odd length hex string");
+		}
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int high = Character.digit(hex.charAt(i * 2), 16);
+			int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (high < 0 || low < 0) {
+				throw new IllegalArgumentException("Invalid hex string");
+			}
+			bytes[i] = (byte) ((high << 4) | low);
+		}
+		return bytes;
+	}
+}
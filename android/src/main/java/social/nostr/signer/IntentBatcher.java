@@ -0,0 +1,331 @@
+package social.nostr.signer;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.getcapacitor.PluginCall;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces nostrsigner: intent fallbacks. Requests for the same signer that arrive within
+ * {@code windowMs} of each other are sent together as NIP-55 multi-intents, so the user
+ * approves them on one screen, and the signer's "results" array is fanned back out by id.
+ * Only one signer screen is up at a time, across all signers, because Capacitor hands an
+ * activity result to the call that launched an activity last. Requests arriving meanwhile form
+ * the next batch, and other launches such as getPublicKey's wait their turn through
+ * {@link #launchAlone}.
+ */
+class IntentBatcher {
+
+	interface Callback {
+		void onResult(String result, String signedEventJson);
+
+		void onError(String message);
+	}
+
+	interface Launcher {
+		void launch(PluginCall carrier, List<Intent> intents);
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final long windowMs;
+	private final Launcher launcher;
+	private final Map<String, List<Pending>> queued = new LinkedHashMap<>();
+	private final Map<String, Map<String, Pending>> inFlight = new HashMap<>();
+	private final Map<String, String> carrierPackages = new HashMap<>();
+	private final Map<String, Long> launchTimes = new HashMap<>();
+	private final ArrayDeque<Alone> waitingAlone = new ArrayDeque<>();
+	private String aloneOwner;
+	private final SignerMetrics metrics;
+
+	IntentBatcher(long windowMs, SignerMetrics metrics, Launcher launcher) {
+		this.windowMs = Math.max(0, windowMs);
+		this.metrics = metrics;
+		this.launcher = launcher;
+	}
+
+	/**
+	 * Queues a request. {@code owner} is the PluginCall the request belongs to; the owner of
+	 * the first request in a batch carries the activity result for the whole batch.
+	 */
+	synchronized void enqueue(PluginCall owner, SignerRequest request, Callback callback) {
+		List<Pending> pending = queued.get(request.packageName);
+		if (pending == null) {
+			pending = new ArrayList<>();
+			queued.put(request.packageName, pending);
+		}
+		pending.add(new Pending(owner, request, callback));
+		if (pending.size() == 1) {
+			handler.postDelayed(() -> flush(request.packageName), windowMs);
+		}
+	}
+
+	/**
+	 * Runs {@code launch}, which starts an activity for {@code owner} outside of any batch, once
+	 * no signer screen is up. Like batches, it runs on the main thread, so every activity launch
+	 * happens on one thread. {@link #release} must be called with the owner when its result arrives.
+	 */
+	void launchAlone(PluginCall owner, Runnable launch) {
+		Alone alone = new Alone(owner, launch);
+		synchronized (this) {
+			if (!isIdle()) {
+				waitingAlone.add(alone);
+				return;
+			}
+			aloneOwner = owner.getCallbackId();
+		}
+		handler.post(() -> run(alone));
+	}
+
+	void release(PluginCall owner) {
+		synchronized (this) {
+			if (!owner.getCallbackId().equals(aloneOwner)) {
+				return;
+			}
+			aloneOwner = null;
+		}
+		handler.post(this::launchNext);
+	}
+
+	void onActivityResult(PluginCall carrier, int resultCode, Intent data) {
+		Map<String, Pending> batch;
+		String packageName;
+		Long launched;
+		synchronized (this) {
+			packageName = carrierPackages.remove(carrier.getCallbackId());
+			batch = packageName != null ? inFlight.remove(packageName) : null;
+			launched = packageName != null ? launchTimes.remove(packageName) : null;
+		}
+		if (batch == null) {
+			carrier.reject("No pending signer request");
+			return;
+		}
+		if (launched != null) {
+			metrics.recordLatency(SignerMetrics.STAGE_INTENT_ROUND_TRIP, System.nanoTime() - launched);
+		}
+		if (resultCode != Activity.RESULT_CANCELED && data != null) {
+			String resultsJson = data.getStringExtra("results");
+			if (resultsJson != null) {
+				try {
+					JSONArray results = new JSONArray(resultsJson);
+					for (int i = 0; i < results.length(); i++) {
+						JSONObject result = results.getJSONObject(i);
+						complete(batch, result.optString("id", null), result.optString("result", null),
+								result.optString("event", null));
+					}
+				} catch (JSONException e) {
+					// Fall through; whatever was not matched is rejected below.
+				}
+			} else {
+				complete(batch, data.getStringExtra("id"), data.getStringExtra("signature"), data.getStringExtra("event"));
+			}
+		}
+		String error = resultCode == Activity.RESULT_CANCELED ? "Activity Cancelled" : "No result from signer";
+		for (Pending pending : batch.values()) {
+			pending.callback.onError(error);
+		}
+		handler.post(this::launchNext);
+	}
+
+	void cancelAll(String message) {
+		List<Pending> cancelled = new ArrayList<>();
+		List<Alone> waiting;
+		synchronized (this) {
+			handler.removeCallbacksAndMessages(null);
+			for (List<Pending> pending : queued.values()) {
+				cancelled.addAll(pending);
+			}
+			for (Map<String, Pending> batch : inFlight.values()) {
+				cancelled.addAll(batch.values());
+			}
+			queued.clear();
+			inFlight.clear();
+			carrierPackages.clear();
+			launchTimes.clear();
+			waiting = new ArrayList<>(waitingAlone);
+			waitingAlone.clear();
+			aloneOwner = null;
+		}
+		for (Pending pending : cancelled) {
+			pending.callback.onError(message);
+		}
+		for (Alone alone : waiting) {
+			alone.owner.reject(message);
+		}
+	}
+
+	/**
+	 * Drops the requests owned by {@code owner} without calling back, because the call was
+	 * cancelled or timed out. A batch on screen that has no requests left no longer holds back
+	 * the next one; a late result for it is ignored.
+	 */
+	void cancel(PluginCall owner) {
+		List<String> released = new ArrayList<>();
+		synchronized (this) {
+			Iterator<Map.Entry<String, List<Pending>>> queuedIterator = queued.entrySet().iterator();
+			while (queuedIterator.hasNext()) {
+				List<Pending> pending = queuedIterator.next().getValue();
+				Iterator<Pending> iterator = pending.iterator();
+				while (iterator.hasNext()) {
+					if (iterator.next().owner == owner) {
+						iterator.remove();
+					}
+				}
+				if (pending.isEmpty()) {
+					queuedIterator.remove();
+				}
+			}
+			Iterator<Map.Entry<String, Map<String, Pending>>> inFlightIterator = inFlight.entrySet().iterator();
+			while (inFlightIterator.hasNext()) {
+				Map.Entry<String, Map<String, Pending>> batch = inFlightIterator.next();
+				Iterator<Pending> iterator = batch.getValue().values().iterator();
+				while (iterator.hasNext()) {
+					if (iterator.next().owner == owner) {
+						iterator.remove();
+					}
+				}
+				if (batch.getValue().isEmpty()) {
+					inFlightIterator.remove();
+					launchTimes.remove(batch.getKey());
+					released.add(batch.getKey());
+				}
+			}
+			Iterator<String> carriers = carrierPackages.values().iterator();
+			while (carriers.hasNext()) {
+				if (released.contains(carriers.next())) {
+					carriers.remove();
+				}
+			}
+			if (!released.isEmpty()) {
+				handler.post(this::launchNext);
+			}
+		}
+	}
+
+	// Must be called while holding the lock.
+	private boolean isIdle() {
+		return inFlight.isEmpty() && aloneOwner == null;
+	}
+
+	// Once the screen is free, starts the oldest waiting launch, else the batch of the signer that queued first.
+	private void launchNext() {
+		Alone alone;
+		String packageName = null;
+		synchronized (this) {
+			if (!isIdle()) {
+				return;
+			}
+			alone = waitingAlone.poll();
+			if (alone != null) {
+				aloneOwner = alone.owner.getCallbackId();
+			} else if (!queued.isEmpty()) {
+				packageName = queued.keySet().iterator().next();
+			}
+		}
+		if (alone != null) {
+			run(alone);
+		} else if (packageName != null) {
+			flush(packageName);
+		}
+	}
+
+	private void run(Alone alone) {
+		try {
+			alone.launch.run();
+		} catch (RuntimeException e) {
+			alone.owner.reject(e.getMessage());
+			release(alone.owner);
+		}
+	}
+
+	private void flush(String packageName) {
+		List<Pending> pending;
+		Map<String, Pending> batch = new LinkedHashMap<>();
+		List<Intent> intents = new ArrayList<>();
+		PluginCall carrier;
+		synchronized (this) {
+			if (!isIdle()) {
+				return;
+			}
+			pending = queued.remove(packageName);
+			if (pending == null || pending.isEmpty()) {
+				return;
+			}
+			for (Pending request : pending) {
+				// Intent ids must be unique within a batch for the results to be matched back.
+				String intentId = request.request.id;
+				if (intentId == null || batch.containsKey(intentId)) {
+					intentId = request.owner.getCallbackId() + "-" + batch.size();
+				}
+				batch.put(intentId, request);
+				Intent intent = request.request.toIntent(intentId);
+				if (pending.size() > 1) {
+					intent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+				}
+				intents.add(intent);
+			}
+			carrier = pending.get(0).owner;
+			inFlight.put(packageName, batch);
+			carrierPackages.put(carrier.getCallbackId(), packageName);
+			launchTimes.put(packageName, System.nanoTime());
+		}
+		try {
+			launcher.launch(carrier, intents);
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				inFlight.remove(packageName);
+				carrierPackages.remove(carrier.getCallbackId());
+				launchTimes.remove(packageName);
+			}
+			for (Pending request : pending) {
+				request.callback.onError(e.getMessage());
+			}
+			handler.post(this::launchNext);
+		}
+	}
+
+	private static void complete(Map<String, Pending> batch, String intentId, String result, String signedEventJson) {
+		if (intentId == null || result == null) {
+			return;
+		}
+		Pending pending = batch.remove(intentId);
+		if (pending != null) {
+			pending.callback.onResult(result, signedEventJson);
+		}
+	}
+
+	private static class Alone {
+		final PluginCall owner;
+		final Runnable launch;
+
+		Alone(PluginCall owner, Runnable launch) {
+			this.owner = owner;
+			this.launch = launch;
+		}
+	}
+
+	private static class Pending {
+		final PluginCall owner;
+		final SignerRequest request;
+		final Callback callback;
+
+		Pending(PluginCall owner, SignerRequest request, Callback callback) {
+			this.owner = owner;
+			this.request = request;
+			this.callback = callback;
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends payloads too large for a projection array to the signer through a pipe, so they
+ * do not count against the Binder transaction limit. The content goes to
+ * {@code ContentProvider.call(method, null, extras)} on the usual authority, as the read end
+ * of a pipe under "content", with "pubKey" and "current_user" as strings. The signer answers
+ * with "signature" and, for SIGN_EVENT, "event", each as a string or the read end of a pipe,
+ * or with "rejected". A signer that does not implement call() returns null, and the caller
+ * falls back to a plain query.
+ */
+class LargePayloads {
+
+	static final String EXTRA_CONTENT = "content";
+	static final String EXTRA_PUB_KEY = "pubKey";
+	static final String EXTRA_CURRENT_USER = "current_user";
+	static final String RESULT_SIGNATURE = "signature";
+	static final String RESULT_EVENT = "event";
+	static final String RESULT_REJECTED = "rejected";
+
+	// Each write blocks until the signer has read the content, and pipes are closed once their
+	// call returns, so a few threads are enough however many calls are in flight.
+	private static final int WRITERS = 2;
+	private static final ThreadPoolExecutor writers = new ThreadPoolExecutor(WRITERS, WRITERS, 30, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), runnable -> {
+				Thread thread = new Thread(runnable, "NostrSigner-pipe");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	static {
+		writers.allowCoreThreadTimeOut(true);
+	}
+
+	private final int threshold;
+
+	/** {@code threshold} is the content length, in chars, above which the pipe is used; 0 disables it. */
+	LargePayloads(int threshold) {
+		this.threshold = threshold;
+	}
+
+	boolean isLarge(String content) {
+		return threshold > 0 && content != null && content.length() > threshold;
+	}
+
+	/**
+	 * Runs the request through the signer's call() with the content in a pipe and returns the
+	 * answer shaped like the signer's query cursor, or null if the signer does not support it.
+	 * The pipe is closed once call() returns or the request is cancelled, so a signer that stops
+	 * reading does not keep a writer busy.
+	 */
+	Cursor call(SignerProviderClients clients, Context context, String packageName, String method, String content,
+			String pubKey, String currentUser) {
+		Pipe pipe;
+		try {
+			pipe = Pipe.open(content);
+		} catch (IOException e) {
+			return null;
+		}
+		Bundle extras = new Bundle();
+		extras.putParcelable(EXTRA_CONTENT, pipe.source);
+		extras.putString(EXTRA_PUB_KEY, pubKey);
+		extras.putString(EXTRA_CURRENT_USER, currentUser);
+		CancellationSignal signal = SignerProviderClients.currentCancellationSignal();
+		if (signal != null) {
+			signal.setOnCancelListener(pipe::close);
+		}
+		Bundle result;
+		try {
+			result = clients.call(context, packageName, method, extras);
+		} finally {
+			if (signal != null) {
+				signal.setOnCancelListener(null);
+			}
+			// The signer holds its own copy of the read end.
+			pipe.close();
+		}
+		if (result == null) {
+			return null;
+		}
+		if (result.getBoolean(RESULT_REJECTED, false)) {
+			MatrixCursor rejected = new MatrixCursor(new String[] { RESULT_REJECTED });
+			rejected.addRow(new Object[] { "true" });
+			return rejected;
+		}
+		try {
+			MatrixCursor cursor = new MatrixCursor(new String[] { RESULT_SIGNATURE, RESULT_EVENT });
+			cursor.addRow(new Object[] { read(result, RESULT_SIGNATURE), read(result, RESULT_EVENT) });
+			return cursor;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/** The route under which {@link SignerRoutes} remembers that a signer's provider has no call() for {@code method}. */
+	static String route(String method) {
+		return method + "/call";
+	}
+
+	/** Returns the read end of a pipe that the writer pool fills with {@code content}. */
+	static ParcelFileDescriptor pipe(String content) throws IOException {
+		return Pipe.open(content).source;
+	}
+
+	/** A pipe being filled on the writer pool. Closing it ends a write the reader stopped taking. */
+	static class Pipe {
+		final ParcelFileDescriptor source;
+		private final ParcelFileDescriptor sink;
+
+		private Pipe(ParcelFileDescriptor source, ParcelFileDescriptor sink) {
+			this.source = source;
+			this.sink = sink;
+		}
+
+		static Pipe open(String content) throws IOException {
+			ParcelFileDescriptor[] ends = ParcelFileDescriptor.createPipe();
+			Pipe pipe = new Pipe(ends[0], ends[1]);
+			byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+			writers.execute(() -> {
+				try (OutputStream outputStream = new ParcelFileDescriptor.AutoCloseOutputStream(pipe.sink)) {
+					outputStream.write(bytes);
+				} catch (IOException e) {
+					// The reader went away or the pipe was closed; the reader reports the failure on its side.
+				}
+			});
+			return pipe;
+		}
+
+		void close() {
+			closeQuietly(sink);
+			closeQuietly(source);
+		}
+	}
+
+	/** Reads a result that is either a string or the read end of a pipe. */
+	static String read(Bundle bundle, String key) throws IOException {
+		Object value = bundle.get(key);
+		if (value instanceof ParcelFileDescriptor) {
+			return readFully((ParcelFileDescriptor) value);
+		}
+		return value instanceof String ? (String) value : null;
+	}
+
+	static String readFully(ParcelFileDescriptor descriptor) throws IOException {
+		try (InputStream inputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor)) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[16 * 1024];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+			return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static void closeQuietly(ParcelFileDescriptor descriptor) {
+		try {
+			descriptor.close();
+		} catch (IOException e) {
+			// Nothing to do.
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Persists local secret keys in SharedPreferences, keyed by npub, each encrypted with
+ * AES-GCM under a non-exportable Android Keystore key. The Keystore key never leaves
+ * secure hardware where the device has it, so the stored blobs are useless off the device.
+ */
+class LocalKeyStore {
+
+	private static final String PREFS_NAME = "NostrSignerPluginLocalKeys";
+	private static final String KEYSTORE = "AndroidKeyStore";
+	private static final String WRAPPING_KEY_ALIAS = "NostrSignerPluginLocalKey";
+	private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+
+	private final SharedPreferences preferences;
+
+	LocalKeyStore(Context context) {
+		this(context, PREFS_NAME);
+	}
+
+	/** A separate store under the same Keystore key; {@link BunkerSigner} keeps its client key in one. */
+	LocalKeyStore(Context context, String prefsName) {
+		preferences = context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
+	}
+
+	static boolean isSupported() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+	}
+
+	synchronized void save(String npub, byte[] secretKey) throws GeneralSecurityException {
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.ENCRYPT_MODE, wrappingKey());
+		byte[] iv = cipher.getIV();
+		byte[] ciphertext = cipher.doFinal(secretKey);
+		byte[] blob = new byte[iv.length + ciphertext.length];
+		System.arraycopy(iv, 0, blob, 0, iv.length);
+		System.arraycopy(ciphertext, 0, blob, iv.length, ciphertext.length);
+		preferences.edit().putString(npub, Base64.encodeToString(blob, Base64.NO_WRAP)).apply();
+	}
+
+	/** Returns the secret key stored for the npub, or null if there is none. */
+	synchronized byte[] load(String npub) throws GeneralSecurityException {
+		String stored = preferences.getString(npub, null);
+		if (stored == null) {
+			return null;
+		}
+		byte[] blob = Base64.decode(stored, Base64.DEFAULT);
+		Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+		cipher.init(Cipher.DECRYPT_MODE, wrappingKey(), new GCMParameterSpec(TAG_BITS, blob, 0, IV_LENGTH));
+		return cipher.doFinal(blob, IV_LENGTH, blob.length - IV_LENGTH);
+	}
+
+	synchronized boolean contains(String npub) {
+		return preferences.contains(npub);
+	}
+
+	synchronized List<String> npubs() {
+		return new ArrayList<>(preferences.getAll().keySet());
+	}
+
+	synchronized void remove(String npub) {
+		preferences.edit().remove(npub).apply();
+	}
+
+	private static SecretKey wrappingKey() throws GeneralSecurityException {
+		if (!isSupported()) {
+			throw new GeneralSecurityException("Local keys need Android 6.0 or newer");
+		}
+		KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+		try {
+			keyStore.load(null);
+		} catch (IOException e) {
+			throw new GeneralSecurityException(e);
+		}
+		if (!keyStore.containsAlias(WRAPPING_KEY_ALIAS)) {
+			KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+			generator.init(new KeyGenParameterSpec.Builder(WRAPPING_KEY_ALIAS,
+					KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+					.setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+					.setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+					.build());
+			return generator.generateKey();
+		}
+		return (SecretKey) keyStore.getKey(WRAPPING_KEY_ALIAS, null);
+	}
+}
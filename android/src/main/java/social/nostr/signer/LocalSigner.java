@@ -0,0 +1,304 @@
+package social.nostr.signer;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Cipher;
+
+/**
+ * Signs and encrypts in process with keys from {@link LocalKeyStore}, for users who keep
+ * their key in the app instead of an external signer. It is selected with the pseudo package
+ * name {@link #PACKAGE_NAME} and never falls back to an intent: failures throw. The secret key
+ * is unwrapped for each operation that needs it and zeroed right after, so it is not held in
+ * memory between calls; keys derived per counterparty go through a {@link ConversationKeyCache}
+ * so they skip the unwrap and the ECDH.
+ * <p>
+ * The backend refuses to touch keys unless the app opted in with {@code enabled}.
+ */
+class LocalSigner implements SignerBackend {
+
+	static final String PACKAGE_NAME = "local";
+
+	private static final String NIP04 = "nip04";
+	private static final String NIP44 = "nip44";
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final LocalKeyStore store;
+	private final boolean enabled;
+	// Keys added with addKey, which never reach the Keystore.
+	private final ConcurrentHashMap<String, byte[]> memoryKeys = new ConcurrentHashMap<>();
+	private final ConversationKeyCache conversationKeys;
+	private volatile String selectedNpub;
+
+	private interface KeyOperation<T> {
+		T run(Secp256k1.KeyPair keyPair);
+	}
+
+	LocalSigner(LocalKeyStore store, int conversationKeyCacheSize, boolean enabled) {
+		this.store = store;
+		this.enabled = enabled;
+		this.conversationKeys = new ConversationKeyCache(conversationKeyCacheSize);
+	}
+
+	/** Stores a new random key and returns its npub. */
+	String generateKey() throws GeneralSecurityException {
+		byte[] secretKey = randomSecretKey();
+		try {
+			return importKey(secretKey);
+		} finally {
+			Arrays.fill(secretKey, (byte) 0);
+		}
+	}
+
+	/** Returns a random secret key in [1, n). */
+	static byte[] randomSecretKey() {
+		byte[] secretKey = new byte[32];
+		while (true) {
+			RANDOM.nextBytes(secretKey);
+			if (Secp256k1.isSecretKey(secretKey)) {
+				return secretKey;
+			}
+		}
+	}
+
+	/** Stores the key, given as nsec or hex, and returns its npub. */
+	String importKey(String nsecOrHex) throws GeneralSecurityException {
+		byte[] secretKey = nsecOrHex.startsWith("nsec1") ? Bech32.decode("nsec", nsecOrHex) : Hex.decode(nsecOrHex);
+		try {
+			return importKey(secretKey);
+		} finally {
+			Arrays.fill(secretKey, (byte) 0);
+		}
+	}
+
+	private String importKey(byte[] secretKey) throws GeneralSecurityException {
+		checkEnabled();
+		String npub = Bech32.encode("npub", Secp256k1.publicKey(secretKey));
+		store.save(npub, secretKey);
+		return npub;
+	}
+
+	/** Keeps a key in memory only, without the Keystore; for tests and benchmarks. */
+	String addKey(byte[] secretKey) {
+		String npub = Bech32.encode("npub", Secp256k1.publicKey(secretKey));
+		memoryKeys.put(npub, secretKey.clone());
+		return npub;
+	}
+
+	boolean hasKey(String npub) {
+		return memoryKeys.containsKey(npub) || store.contains(npub);
+	}
+
+	List<String> storedNpubs() {
+		return store.npubs();
+	}
+
+	void select(String npub) {
+		selectedNpub = npub;
+	}
+
+	void removeKey(String npub) {
+		store.remove(npub);
+		byte[] memoryKey = memoryKeys.remove(npub);
+		if (memoryKey != null) {
+			Arrays.fill(memoryKey, (byte) 0);
+		}
+		conversationKeys.remove(npub);
+		if (npub.equals(selectedNpub)) {
+			selectedNpub = null;
+		}
+	}
+
+	/** Drops derived conversation keys, e.g. on logout. Stored keys stay. */
+	void clearCache() {
+		conversationKeys.clear();
+	}
+
+	/** Drops the derived conversation keys of one account. */
+	void clearCache(String npub) {
+		conversationKeys.remove(npub);
+	}
+
+	ConversationKeyCache.Stats getCacheStats() {
+		return conversationKeys.stats();
+	}
+
+	@Override
+	public String getPublicKey(Context context, String packageName) {
+		String npub = selectedNpub;
+		if (npub == null) {
+			throw new IllegalStateException("No local key selected. Call useLocalKey first.");
+		}
+		return npub;
+	}
+
+	@Override
+	public String[] signEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
+		return withKeyPair(loggedInUserNpub, keyPair -> signedEvent(eventJson, keyPair));
+	}
+
+	private static String[] signedEvent(String eventJson, Secp256k1.KeyPair keyPair) {
+		try {
+			JSONObject event = new JSONObject(eventJson);
+			event.put("pubkey", Hex.encode(keyPair.publicKey));
+			if (!event.has("tags")) {
+				event.put("tags", new JSONArray());
+			}
+			byte[] id = Nip01.eventId(event);
+			byte[] auxRand = new byte[32];
+			RANDOM.nextBytes(auxRand);
+			String signature = Hex.encode(Secp256k1.sign(id, keyPair, auxRand));
+			event.put("id", Hex.encode(id));
+			event.put("sig", signature);
+			return new String[] { signature, event.toString() };
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Invalid event JSON", e);
+		}
+	}
+
+	@Override
+	public String nip04Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
+		byte[] key = derivedKey(NIP04, loggedInUserNpub, recipientPubKey);
+		try {
+			return Nip04.encrypt(plainText, key);
+		} finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	@Override
+	public String nip04Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
+		byte[] key = derivedKey(NIP04, loggedInUserNpub, senderPubKey);
+		try {
+			return Nip04.decrypt(encryptedText, key);
+		} finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	@Override
+	public String nip44Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
+		byte[] key = derivedKey(NIP44, loggedInUserNpub, recipientPubKey);
+		try {
+			return Nip44.encrypt(plainText, key);
+		} finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	@Override
+	public String nip44Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
+		byte[] key = derivedKey(NIP44, loggedInUserNpub, senderPubKey);
+		try {
+			return Nip44.decrypt(encryptedText, key);
+		} finally {
+			Arrays.fill(key, (byte) 0);
+		}
+	}
+
+	// NIP-57 private zaps: the "anon" tag holds bech32 "pzap" ciphertext and "iv", AES-CBC keyed with ECDH against the event's pubkey.
+	@Override
+	public String decryptZapEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
+		try {
+			JSONObject event = new JSONObject(eventJson);
+			JSONArray tags = event.getJSONArray("tags");
+			for (int i = 0; i < tags.length(); i++) {
+				JSONArray tag = tags.getJSONArray(i);
+				if (tag.length() > 1 && "anon".equals(tag.getString(0))) {
+					String[] parts = tag.getString(1).split("_");
+					if (parts.length != 2) {
+						break;
+					}
+					byte[] key = derivedKey(NIP04, loggedInUserNpub, event.getString("pubkey"));
+					try {
+						byte[] plainText = Nip04.aes(Cipher.DECRYPT_MODE, key, Bech32.decode("iv", parts[1]),
+								Bech32.decode("pzap", parts[0]));
+						return new String(plainText, StandardCharsets.UTF_8);
+					} finally {
+						Arrays.fill(key, (byte) 0);
+					}
+				}
+			}
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Invalid event JSON", e);
+		}
+		throw new IllegalArgumentException("Not a private zap");
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	private void checkEnabled() {
+		if (!enabled) {
+			throw new IllegalStateException("Local keys are disabled. Set localKeys in the plugin config to use them.");
+		}
+	}
+
+	// Unwraps the key for one operation and zeroes it, and the key pair built from it, afterwards.
+	private <T> T withKeyPair(String npub, KeyOperation<T> operation) {
+		checkEnabled();
+		if (npub == null) {
+			throw new IllegalStateException("No local key selected. Call useLocalKey first.");
+		}
+		byte[] secretKey = secretKey(npub);
+		Secp256k1.KeyPair keyPair = null;
+		try {
+			keyPair = new Secp256k1.KeyPair(secretKey);
+			return operation.run(keyPair);
+		} finally {
+			Arrays.fill(secretKey, (byte) 0);
+			if (keyPair != null) {
+				keyPair.destroy();
+			}
+		}
+	}
+
+	private byte[] secretKey(String npub) {
+		byte[] memoryKey = memoryKeys.get(npub);
+		if (memoryKey != null) {
+			return memoryKey.clone();
+		}
+		byte[] secretKey;
+		try {
+			secretKey = store.load(npub);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Could not unlock the local key: " + e.getMessage(), e);
+		}
+		if (secretKey == null) {
+			throw new IllegalStateException("No local key for " + npub);
+		}
+		return secretKey;
+	}
+
+	// Returns a copy the caller must zero; the cached key may be zeroed by an eviction at any time.
+	private byte[] derivedKey(String kind, String npub, String pubKey) {
+		checkEnabled();
+		byte[] publicKey = publicKey(pubKey);
+		String key = ConversationKeyCache.key(kind, npub, Hex.encode(publicKey));
+		byte[] derived = conversationKeys.get(key);
+		if (derived == null) {
+			derived = withKeyPair(npub, keyPair -> NIP44.equals(kind) ? Nip44.conversationKey(keyPair, publicKey)
+					: Secp256k1.sharedX(keyPair, publicKey));
+			conversationKeys.put(key, derived);
+		}
+		return derived;
+	}
+
+	private static byte[] publicKey(String pubKey) {
+		if (pubKey == null) {
+			throw new IllegalArgumentException("Missing pubKey");
+		}
+		return pubKey.startsWith("npub1") ? Bech32.decode("npub", pubKey) : Hex.decode(pubKey);
+	}
+}
@@ -0,0 +1,213 @@
+package social.nostr.signer;
+
+import java.math.BigInteger;
+
+/**
+ * Arithmetic modulo a 256-bit odd modulus on eight 32-bit limbs, least significant first.
+ * Products are Montgomery products, {@code a * b / 2^256 mod m}; {@link #toMontgomery} and
+ * {@link #fromMontgomery} convert. Every operation runs the same instructions and touches the
+ * same memory whatever the values, so {@link Secp256k1} can work on secret scalars with it.
+ * Inputs and outputs are fully reduced, in [0, m).
+ */
+final class Montgomery {
+
+	static final int LIMBS = 8;
+
+	private static final long MASK = 0xffffffffL;
+
+	private final int[] modulus;
+	// -m^-1 mod 2^32.
+	private final int inverse;
+	// 2^512 mod m, which turns a value into Montgomery form.
+	private final int[] rSquared;
+	private final int[] one;
+	private final BigInteger exponent;
+
+	Montgomery(BigInteger modulus) {
+		this.modulus = fromBigInteger(modulus);
+		this.inverse = BigInteger.ONE.shiftLeft(32).subtract(modulus.modInverse(BigInteger.ONE.shiftLeft(32))).intValue();
+		this.rSquared = fromBigInteger(BigInteger.ONE.shiftLeft(512).mod(modulus));
+		this.one = fromBigInteger(BigInteger.ONE.shiftLeft(256).mod(modulus));
+		this.exponent = modulus.subtract(BigInteger.valueOf(2));
+	}
+
+	/** Reads 32 big-endian bytes as they are, without reducing them. */
+	static int[] limbs(byte[] bytes) {
+		int[] a = new int[LIMBS];
+		for (int i = 0; i < LIMBS; i++) {
+			int offset = 28 - 4 * i;
+			a[i] = (bytes[offset] & 0xff) << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8
+					| bytes[offset + 3] & 0xff;
+		}
+		return a;
+	}
+
+	/** Reads 32 big-endian bytes, reduced once: callers pass values below 2m. */
+	int[] fromBytes(byte[] bytes) {
+		int[] a = limbs(bytes);
+		int[] reduced = new int[LIMBS];
+		long borrow = subtract(a, modulus, reduced);
+		// Keep a when subtracting m borrowed, i.e. a was already below m.
+		select(reduced, a, (int) -borrow);
+		return reduced;
+	}
+
+	static byte[] toBytes(int[] a) {
+		byte[] bytes = new byte[32];
+		for (int i = 0; i < LIMBS; i++) {
+			int offset = 28 - 4 * i;
+			bytes[offset] = (byte) (a[i] >>> 24);
+			bytes[offset + 1] = (byte) (a[i] >>> 16);
+			bytes[offset + 2] = (byte) (a[i] >>> 8);
+			bytes[offset + 3] = (byte) a[i];
+		}
+		return bytes;
+	}
+
+	/** 1 if {@code a}, read as a raw 256-bit number, is in [1, m), else 0. */
+	int isScalar(int[] a) {
+		long borrow = subtract(a, modulus, new int[LIMBS]);
+		return (int) borrow & (isZero(a) ^ 1);
+	}
+
+	/** 1 if {@code a} is zero, else 0. */
+	static int isZero(int[] a) {
+		int bits = 0;
+		for (int limb : a) {
+			bits |= limb;
+		}
+		return (int) (((bits & MASK) - 1) >>> 63);
+	}
+
+	/** 1 if {@code a} and {@code b} are equal, else 0. */
+	static int equal(int a, int b) {
+		return (int) ((((a ^ b) & MASK) - 1) >>> 63);
+	}
+
+	/** Sets {@code a} to {@code b} where {@code mask} is all ones, and leaves it where the mask is zero. */
+	static void select(int[] a, int[] b, int mask) {
+		for (int i = 0; i < a.length; i++) {
+			a[i] ^= (a[i] ^ b[i]) & mask;
+		}
+	}
+
+	int[] one() {
+		return one.clone();
+	}
+
+	int[] toMontgomery(int[] a) {
+		return multiply(a, rSquared);
+	}
+
+	int[] fromMontgomery(int[] a) {
+		int[] plain = new int[LIMBS];
+		plain[0] = 1;
+		return multiply(a, plain);
+	}
+
+	/** a * b mod m for plain, not Montgomery, inputs. */
+	int[] multiplyPlain(int[] a, int[] b) {
+		return multiply(multiply(a, b), rSquared);
+	}
+
+	int[] add(int[] a, int[] b) {
+		int[] sum = new int[LIMBS];
+		long carry = 0;
+		for (int i = 0; i < LIMBS; i++) {
+			carry += (a[i] & MASK) + (b[i] & MASK);
+			sum[i] = (int) carry;
+			carry >>>= 32;
+		}
+		int[] reduced = new int[LIMBS];
+		long borrow = subtract(sum, modulus, reduced);
+		// The sum is below 2m; it needs m taken off unless it fits in 256 bits and is below m.
+		select(reduced, sum, (int) -(borrow & (carry ^ 1)));
+		return reduced;
+	}
+
+	int[] subtract(int[] a, int[] b) {
+		int[] difference = new int[LIMBS];
+		long borrow = subtract(a, b, difference);
+		int mask = (int) -borrow;
+		long carry = 0;
+		for (int i = 0; i < LIMBS; i++) {
+			carry += (difference[i] & MASK) + (modulus[i] & mask & MASK);
+			difference[i] = (int) carry;
+			carry >>>= 32;
+		}
+		return difference;
+	}
+
+	int[] negate(int[] a) {
+		return subtract(new int[LIMBS], a);
+	}
+
+	/** The Montgomery product a * b / 2^256 mod m, by coarsely integrated operand scanning. */
+	int[] multiply(int[] a, int[] b) {
+		long[] t = new long[LIMBS + 2];
+		for (int i = 0; i < LIMBS; i++) {
+			long bi = b[i] & MASK;
+			long carry = 0;
+			for (int j = 0; j < LIMBS; j++) {
+				// At most (2^32 - 1)^2 + 2 * (2^32 - 1), which still fits an unsigned 64-bit value.
+				carry += t[j] + (a[j] & MASK) * bi;
+				t[j] = carry & MASK;
+				carry >>>= 32;
+			}
+			carry += t[LIMBS];
+			t[LIMBS] = carry & MASK;
+			t[LIMBS + 1] = carry >>> 32;
+
+			long q = (t[0] * inverse) & MASK;
+			carry = t[0] + q * (modulus[0] & MASK);
+			carry >>>= 32;
+			for (int j = 1; j < LIMBS; j++) {
+				carry += t[j] + q * (modulus[j] & MASK);
+				t[j - 1] = carry & MASK;
+				carry >>>= 32;
+			}
+			carry += t[LIMBS];
+			t[LIMBS - 1] = carry & MASK;
+			t[LIMBS] = t[LIMBS + 1] + (carry >>> 32);
+		}
+		int[] product = new int[LIMBS];
+		for (int i = 0; i < LIMBS; i++) {
+			product[i] = (int) t[i];
+		}
+		int[] reduced = new int[LIMBS];
+		long borrow = subtract(product, modulus, reduced);
+		select(reduced, product, (int) -(borrow & (t[LIMBS] ^ 1)));
+		return reduced;
+	}
+
+	/** a^(m - 2), the inverse of a nonzero a when m is prime. The exponent is public, so its bits may branch. */
+	int[] invert(int[] a) {
+		int[] result = one();
+		for (int bit = exponent.bitLength() - 1; bit >= 0; bit--) {
+			result = multiply(result, result);
+			if (exponent.testBit(bit)) {
+				result = multiply(result, a);
+			}
+		}
+		return result;
+	}
+
+	static int[] fromBigInteger(BigInteger value) {
+		int[] a = new int[LIMBS];
+		for (int i = 0; i < LIMBS; i++) {
+			a[i] = value.shiftRight(32 * i).intValue();
+		}
+		return a;
+	}
+
+	// difference = a - b over 256 bits; returns the final borrow, 0 or 1.
+	private static long subtract(int[] a, int[] b, int[] difference) {
+		long borrow = 0;
+		for (int i = 0; i < LIMBS; i++) {
+			long d = (a[i] & MASK) - (b[i] & MASK) - borrow;
+			difference[i] = (int) d;
+			borrow = d >>> 63;
+		}
+		return borrow;
+	}
+}
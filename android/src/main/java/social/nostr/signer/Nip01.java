@@ -0,0 +1,202 @@
+package social.nostr.signer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.MessageDigest;
+
+/** NIP-01 event serialization and ids. */
+final class Nip01 {
+
+	// One writer per thread, so computing ids in a batch does not allocate a digest and buffer per event.
+	private static final ThreadLocal<IdWriter> WRITER = new ThreadLocal<IdWriter>() {
+		@Override
+		protected IdWriter initialValue() {
+			return new IdWriter();
+		}
+	};
+
+	private Nip01() {
+	}
+
+	/**
+	 * sha256 of {@code [0, pubkey, created_at, kind, tags, content]} in NIP-01's canonical JSON.
+	 * The serialization is UTF-8 encoded straight into the digest through a small buffer, without
+	 * building it as a string first.
+	 */
+	static byte[] eventId(JSONObject event) throws JSONException {
+		IdWriter writer = WRITER.get();
+		try {
+			write(writer, event);
+			return writer.digest();
+		} finally {
+			writer.reset();
+		}
+	}
+
+	/** Like {@link #eventId(JSONObject)}, with {@code pubkey} used if the event does not have one, as unsigned events may not. */
+	static byte[] eventId(String eventJson, String pubkey) throws JSONException {
+		JSONObject event = new JSONObject(eventJson);
+		if (!event.has("pubkey") && pubkey != null) {
+			event.put("pubkey", pubkey);
+		}
+		return eventId(event);
+	}
+
+	static String serialize(JSONObject event) throws JSONException {
+		StringBuilder builder = new StringBuilder(256);
+		write(new Sink() {
+			@Override
+			public void write(char c) {
+				builder.append(c);
+			}
+
+			@Override
+			public void write(String s) {
+				builder.append(s);
+			}
+		}, event);
+		return builder.toString();
+	}
+
+	private interface Sink {
+		void write(char c);
+
+		void write(String s);
+	}
+
+	private static void write(Sink sink, JSONObject event) throws JSONException {
+		sink.write("[0,");
+		quote(sink, event.getString("pubkey"));
+		sink.write(',');
+		sink.write(Long.toString(event.getLong("created_at")));
+		sink.write(',');
+		sink.write(Integer.toString(event.getInt("kind")));
+		sink.write(",[");
+		JSONArray tags = event.optJSONArray("tags");
+		for (int i = 0; tags != null && i < tags.length(); i++) {
+			if (i > 0) {
+				sink.write(',');
+			}
+			sink.write('[');
+			JSONArray tag = tags.getJSONArray(i);
+			for (int j = 0; j < tag.length(); j++) {
+				if (j > 0) {
+					sink.write(',');
+				}
+				quote(sink, tag.getString(j));
+			}
+			sink.write(']');
+		}
+		sink.write("],");
+		quote(sink, event.getString("content"));
+		sink.write(']');
+	}
+
+	// NIP-01 escapes only these characters; everything else, including other control characters, is written as is.
+	private static void quote(Sink sink, String value) {
+		sink.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					sink.write("\\\"");
+					break;
+				case '\\':
+					sink.write("\\\\");
+					break;
+				case '\n':
+					sink.write("\\n");
+					break;
+				case '\r':
+					sink.write("\\r");
+					break;
+				case '\t':
+					sink.write("\\t");
+					break;
+				case '\b':
+					sink.write("\\b");
+					break;
+				case '\f':
+					sink.write("\\f");
+					break;
+				default:
+					sink.write(c);
+			}
+		}
+		sink.write('"');
+	}
+
+	/** UTF-8 encodes into a buffer that is fed to a SHA-256 digest whenever it fills up. */
+	private static final class IdWriter implements Sink {
+		private final MessageDigest digest = Secp256k1.sha256();
+		private final byte[] buffer = new byte[1024];
+		private int length;
+		private char highSurrogate;
+
+		@Override
+		public void write(String s) {
+			for (int i = 0; i < s.length(); i++) {
+				write(s.charAt(i));
+			}
+		}
+
+		@Override
+		public void write(char c) {
+			if (length > buffer.length - 4) {
+				flush();
+			}
+			if (highSurrogate != 0) {
+				char high = highSurrogate;
+				highSurrogate = 0;
+				if (Character.isLowSurrogate(c)) {
+					int codePoint = Character.toCodePoint(high, c);
+					buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+					buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+					buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+					buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+					return;
+				}
+				// An unpaired surrogate is encoded as '?', as String.getBytes does.
+				buffer[length++] = '?';
+				write(c);
+				return;
+			}
+			if (c < 0x80) {
+				buffer[length++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[length++] = (byte) (0xc0 | (c >> 6));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c)) {
+				highSurrogate = c;
+			} else if (Character.isLowSurrogate(c)) {
+				buffer[length++] = '?';
+			} else {
+				buffer[length++] = (byte) (0xe0 | (c >> 12));
+				buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[length++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+
+		byte[] digest() {
+			if (highSurrogate != 0) {
+				highSurrogate = 0;
+				write('?');
+			}
+			flush();
+			return digest.digest();
+		}
+
+		void reset() {
+			length = 0;
+			highSurrogate = 0;
+			digest.reset();
+		}
+
+		private void flush() {
+			digest.update(buffer, 0, length);
+			length = 0;
+		}
+	}
+}
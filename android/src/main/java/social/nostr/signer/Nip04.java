@@ -0,0 +1,55 @@
+package social.nostr.signer;
+
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/** NIP-04 AES-256-CBC encryption, keyed with the raw ECDH x coordinate. */
+final class Nip04 {
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private Nip04() {
+	}
+
+	static String encrypt(String plaintext, byte[] secretKey, byte[] publicKey) {
+		return encrypt(plaintext, Secp256k1.sharedX(secretKey, publicKey));
+	}
+
+	static String encrypt(String plaintext, byte[] sharedKey) {
+		byte[] iv = new byte[16];
+		RANDOM.nextBytes(iv);
+		byte[] ciphertext = aes(Cipher.ENCRYPT_MODE, sharedKey, iv, plaintext.getBytes(StandardCharsets.UTF_8));
+		return Base64.encodeToString(ciphertext, Base64.NO_WRAP) + "?iv=" + Base64.encodeToString(iv, Base64.NO_WRAP);
+	}
+
+	static String decrypt(String content, byte[] secretKey, byte[] publicKey) {
+		return decrypt(content, Secp256k1.sharedX(secretKey, publicKey));
+	}
+
+	static String decrypt(String content, byte[] sharedKey) {
+		int separator = content.indexOf("?iv=");
+		if (separator < 0) {
+			throw new IllegalArgumentException("Missing iv");
+		}
+		byte[] ciphertext = Base64.decode(content.substring(0, separator), Base64.DEFAULT);
+		byte[] iv = Base64.decode(content.substring(separator + 4), Base64.DEFAULT);
+		return new String(aes(Cipher.DECRYPT_MODE, sharedKey, iv, ciphertext), StandardCharsets.UTF_8);
+	}
+
+	static byte[] aes(int mode, byte[] key, byte[] iv, byte[] input) {
+		try {
+			Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+			return cipher.doFinal(input);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+}
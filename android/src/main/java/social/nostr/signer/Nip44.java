@@ -0,0 +1,154 @@
+package social.nostr.signer;
+
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * NIP-44 version 2 payload encryption. Payloads are decrypted in place in the decoded base64
+ * buffer and HMAC instances are reused per thread, so a decrypt allocates little beyond its
+ * input and output.
+ */
+final class Nip44 {
+
+	private static final byte VERSION = 2;
+	private static final byte[] SALT = "nip44-v2".getBytes(StandardCharsets.UTF_8);
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final ThreadLocal<Mac> MAC = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				return Mac.getInstance("HmacSHA256");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	// Offsets in the 76-byte HKDF output.
+	private static final int CHACHA_KEY = 0;
+	private static final int CHACHA_NONCE = 32;
+	private static final int HMAC_KEY = 44;
+
+	private Nip44() {
+	}
+
+	static byte[] conversationKey(byte[] secretKey, byte[] publicKey) {
+		return hmac(SALT, Secp256k1.sharedX(secretKey, publicKey));
+	}
+
+	static byte[] conversationKey(Secp256k1.KeyPair keyPair, byte[] publicKey) {
+		return hmac(SALT, Secp256k1.sharedX(keyPair, publicKey));
+	}
+
+	static String encrypt(String plaintext, byte[] conversationKey) {
+		byte[] nonce = new byte[32];
+		RANDOM.nextBytes(nonce);
+		return encrypt(plaintext, conversationKey, nonce);
+	}
+
+	static String encrypt(String plaintext, byte[] conversationKey, byte[] nonce) {
+		byte[] unpadded = plaintext.getBytes(StandardCharsets.UTF_8);
+		if (unpadded.length < 1 || unpadded.length > 65535) {
+			throw new IllegalArgumentException("Invalid plaintext length");
+		}
+		byte[] keys = messageKeys(conversationKey, nonce, 0);
+		int paddedLength = 2 + paddedLength(unpadded.length);
+		// version || nonce || padded ciphertext || mac, built in one buffer.
+		byte[] payload = new byte[1 + 32 + paddedLength + 32];
+		payload[0] = VERSION;
+		System.arraycopy(nonce, 0, payload, 1, 32);
+		payload[33] = (byte) (unpadded.length >>> 8);
+		payload[34] = (byte) unpadded.length;
+		System.arraycopy(unpadded, 0, payload, 35, unpadded.length);
+		ChaCha20.xor(keys, CHACHA_KEY, keys, CHACHA_NONCE, 0, payload, 33, paddedLength);
+		Mac mac = mac(keys, HMAC_KEY, 32);
+		mac.update(payload, 1, 32 + paddedLength);
+		doFinal(mac, payload, 33 + paddedLength);
+		return Base64.encodeToString(payload, Base64.NO_WRAP);
+	}
+
+	static String decrypt(String payload, byte[] conversationKey) {
+		if (payload.isEmpty() || payload.charAt(0) == '#') {
+			throw new IllegalArgumentException("Unknown encryption version");
+		}
+		byte[] data = Base64.decode(payload, Base64.DEFAULT);
+		if (data.length < 99 || data[0] != VERSION) {
+			throw new IllegalArgumentException("Invalid payload");
+		}
+		int ciphertextLength = data.length - 65;
+		byte[] keys = messageKeys(conversationKey, data, 1);
+		Mac mac = mac(keys, HMAC_KEY, 32);
+		mac.update(data, 1, 32 + ciphertextLength);
+		byte[] expected = new byte[32];
+		doFinal(mac, expected, 0);
+		byte[] actual = new byte[32];
+		System.arraycopy(data, 33 + ciphertextLength, actual, 0, 32);
+		if (!MessageDigest.isEqual(expected, actual)) {
+			throw new IllegalArgumentException("Invalid MAC");
+		}
+		ChaCha20.xor(keys, CHACHA_KEY, keys, CHACHA_NONCE, 0, data, 33, ciphertextLength);
+		int length = (data[33] & 0xff) << 8 | (data[34] & 0xff);
+		if (length < 1 || ciphertextLength != 2 + paddedLength(length)) {
+			throw new IllegalArgumentException("Invalid padding");
+		}
+		return new String(data, 35, length, StandardCharsets.UTF_8);
+	}
+
+	static int paddedLength(int length) {
+		if (length <= 32) {
+			return 32;
+		}
+		int nextPower = Integer.highestOneBit(length - 1) << 1;
+		int chunk = nextPower <= 256 ? 32 : nextPower / 8;
+		return chunk * ((length - 1) / chunk + 1);
+	}
+
+	// HKDF-Expand of the 32-byte nonce at nonceOffset to 76 bytes: ChaCha20 key, ChaCha20 nonce and HMAC key.
+	private static byte[] messageKeys(byte[] conversationKey, byte[] nonce, int nonceOffset) {
+		if (conversationKey.length != 32 || nonce.length - nonceOffset < 32) {
+			throw new IllegalArgumentException("Invalid key or nonce length");
+		}
+		byte[] okm = new byte[96];
+		Mac mac = mac(conversationKey, 0, 32);
+		for (int i = 0; i < 3; i++) {
+			if (i > 0) {
+				mac.update(okm, (i - 1) * 32, 32);
+			}
+			mac.update(nonce, nonceOffset, 32);
+			mac.update((byte) (i + 1));
+			doFinal(mac, okm, i * 32);
+		}
+		return okm;
+	}
+
+	private static byte[] hmac(byte[] key, byte[] data) {
+		Mac mac = mac(key, 0, key.length);
+		mac.update(data);
+		return mac.doFinal();
+	}
+
+	private static Mac mac(byte[] key, int offset, int length) {
+		try {
+			Mac mac = MAC.get();
+			mac.init(new SecretKeySpec(key, offset, length, "HmacSHA256"));
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void doFinal(Mac mac, byte[] output, int offset) {
+		try {
+			mac.doFinal(output, offset);
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -1,33 +1,89 @@
 package social.nostr.signer;
 
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class NostrSigner {
+public class NostrSigner implements SignerBackend {
+
+	private final SignerProviderClients providerClients;
+	private final DecryptCache decryptCache;
+	private final LargePayloads largePayloads;
+	private final SignerMetrics metrics;
+	private final SignerRoutes routes;
+	private SignerIconCache iconCache;
+	private volatile List<ResolveInfo> signerCache;
+
+	// The providers a session mostly uses; GET_PUBLIC_KEY is bound by the probe query itself.
+	private static final String[] PREWARM_METHODS = { "SIGN_EVENT", "NIP44_DECRYPT", "NIP44_ENCRYPT", "NIP04_DECRYPT",
+			"NIP04_ENCRYPT" };
+
+	public NostrSigner(long decryptCacheBytes, int largePayloadThreshold, SignerMetrics metrics) {
+		this(decryptCacheBytes, largePayloadThreshold, metrics, new SignerRoutes(0));
+	}
+
+	NostrSigner(long decryptCacheBytes, int largePayloadThreshold, SignerMetrics metrics, SignerRoutes routes) {
+		this.metrics = metrics;
+		this.routes = routes;
+		providerClients = new SignerProviderClients(metrics);
+		decryptCache = new DecryptCache(decryptCacheBytes);
+		largePayloads = new LargePayloads(largePayloadThreshold);
+	}
+
+	void release() {
+		providerClients.release();
+		decryptCache.clear();
+	}
+
+	void clearCache() {
+		decryptCache.clear();
+	}
+
+	void clearCache(String npub) {
+		decryptCache.removeAccount(npub);
+	}
+
+	DecryptCache.Stats getCacheStats() {
+		return decryptCache.stats();
+	}
 
 	List<ResolveInfo> isExternalSignerInstalled(Context context, String packageName) {
-		Intent intent = new Intent();
-		intent.setAction(Intent.ACTION_VIEW);
-		intent.setData(Uri.parse("nostrsigner:"));
-		if (packageName != null) {
-			intent.setPackage(packageName);
+		List<ResolveInfo> signers = signerCache;
+		if (signers == null) {
+			Intent intent = new Intent();
+			intent.setAction(Intent.ACTION_VIEW);
+			intent.setData(Uri.parse("nostrsigner:"));
+			PackageManager packageManager = context.getPackageManager();
+			signers = Collections.unmodifiableList(packageManager.queryIntentActivities(intent, 0));
+			signerCache = signers;
 		}
-		PackageManager packageManager = context.getPackageManager();
-		return packageManager.queryIntentActivities(intent, 0);
+		if (packageName == null) {
+			return signers;
+		}
+		List<ResolveInfo> matching = new ArrayList<>(1);
+		for (ResolveInfo resolveInfo : signers) {
+			if (packageName.equals(resolveInfo.activityInfo.packageName)) {
+				matching.add(resolveInfo);
+			}
+		}
+		return matching;
+	}
+
+	/** Forgets the cached signer list and returns it, or null if it was not loaded. */
+	List<ResolveInfo> invalidateSigners() {
+		List<ResolveInfo> signers = signerCache;
+		signerCache = null;
+		return signers;
 	}
 
-	List<SignerAppInfo> getInstalledSignerApps(Context context) {
-		Intent intent = new Intent(Intent.ACTION_VIEW);
-		intent.setData(Uri.parse("nostrsigner:"));
+	List<SignerAppInfo> getInstalledSignerApps(Context context, boolean includeIcons, int iconSize) {
 		PackageManager packageManager = context.getPackageManager();
 
 		List<ResolveInfo> resolveInfos = isExternalSignerInstalled(context, null);
@@ -35,40 +91,61 @@ public class NostrSigner {
 		for (ResolveInfo resolveInfo : resolveInfos) {
 			CharSequence appName = resolveInfo.loadLabel(packageManager);
 			String packageName = resolveInfo.activityInfo.packageName;
-			Drawable iconDrawable = resolveInfo.loadIcon(packageManager);
-			SignerAppInfo appInfo = new SignerAppInfo(appName, packageName, iconDrawable);
+			String iconData = includeIcons ? getSignerAppIcon(context, packageName, iconSize) : null;
+			SignerAppInfo appInfo = new SignerAppInfo(appName, packageName, iconData);
 			appsArray.add(appInfo);
 		}
 		return appsArray;
 	}
 
+	String getSignerAppIcon(Context context, String packageName, int iconSize) {
+		synchronized (this) {
+			if (iconCache == null) {
+				iconCache = new SignerIconCache(context);
+			}
+		}
+		return iconCache.getIcon(context, packageName, iconSize);
+	}
+
+	/**
+	 * Starts the signer process and binds its providers ahead of the first call, so that call
+	 * does not pay for the cold start.
+	 */
+	SignerProviderClients.Health prewarm(Context context, String packageName) {
+		providerClients.prewarm(context, packageName, PREWARM_METHODS);
+		return probe(context, packageName);
+	}
+
+	/** Sends the signer a GET_PUBLIC_KEY query and returns its provider's health after it. */
+	SignerProviderClients.Health probe(Context context, String packageName) {
+		Cursor result = providerClients.query(context, packageName, "GET_PUBLIC_KEY", new String[] { "login" }, null);
+		if (result != null) {
+			result.close();
+		}
+		return providerClients.health(packageName);
+	}
+
+	SignerProviderClients.Health health(String packageName) {
+		return providerClients.health(packageName);
+	}
+
 	public String getPublicKey(Context context, String packageName) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".GET_PUBLIC_KEY");
 		String[] projection = new String[] { "login" };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "GET_PUBLIC_KEY", projection, null);
 		if (result == null) {
 			return null;
 		}
-		String npub = null;
-		if (result.moveToFirst()) {
-			int index = result.getColumnIndex("signature");
-			if (index >= 0) {
-				npub = result.getString(index);
-			}
-		}
-		result.close();
+		String npub = readSignature(result);
 		return npub;
 	}
 
 	public String[] signEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
-		Uri uri = Uri.parse("content://" + packageName + ".SIGN_EVENT");
 		String[] projection = new String[] { eventJson, "", loggedInUserNpub };
-		ContentResolver contentResolver = context.getContentResolver();
-		Cursor result = contentResolver.query(uri, projection, "1", null, null);
+		Cursor result = query(context, packageName, "SIGN_EVENT", projection, "1");
 		if (result == null) {
 			return null;
 		}
+		long start = System.nanoTime();
 		String[] signedEvent = null;
 		if (result.moveToFirst()) {
 			int signatureIndex = result.getColumnIndex("signature");
@@ -81,112 +158,146 @@ public class NostrSigner {
 			}
 		}
 		result.close();
+		metrics.recordLatency(SignerMetrics.STAGE_CURSOR_READ, System.nanoTime() - start);
 		return signedEvent;
 	}
 
 	public String nip04Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".NIP04_ENCRYPT");
 		String[] projection = new String[] { plainText, recipientPubKey, loggedInUserNpub };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "NIP04_ENCRYPT", projection, null);
 
 		if (result == null) {
 			return null;
 		}
 
-		String encryptedText = null;
-		if (result.moveToFirst()) {
-			int index = result.getColumnIndex("signature");
-			if (index >= 0) {
-				encryptedText = result.getString(index);
-			}
-		}
-		result.close();
+		String encryptedText = readSignature(result);
 		return encryptedText;
 	}
 
 	public String nip04Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".NIP04_DECRYPT");
+		String cacheKey = null;
+		if (decryptCache.isEnabled()) {
+			cacheKey = decryptCache.key("NIP04_DECRYPT", packageName, loggedInUserNpub, senderPubKey, encryptedText);
+			String cached = decryptCache.get(cacheKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
 		String[] projection = new String[] { encryptedText, senderPubKey, loggedInUserNpub };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "NIP04_DECRYPT", projection, null);
 
 		if (result == null) {
 			return null;
 		}
 
-		String decryptedText = null;
-		if (result.moveToFirst()) {
-			int index = result.getColumnIndex("signature");
-			if (index >= 0) {
-				decryptedText = result.getString(index);
-			}
+		String decryptedText = readSignature(result);
+		if (cacheKey != null && decryptedText != null) {
+			decryptCache.put(cacheKey, decryptedText);
 		}
-		result.close();
 		return decryptedText;
 	}
 
 	public String nip44Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".NIP44_ENCRYPT");
 		String[] projection = new String[] { plainText, recipientPubKey, loggedInUserNpub };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "NIP44_ENCRYPT", projection, null);
 
 		if (result == null) {
 			return null;
 		}
 
-		String encryptedText = null;
-		if (result.moveToFirst()) {
-			int index = result.getColumnIndex("signature");
-			if (index >= 0) {
-				encryptedText = result.getString(index);
-			}
-		}
-		result.close();
+		String encryptedText = readSignature(result);
 		return encryptedText;
 	}
 
 	public String nip44Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".NIP44_DECRYPT");
+		String cacheKey = null;
+		if (decryptCache.isEnabled()) {
+			cacheKey = decryptCache.key("NIP44_DECRYPT", packageName, loggedInUserNpub, senderPubKey, encryptedText);
+			String cached = decryptCache.get(cacheKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
 		String[] projection = new String[] { encryptedText, senderPubKey, loggedInUserNpub };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "NIP44_DECRYPT", projection, null);
 
 		if (result == null) {
 			return null;
 		}
 
-		String decryptedText = null;
-		if (result.moveToFirst()) {
-			int index = result.getColumnIndex("signature");
-			if (index >= 0) {
-				decryptedText = result.getString(index);
-			}
+		String decryptedText = readSignature(result);
+		if (cacheKey != null && decryptedText != null) {
+			decryptCache.put(cacheKey, decryptedText);
 		}
-		result.close();
 		return decryptedText;
 	}
 
 	public String decryptZapEvent(Context context, String packageName, String eventJson, String loggedInUserNpub) {
-		ContentResolver contentResolver = context.getContentResolver();
-		Uri uri = Uri.parse("content://" + packageName + ".DECRYPT_ZAP_EVENT");
+		String cacheKey = null;
+		if (decryptCache.isEnabled()) {
+			cacheKey = decryptCache.key("DECRYPT_ZAP_EVENT", packageName, loggedInUserNpub, "", eventJson);
+			String cached = decryptCache.get(cacheKey);
+			if (cached != null) {
+				return cached;
+			}
+		}
 		String[] projection = new String[] { eventJson, "", loggedInUserNpub };
-		Cursor result = contentResolver.query(uri, projection, null, null, null);
+		Cursor result = query(context, packageName, "DECRYPT_ZAP_EVENT", projection, null);
 
 		if (result == null) {
 			return null;
 		}
 
-		String decryptedEventJson = null;
+		String decryptedEventJson = readSignature(result);
+		if (cacheKey != null && decryptedEventJson != null) {
+			decryptCache.put(cacheKey, decryptedEventJson);
+		}
+		return decryptedEventJson;
+	}
+
+	// Projections are {content, pubKey, current user}; large content goes through a pipe when the signer supports it.
+	// Combinations the provider rejected recently are not queried, and the caller falls back to the intent. A
+	// signer whose call() returned null is sent large content through the plain query until its route expires.
+	private Cursor query(Context context, String packageName, String method, String[] projection, String selection) {
+		int kind = SignerRoutes.kind(method, projection[0]);
+		if (!routes.useProvider(packageName, method, kind)) {
+			return null;
+		}
+		Cursor result = null;
+		String callRoute = LargePayloads.route(method);
+		if (projection.length == 3 && largePayloads.isLarge(projection[0])
+				&& routes.useProvider(packageName, callRoute, SignerRoutes.NO_KIND)) {
+			result = largePayloads.call(providerClients, context, packageName, method, projection[0], projection[1],
+					projection[2]);
+			if (result == null) {
+				routes.rejected(packageName, callRoute, SignerRoutes.NO_KIND);
+			} else {
+				routes.answered(packageName, callRoute, SignerRoutes.NO_KIND);
+			}
+		}
+		if (result == null) {
+			result = providerClients.query(context, packageName, method, projection, selection);
+		}
+		if (result == null || result.getColumnIndex(LargePayloads.RESULT_REJECTED) >= 0) {
+			routes.rejected(packageName, method, kind);
+		} else {
+			routes.answered(packageName, method, kind);
+		}
+		return result;
+	}
+
+	private String readSignature(Cursor result) {
+		long start = System.nanoTime();
+		String signature = null;
 		if (result.moveToFirst()) {
 			int index = result.getColumnIndex("signature");
 			if (index >= 0) {
-				decryptedEventJson = result.getString(index);
+				signature = result.getString(index);
 			}
 		}
 		result.close();
-		return decryptedEventJson;
+		metrics.recordLatency(SignerMetrics.STAGE_CURSOR_READ, System.nanoTime() - start);
+		return signature;
 	}
 
 }
@@ -1,10 +1,15 @@
 package social.nostr.signer;
 
+import android.content.BroadcastReceiver;
 import android.content.Intent;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.app.Activity;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.activity.result.ActivityResult;
 
@@ -16,24 +21,328 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @CapacitorPlugin(name = "NostrSignerPlugin")
 public class NostrSignerPlugin extends Plugin {
 
+	private static final int DEFAULT_DECRYPT_CHUNK_SIZE = 25;
+	private static final int DEFAULT_CONVERSATION_KEY_CACHE_SIZE = 256;
+	private static final int DEFAULT_INTENT_BATCH_WINDOW_MS = 150;
+	private static final int DEFAULT_LARGE_PAYLOAD_THRESHOLD = 64 * 1024;
+	private static final int DEFAULT_BUNKER_MAX_IN_FLIGHT = 32;
+	private static final int DEFAULT_BUNKER_TIMEOUT_MS = 30000;
+	private static final int DEFAULT_REJECTION_TTL_MS = 5 * 60 * 1000;
+	private static final String BUNKER_KEYS_PREFS_NAME = "NostrSignerPluginBunkerKeys";
+	// Executor queue of decrypt store reads, kept apart from the signer packages so a busy signer does not hold them up.
+	private static final String DECRYPT_STORE_QUEUE = ":decryptStore";
+
 	private NostrSigner implementation;
-	private String signerPackageName = null;
+	private SignerRoutes routes;
+	private DecryptStore decryptStore;
+	private LocalSigner localSigner;
+	private BunkerSigner bunkerSigner;
+	private LocalKeyStore bunkerKeys;
+	private SignerExecutor executor;
+	// Package broadcasts query the package manager here, off the signer pool, so they never wait behind signer calls.
+	private final ExecutorService packageChanges = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "NostrSigner-packages");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private EventVerifier eventVerifier;
+	private SignerSession session;
+	private SignerAccounts accounts;
+	private volatile String signerPackageName = null;
+	private IntentBatcher intentBatcher;
+	private final PendingCalls pendingCalls = new PendingCalls();
+	private final SingleFlight singleFlight = new SingleFlight(pendingCalls);
+	private final SignerMetrics metrics = new SignerMetrics();
+	private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+	private long metricsIntervalMs;
+	private long requestTimeoutMs;
+	private boolean prewarm;
 
 	@Override
 	public void load() {
-		implementation = new NostrSigner();
+		routes = new SignerRoutes(getConfig().getInt("rejectionTtlMs", DEFAULT_REJECTION_TTL_MS));
+		implementation = new NostrSigner(getConfig().getInt("decryptCacheBytes", 0),
+				getConfig().getInt("largePayloadThreshold", DEFAULT_LARGE_PAYLOAD_THRESHOLD), metrics, routes);
+		decryptStore = DecryptStore.create(getContext(), getConfig().getInt("decryptStoreBytes", 0));
+		requestTimeoutMs = getConfig().getInt("requestTimeoutMs", 0);
+		prewarm = getConfig().getBoolean("prewarm", false);
+		executor = new SignerExecutor(getConfig().getInt("parallelism", 4), getConfig().getInt("perSignerParallelism", 2),
+				getConfig().getInt("backgroundParallelism", 1));
+		eventVerifier = new EventVerifier(getConfig().getInt("verifyParallelism", Runtime.getRuntime().availableProcessors()));
+		intentBatcher = new IntentBatcher(getConfig().getInt("intentBatchWindowMs", DEFAULT_INTENT_BATCH_WINDOW_MS), metrics, (carrier, intents) -> {
+			startActivityForResult(carrier, intents.get(0), "intentFallbackResult");
+			for (int i = 1; i < intents.size(); i++) {
+				getActivity().startActivity(intents.get(i));
+			}
+		});
+		localSigner = new LocalSigner(new LocalKeyStore(getContext()),
+				getConfig().getInt("conversationKeyCacheSize", DEFAULT_CONVERSATION_KEY_CACHE_SIZE), getConfig().getBoolean("localKeys", false));
+		session = new SignerSession(getContext());
+		accounts = new SignerAccounts(getContext());
+		signerPackageName = session.getPackageName();
+		if (session.getNpub() != null && accounts.get(session.getNpub()) == null) {
+			// A session saved before accounts were kept.
+			accounts.put(getContext(), session.getNpub(), signerPackageName, session.getPermissions());
+		}
+		if (LocalSigner.PACKAGE_NAME.equals(signerPackageName)) {
+			localSigner.select(session.getNpub());
+		}
+		bunkerSigner = new BunkerSigner(getConfig().getInt("bunkerMaxInFlight", DEFAULT_BUNKER_MAX_IN_FLIGHT),
+				getConfig().getInt("bunkerTimeoutMs", DEFAULT_BUNKER_TIMEOUT_MS), metrics,
+				this::notifyBunkerAuthUrl);
+		bunkerKeys = new LocalKeyStore(getContext(), BUNKER_KEYS_PREFS_NAME);
+		SignerAccounts.Account bunkerAccount = accounts.forPackage(BunkerSigner.PACKAGE_NAME);
+		if (bunkerAccount != null && !restoreBunker(bunkerAccount.npub)) {
+			accounts.remove(bunkerAccount.npub);
+			if (session.isLoggedIn(BunkerSigner.PACKAGE_NAME)) {
+				session.clear();
+				signerPackageName = null;
+			}
+		}
+
+		IntentFilter filter = new IntentFilter();
+		filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+		filter.addDataScheme("package");
+		getContext().registerReceiver(packageChangeReceiver, filter);
+
+		metricsIntervalMs = getConfig().getInt("metricsIntervalMs", 0);
+		if (metricsIntervalMs > 0) {
+			metricsHandler.postDelayed(metricsReporter, metricsIntervalMs);
+		}
+	}
+
+	private final Runnable metricsReporter = new Runnable() {
+		@Override
+		public void run() {
+			notifyListeners("metrics", metrics.snapshot());
+			metricsHandler.postDelayed(this, metricsIntervalMs);
+		}
+	};
+
+	private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			Uri data = intent.getData();
+			String packageName = data != null ? data.getSchemeSpecificPart() : null;
+			if (packageName == null) {
+				return;
+			}
+			if (packageName.equals(session.getPackageName())) {
+				session.clear();
+			}
+			List<SignerAccounts.Account> removed = accounts.removePackage(packageName);
+			for (SignerAccounts.Account account : removed) {
+				implementation.clearCache(account.npub);
+			}
+			routes.clear(packageName);
+			// An update also sends REMOVED and ADDED with EXTRA_REPLACING; only report the REPLACED broadcast.
+			if (intent.getBooleanExtra(Intent.EXTRA_REPLACING, false) && !Intent.ACTION_PACKAGE_REPLACED.equals(intent.getAction())) {
+				return;
+			}
+			// Whether it was a signer is read from the list cached before this broadcast, as a removed
+			// package no longer resolves. Without one, having had an account means it was a signer.
+			List<ResolveInfo> before = implementation.invalidateSigners();
+			boolean wasSigner = before != null ? contains(before, packageName) : !removed.isEmpty();
+			String action = Intent.ACTION_PACKAGE_ADDED.equals(intent.getAction()) ? "added"
+					: Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction()) ? "removed" : "replaced";
+			packageChanges.execute(() -> onPackageChanged(context, packageName, action, wasSigner));
+		}
+	};
+
+	private static boolean contains(List<ResolveInfo> signers, String packageName) {
+		for (ResolveInfo signer : signers) {
+			if (packageName.equals(signer.activityInfo.packageName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void onPackageChanged(Context context, String packageName, String action, boolean wasSigner) {
+		List<ResolveInfo> signers = implementation.isExternalSignerInstalled(context, null);
+		boolean isSigner = contains(signers, packageName);
+		JSArray packages = new JSArray();
+		for (ResolveInfo signer : signers) {
+			packages.put(signer.activityInfo.packageName);
+		}
+		if (!wasSigner && !isSigner) {
+			return;
+		}
+		JSObject ret = new JSObject();
+		ret.put("packageName", packageName);
+		ret.put("action", action);
+		ret.put("installed", isSigner);
+		ret.put("packages", packages);
+		notifyListeners("signersChanged", ret);
+	}
+
+	// The page a remote signer wants the user to approve the request on. The app decides whether
+	// and how to open it; the plugin never opens URLs the bunker sends.
+	private void notifyBunkerAuthUrl(String url) {
+		JSObject ret = new JSObject();
+		ret.put("url", url);
+		notifyListeners("bunkerAuthUrl", ret);
+	}
+
+	@Override
+	protected void handleOnResume() {
+		if (prewarm) {
+			prewarm();
+		}
+	}
+
+	// Warms up the external signers of the active session and the saved accounts, on their own queues.
+	private void prewarm() {
+		List<String> packages = new ArrayList<>();
+		String active = signerPackageName;
+		if (active != null) {
+			packages.add(active);
+		}
+		for (SignerAccounts.Account account : accounts.list()) {
+			if (!packages.contains(account.packageName)) {
+				packages.add(account.packageName);
+			}
+		}
+		for (String packageName : packages) {
+			if (backend(packageName) != implementation) {
+				continue;
+			}
+			executor.execute(packageName, SignerExecutor.BACKGROUND, () -> {
+				try {
+					implementation.prewarm(getContext(), packageName);
+				} catch (RuntimeException e) {
+					// The first call binds instead.
+				}
+			});
+		}
+	}
+
+	@Override
+	protected void handleOnDestroy() {
+		getContext().unregisterReceiver(packageChangeReceiver);
+		metricsHandler.removeCallbacks(metricsReporter);
+		pendingCalls.cancelAll("Plugin destroyed");
+		executor.shutdown();
+		packageChanges.shutdownNow();
+		eventVerifier.shutdown();
+		intentBatcher.cancelAll("Plugin destroyed");
+		implementation.release();
+		bunkerSigner.release();
+		decryptStore.release();
+	}
+
+	private void runOnSigner(PluginCall call, String packageName, int defaultPriority, Runnable task) {
+		Integer priority = priority(call, defaultPriority);
+		if (priority == null) {
+			return;
+		}
+		boolean tracked = pendingCalls.isTracked(call);
+		long entered = System.nanoTime();
+		executor.execute(packageName, priority, () -> {
+			metrics.recordLatency(SignerMetrics.STAGE_QUEUE, System.nanoTime() - entered);
+			try {
+				task.run();
+			} catch (Exception e) {
+				if (!tracked || pendingCalls.finish(call)) {
+					call.reject(e.getMessage(), e);
+				}
+			} finally {
+				SignerProviderClients.setCancellationSignal(null);
+			}
+		}, () -> {
+			// Tracked calls are rejected by cancelAll; the others only hear back here.
+			if (!tracked || pendingCalls.finish(call)) {
+				call.reject("Plugin destroyed");
+			}
+		});
+	}
+
+	// The call's priority class, or null once the call was rejected for an unknown one.
+	private Integer priority(PluginCall call, int defaultPriority) {
+		try {
+			return SignerExecutor.priority(call.getString("priority"), defaultPriority);
+		} catch (IllegalArgumentException e) {
+			pendingCalls.finish(call);
+			call.reject(e.getMessage());
+			return null;
+		}
+	}
+
+	private long timeoutMs(PluginCall call) {
+		Integer timeoutMs = call.getInt("timeoutMs");
+		return timeoutMs != null ? timeoutMs : requestTimeoutMs;
+	}
+
+	private static int cancelOutcome(String message) {
+		return PendingCalls.TIMED_OUT.equals(message) ? SignerMetrics.OUTCOME_TIMED_OUT : SignerMetrics.OUTCOME_CANCELLED;
+	}
+
+	@PluginMethod
+	public void getSignerHealth(PluginCall call) {
+		String packageName = getPackageName(call);
+		if (packageName == null || packageName.isEmpty()) {
+			call.reject("Signer package name not set. Call setPackageName first.");
+			return;
+		}
+		if (backend(packageName) != implementation) {
+			JSObject ret = new JSObject();
+			ret.put("packageName", packageName);
+			ret.put("ready", LocalSigner.PACKAGE_NAME.equals(packageName) || bunkerSigner.isConfigured());
+			call.resolve(ret);
+			return;
+		}
+		if (!call.getBoolean("probe", true)) {
+			call.resolve(toHealth(packageName, implementation.health(packageName)));
+			return;
+		}
+		runOnSigner(call, packageName, SignerExecutor.NORMAL,
+				() -> call.resolve(toHealth(packageName, implementation.probe(getContext(), packageName))));
+	}
+
+	private static JSObject toHealth(String packageName, SignerProviderClients.Health health) {
+		JSObject ret = new JSObject();
+		ret.put("packageName", packageName);
+		ret.put("ready", health != null);
+		if (health != null) {
+			ret.put("latencyMs", health.latencyNanos / 1e6);
+			ret.put("lastSeenAt", health.seenAt);
+		}
+		return ret;
+	}
+
+	@PluginMethod
+	public void cancel(PluginCall call) {
+		String id = call.getString("id");
+		if (id == null || id.isEmpty()) {
+			call.reject("Missing id parameter");
+			return;
+		}
+		JSObject ret = new JSObject();
+		ret.put("cancelled", pendingCalls.cancel(id));
+		call.resolve(ret);
 	}
 
 	@PluginMethod
 	public void isExternalSignerInstalled(PluginCall call) {
 		Context context = getContext();
-		String packageName = call.getString("packageName");
-		List<ResolveInfo> signers = implementation.isExternalSignerInstalled(context, signerPackageName);
+		String packageName = getPackageName(call);
+		List<ResolveInfo> signers = implementation.isExternalSignerInstalled(context, packageName);
 		boolean isInstalled = !signers.isEmpty();
 		JSObject ret = new JSObject();
 		ret.put("installed", isInstalled);
@@ -43,14 +352,18 @@ public class NostrSignerPlugin extends Plugin {
 	@PluginMethod
 	public void getInstalledSignerApps(PluginCall call) {
 		Context context = getContext();
-		List<SignerAppInfo> signerAppInfos = implementation.getInstalledSignerApps(context);
+		boolean includeIcons = call.getBoolean("includeIcons", true);
+		int iconSize = call.getInt("iconSize", 0);
+		List<SignerAppInfo> signerAppInfos = implementation.getInstalledSignerApps(context, includeIcons, iconSize);
 		JSArray appsArray = new JSArray();
 		for (SignerAppInfo signerAppInfo : signerAppInfos) {
 			JSObject appInfo = new JSObject();
 			appInfo.put("name", signerAppInfo.name);
 			appInfo.put("packageName", signerAppInfo.packageName);
-			appInfo.put("iconData", signerAppInfo.iconData);
-			appInfo.put("iconUrl", signerAppInfo.iconUrl);
+			if (signerAppInfo.iconData != null) {
+				appInfo.put("iconData", signerAppInfo.iconData);
+				appInfo.put("iconUrl", "data:image/png;base64," + signerAppInfo.iconData);
+			}
 			appsArray.put(appInfo);
 		}
 		JSObject ret = new JSObject();
@@ -58,10 +371,40 @@ public class NostrSignerPlugin extends Plugin {
 		call.resolve(ret);
 	}
 
+	@PluginMethod
+	public void getSignerAppIcon(PluginCall call) {
+		String packageName = call.getString("packageName");
+		if (packageName == null || packageName.isEmpty()) {
+			call.reject("Missing or empty packageName parameter");
+			return;
+		}
+		int size = call.getInt("size", 0);
+		runOnSigner(call, packageName, SignerExecutor.NORMAL, () -> {
+			String iconData = implementation.getSignerAppIcon(getContext(), packageName, size);
+			if (iconData == null) {
+				call.reject("Signer app not installed");
+				return;
+			}
+			JSObject ret = new JSObject();
+			ret.put("iconData", iconData);
+			ret.put("iconUrl", "data:image/png;base64," + iconData);
+			call.resolve(ret);
+		});
+	}
+
+	private SignerBackend backend(String packageName) {
+		if (LocalSigner.PACKAGE_NAME.equals(packageName)) {
+			return localSigner;
+		}
+		return BunkerSigner.PACKAGE_NAME.equals(packageName) ? bunkerSigner : implementation;
+	}
+
+	// The call's packageName, else the signer of the account its npub names, else the active signer.
 	private String getPackageName(PluginCall call) {
 		String packageName = call.getString("packageName");
 		if (packageName == null || packageName.isEmpty()) {
-			packageName = signerPackageName;
+			SignerAccounts.Account account = accounts.get(call.getString("npub"));
+			packageName = account != null ? account.packageName : signerPackageName;
 		}
 		return packageName;
 	}
@@ -77,6 +420,280 @@ public class NostrSignerPlugin extends Plugin {
 		call.resolve();
 	}
 
+	private String getNpub(PluginCall call) {
+		String npub = call.getString("npub");
+		if (npub == null || npub.isEmpty()) {
+			npub = session.getNpub();
+		}
+		return npub;
+	}
+
+	@PluginMethod
+	public void logout(PluginCall call) {
+		String npub = call.getString("npub");
+		if (npub != null && !npub.isEmpty()) {
+			logout(npub);
+			call.resolve();
+			return;
+		}
+		session.clear();
+		accounts.clear();
+		implementation.clearCache();
+		decryptStore.clear();
+		localSigner.clearCache();
+		localSigner.select(null);
+		forgetBunker();
+		signerPackageName = null;
+		call.resolve();
+	}
+
+	// Logs one account out and drops its cached results; the other accounts stay logged in.
+	private void logout(String npub) {
+		SignerAccounts.Account account = accounts.remove(npub);
+		implementation.clearCache(npub);
+		decryptStore.removeAccount(npub);
+		localSigner.clearCache(npub);
+		if (account != null && BunkerSigner.PACKAGE_NAME.equals(account.packageName)) {
+			forgetBunker();
+		}
+		if (npub.equals(session.getNpub())) {
+			if (session.isLoggedIn(LocalSigner.PACKAGE_NAME)) {
+				localSigner.select(null);
+			}
+			session.clear();
+			signerPackageName = null;
+		}
+	}
+
+	/**
+	 * Makes {@code npub} the active account and registers it, so calls with this npub go to {@code packageName}.
+	 * Logging in may grant the signer new permissions, so what its provider rejected so far is forgotten.
+	 */
+	private void login(String packageName, String npub, String permissions) {
+		routes.clear(packageName);
+		signerPackageName = packageName;
+		session.save(getContext(), packageName, npub, permissions);
+		accounts.put(getContext(), npub, packageName, permissions);
+	}
+
+	@PluginMethod
+	public void getAccounts(PluginCall call) {
+		String activeNpub = session.getNpub();
+		JSArray list = new JSArray();
+		for (SignerAccounts.Account account : accounts.list()) {
+			JSObject item = new JSObject();
+			item.put("npub", account.npub);
+			item.put("package", account.packageName);
+			if (account.permissions != null) {
+				item.put("permissions", account.permissions);
+			}
+			item.put("active", account.npub.equals(activeNpub));
+			list.put(item);
+		}
+		JSObject ret = new JSObject();
+		ret.put("accounts", list);
+		call.resolve(ret);
+	}
+
+	@PluginMethod
+	public void useLocalKey(PluginCall call) {
+		if (!localSigner.isEnabled()) {
+			call.reject("Local keys are disabled. Set localKeys in the plugin config to use them.");
+			return;
+		}
+		if (!LocalKeyStore.isSupported()) {
+			call.reject("Local keys need Android 6.0 or newer");
+			return;
+		}
+		String nsec = call.getString("nsec");
+		String npub = call.getString("npub");
+		runOnSigner(call, LocalSigner.PACKAGE_NAME, SignerExecutor.INTERACTIVE, () -> {
+			String selected;
+			try {
+				if (nsec != null && !nsec.isEmpty()) {
+					selected = localSigner.importKey(nsec);
+				} else if (npub != null && !npub.isEmpty()) {
+					if (!localSigner.hasKey(npub)) {
+						call.reject("No local key for " + npub);
+						return;
+					}
+					selected = npub;
+				} else {
+					selected = localSigner.generateKey();
+				}
+			} catch (GeneralSecurityException e) {
+				call.reject("Could not store the local key: " + e.getMessage(), e);
+				return;
+			}
+			localSigner.select(selected);
+			login(LocalSigner.PACKAGE_NAME, selected, null);
+			JSObject ret = new JSObject();
+			ret.put("npub", selected);
+			ret.put("package", LocalSigner.PACKAGE_NAME);
+			call.resolve(ret);
+		});
+	}
+
+	@PluginMethod
+	public void getLocalKeys(PluginCall call) {
+		JSArray npubs = new JSArray();
+		for (String npub : localSigner.storedNpubs()) {
+			npubs.put(npub);
+		}
+		JSObject ret = new JSObject();
+		ret.put("npubs", npubs);
+		call.resolve(ret);
+	}
+
+	@PluginMethod
+	public void removeLocalKey(PluginCall call) {
+		String npub = call.getString("npub");
+		if (npub == null || npub.isEmpty()) {
+			call.reject("Missing npub parameter");
+			return;
+		}
+		localSigner.removeKey(npub);
+		SignerAccounts.Account account = accounts.get(npub);
+		if (account != null && LocalSigner.PACKAGE_NAME.equals(account.packageName)) {
+			accounts.remove(npub);
+		}
+		if (session.isLoggedIn(LocalSigner.PACKAGE_NAME) && npub.equals(session.getNpub())) {
+			session.clear();
+			signerPackageName = null;
+		}
+		call.resolve();
+	}
+
+	@PluginMethod
+	public void connectBunker(PluginCall call) {
+		String bunkerUrl = call.getString("bunkerUrl");
+		if (bunkerUrl == null || bunkerUrl.isEmpty()) {
+			call.reject("Missing bunkerUrl parameter");
+			return;
+		}
+		String permissions = call.getString("permissions");
+		runOnSigner(call, BunkerSigner.PACKAGE_NAME, SignerExecutor.INTERACTIVE, () -> {
+			BunkerSigner.Target target = BunkerSigner.Target.parse(bunkerUrl);
+			byte[] clientKey = LocalSigner.randomSecretKey();
+			String npub;
+			try {
+				npub = bunkerSigner.connect(target, clientKey, permissions);
+				forgetBunkerKeys();
+				if (LocalKeyStore.isSupported()) {
+					try {
+						bunkerKeys.save(target.toUrl(), clientKey);
+					} catch (GeneralSecurityException e) {
+						// The connection works, but will need connectBunker again after a restart.
+					}
+				}
+			} finally {
+				Arrays.fill(clientKey, (byte) 0);
+			}
+			// One bunker is connected at a time; an account on the one it replaces can no longer sign.
+			accounts.removePackage(BunkerSigner.PACKAGE_NAME);
+			login(BunkerSigner.PACKAGE_NAME, npub, permissions);
+			JSObject ret = new JSObject();
+			ret.put("npub", npub);
+			ret.put("package", BunkerSigner.PACKAGE_NAME);
+			call.resolve(ret);
+		});
+	}
+
+	// Reconnects to the bunker of the saved account with its stored client key.
+	private boolean restoreBunker(String npub) {
+		if (!LocalKeyStore.isSupported()) {
+			return false;
+		}
+		for (String url : bunkerKeys.npubs()) {
+			byte[] clientKey = null;
+			try {
+				clientKey = bunkerKeys.load(url);
+				if (clientKey != null) {
+					bunkerSigner.use(BunkerSigner.Target.parse(url), clientKey, npub);
+					return true;
+				}
+			} catch (GeneralSecurityException | IllegalArgumentException e) {
+				return false;
+			} finally {
+				if (clientKey != null) {
+					Arrays.fill(clientKey, (byte) 0);
+				}
+			}
+		}
+		return false;
+	}
+
+	private void forgetBunker() {
+		bunkerSigner.close();
+		forgetBunkerKeys();
+	}
+
+	private void forgetBunkerKeys() {
+		for (String url : bunkerKeys.npubs()) {
+			bunkerKeys.remove(url);
+		}
+	}
+
+	@PluginMethod
+	public void clearCache(PluginCall call) {
+		implementation.clearCache();
+		call.resolve();
+	}
+
+	@PluginMethod
+	public void getCacheStats(PluginCall call) {
+		DecryptCache.Stats stats = implementation.getCacheStats();
+		JSObject ret = new JSObject();
+		ret.put("entries", stats.entries);
+		ret.put("bytes", stats.bytes);
+		ret.put("maxBytes", stats.maxBytes);
+		ret.put("hits", stats.hits);
+		ret.put("misses", stats.misses);
+		ret.put("evictions", stats.evictions);
+		ConversationKeyCache.Stats keyStats = localSigner.getCacheStats();
+		JSObject conversationKeys = new JSObject();
+		conversationKeys.put("entries", keyStats.entries);
+		conversationKeys.put("maxEntries", keyStats.maxEntries);
+		conversationKeys.put("hits", keyStats.hits);
+		conversationKeys.put("misses", keyStats.misses);
+		conversationKeys.put("evictions", keyStats.evictions);
+		ret.put("conversationKeys", conversationKeys);
+		DecryptStore.Stats storeStats = decryptStore.stats();
+		JSObject store = new JSObject();
+		store.put("entries", storeStats.entries);
+		store.put("bytes", storeStats.bytes);
+		store.put("maxBytes", storeStats.maxBytes);
+		store.put("hits", storeStats.hits);
+		store.put("misses", storeStats.misses);
+		store.put("compactions", storeStats.compactions);
+		ret.put("store", store);
+		call.resolve(ret);
+	}
+
+	@PluginMethod
+	public void getRoutingTable(PluginCall call) {
+		JSObject ret = new JSObject();
+		ret.put("routes", routes.snapshot());
+		if (call.getBoolean("reset", false)) {
+			routes.clear();
+		}
+		call.resolve(ret);
+	}
+
+	@PluginMethod
+	public void getQueueStats(PluginCall call) {
+		call.resolve(executor.stats(call.getBoolean("reset", false)));
+	}
+
+	@PluginMethod
+	public void getMetrics(PluginCall call) {
+		JSObject ret = metrics.snapshot();
+		if (call.getBoolean("reset", false)) {
+			metrics.reset();
+		}
+		call.resolve(ret);
+	}
+
 	@PluginMethod
 	public void getPublicKey(PluginCall call) {
 		String packageName = getPackageName(call);
@@ -84,28 +701,39 @@ public class NostrSignerPlugin extends Plugin {
 			call.reject("Signer package name not set. Call setPackageName first.");
 			return;
 		}
-		Context context = getContext();
-		String publicKey = implementation.getPublicKey(context, signerPackageName);
-		if (publicKey != null) {
+		if (session.isLoggedIn(packageName)) {
 			JSObject ret = new JSObject();
-			ret.put("npub", publicKey);
+			ret.put("npub", session.getNpub());
 			ret.put("package", packageName);
 			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:"));
-			intent.setPackage(packageName);
-			intent.putExtra("type", "get_public_key");
+			return;
+		}
+		runOnSigner(call, packageName, SignerExecutor.INTERACTIVE, () -> {
+			Context context = getContext();
+			String publicKey = backend(packageName).getPublicKey(context, packageName);
+			if (publicKey != null) {
+				login(packageName, publicKey, call.getString("permissions"));
+				JSObject ret = new JSObject();
+				ret.put("npub", publicKey);
+				ret.put("package", packageName);
+				call.resolve(ret);
+			} else {
+				Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:"));
+				intent.setPackage(packageName);
+				intent.putExtra("type", "get_public_key");
 
-			String permissions = call.getString("permissions");
-			if (permissions != null) {
-				intent.putExtra("permissions", permissions);
+				String permissions = call.getString("permissions");
+				if (permissions != null) {
+					intent.putExtra("permissions", permissions);
+				}
+				intentBatcher.launchAlone(call, () -> startActivityForResult(call, intent, "getPublicKeyResult"));
 			}
-			startActivityForResult(call, intent, "getPublicKeyResult");
-		}
+		});
 	}
 
 	@ActivityCallback
 	private void getPublicKeyResult(PluginCall call, ActivityResult result) {
+		intentBatcher.release(call);
 		if (result.getResultCode() == Activity.RESULT_CANCELED) {
 			call.reject("Activity Cancelled");
 		} else {
@@ -113,6 +741,10 @@ public class NostrSignerPlugin extends Plugin {
 			JSObject ret = new JSObject();
 			String npub = data.getStringExtra("signature");
 			String packageName = data.getStringExtra("package");
+			if (packageName == null) {
+				packageName = getPackageName(call);
+			}
+			login(packageName, npub, call.getString("permissions"));
 			ret.put("npub", npub);
 			ret.put("package", packageName);
 			call.resolve(ret);
@@ -127,99 +759,354 @@ public class NostrSignerPlugin extends Plugin {
 			return;
 		}
 		String eventJson = call.getString("eventJson");
-		String eventId = call.getString("eventId");
-		String npub = call.getString("npub");
+		String npub = getNpub(call);
+		String format = call.getString("format", SignedEventResult.FORMAT_JSON);
 
-		if (eventJson == null || eventId == null || npub == null) {
+		if (eventJson == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
-		Context context = getContext();
-		String[] signedEventJson = implementation.signEvent(context, packageName, eventJson, npub);
-		if (signedEventJson != null) {
-			JSObject ret = new JSObject();
-			ret.put("signature", signedEventJson[0]);
-			ret.put("id", eventId);
-			ret.put("event", signedEventJson[1]);
-			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + eventJson));
-			intent.setPackage(packageName);
-			intent.putExtra("type", "sign_event");
-			intent.putExtra("id", eventId);
-			intent.putExtra("current_user", npub);
-			startActivityForResult(call, intent, "signEventActivity");
+		if (!SignedEventResult.isFormat(format)) {
+			call.reject("Unknown format: " + format);
+			return;
 		}
-	}
-
-	@ActivityCallback
-	private void signEventActivity(PluginCall call, ActivityResult result) {
-		if (result.getResultCode() == Activity.RESULT_CANCELED) {
-			call.reject("Activity Cancelled");
-		} else {
-			Intent data = result.getData();
-			JSObject ret = new JSObject();
-			String signature = data.getStringExtra("signature");
-			String id = data.getStringExtra("id");
-			String signedEventJson = data.getStringExtra("event");
-			ret.put("signature", signature);
-			ret.put("id", id);
-			ret.put("event", signedEventJson);
-			call.resolve(ret);
+		String eventId = call.getString("eventId");
+		if (eventId == null) {
+			try {
+				eventId = eventId(eventJson, npub);
+			} catch (Exception e) {
+				call.reject("Invalid event: " + e.getMessage());
+				return;
+			}
 		}
+		SignerRequest request = new SignerRequest("sign_event", packageName, eventJson, null, npub, eventId, format);
+		execute(call, request, SignerExecutor.INTERACTIVE, context -> backend(packageName).signEvent(context, packageName, eventJson, npub));
 	}
 
 	@PluginMethod
-	public void nip04Encrypt(PluginCall call) {
+	public void signEvents(PluginCall call) {
 		String packageName = getPackageName(call);
 		if (packageName == null || packageName.isEmpty()) {
 			call.reject("Signer package name not set. Call setPackageName first.");
 			return;
 		}
-		String plainText = call.getString("plainText");
-		String pubKey = call.getString("pubKey");
-		String npub = call.getString("npub");
-		String id = call.getString("id");
+		JSArray events = call.getArray("events");
+		String npub = getNpub(call);
+		String format = call.getString("format", SignedEventResult.FORMAT_JSON);
 
-		if (plainText == null || pubKey == null || npub == null) {
+		if (events == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
-		Context context = getContext();
-		String encryptedText = implementation.nip04Encrypt(context, packageName, plainText, pubKey, npub);
-		if (encryptedText != null) {
+		if (!SignedEventResult.isFormat(format)) {
+			call.reject("Unknown format: " + format);
+			return;
+		}
+		CancellationSignal signal = trackBatch(call, packageName, "sign_event", call.getString("id"));
+		runOnSigner(call, packageName, SignerExecutor.NORMAL, () -> {
+			if (signal.isCanceled()) {
+				return;
+			}
+			Context context = getContext();
+			String[] errors = new String[events.length()];
+			for (int i = 0; i < events.length(); i++) {
+				JSONObject event = events.optJSONObject(i);
+				String eventJson = event != null ? event.optString("eventJson", null) : null;
+				if (eventJson != null && !event.has("eventId")) {
+					try {
+						event.put("eventId", eventId(eventJson, npub));
+					} catch (Exception e) {
+						errors[i] = "Invalid event: " + e.getMessage();
+					}
+				}
+			}
+			BunkerSigner.Request[] pipelined = pipelineToBunker(packageName, "sign_event", events, "eventJson", "eventId", null);
+			cancelBatchWith(signal, call, pipelined);
+			List<JSObject> results = new ArrayList<>(events.length());
+			List<JSObject> fallbackResults = new ArrayList<>();
+			List<SignerRequest> fallbackRequests = new ArrayList<>();
+			for (int i = 0; i < events.length(); i++) {
+				if (signal.isCanceled()) {
+					return;
+				}
+				JSONObject event = events.optJSONObject(i);
+				String eventJson = event != null ? event.optString("eventJson", null) : null;
+				String eventId = event != null ? event.optString("eventId", null) : null;
+				JSObject ret = new JSObject();
+				ret.put("id", eventId);
+				results.add(ret);
+				if (eventJson == null || eventId == null) {
+					ret.put("error", errors[i] != null ? errors[i] : "Missing parameters");
+					continue;
+				}
+				SignerRequest request = new SignerRequest("sign_event", packageName, eventJson, null, npub, eventId, format);
+				try {
+					String[] signedEventJson = pipelined != null ? pipelined[i].await()
+							: backend(packageName).signEvent(context, packageName, eventJson, npub);
+					if (signedEventJson != null) {
+						metrics.count(packageName, "sign_event", SignerMetrics.OUTCOME_PROVIDER);
+						request.putResult(ret, signedEventJson[0], signedEventJson[1]);
+					} else {
+						fallbackResults.add(ret);
+						fallbackRequests.add(request);
+					}
+				} catch (Exception e) {
+					ret.put("error", e.getMessage());
+				}
+			}
+			fallbackBatchToIntent(call, results, fallbackResults, fallbackRequests);
+			if (signal.isCanceled()) {
+				intentBatcher.cancel(call);
+			}
+		});
+	}
+
+	// The NIP-01 id of an unsigned event, which is signed by npub and may leave out its pubkey.
+	private static String eventId(String eventJson, String npub) throws JSONException {
+		String pubkey = npub.startsWith("npub1") ? Hex.encode(Bech32.decode("npub", npub)) : npub;
+		return Hex.encode(Nip01.eventId(eventJson, pubkey));
+	}
+
+	@PluginMethod
+	public void verifyEvents(PluginCall call) {
+		JSArray events = call.getArray("events");
+		if (events == null) {
+			call.reject("Missing parameters");
+			return;
+		}
+		List<Object> items = new ArrayList<>(events.length());
+		for (int i = 0; i < events.length(); i++) {
+			items.add(events.opt(i));
+		}
+		long started = System.nanoTime();
+		eventVerifier.verify(items, results -> {
+			metrics.recordLatency(SignerMetrics.STAGE_VERIFY, System.nanoTime() - started);
+			JSArray resultsArray = new JSArray();
+			for (JSObject result : results) {
+				resultsArray.put(result);
+			}
 			JSObject ret = new JSObject();
-			ret.put("result", encryptedText);
-			ret.put("id", id);
+			ret.put("results", resultsArray);
 			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + plainText));
-			intent.setPackage(signerPackageName);
-			intent.putExtra("type", "nip04_encrypt");
-			intent.putExtra("id", id);
-			intent.putExtra("current_user", npub);
-			intent.putExtra("pubKey", pubKey);
-			startActivityForResult(call, intent, "encryptEventActivity");
+		});
+	}
+
+	private interface ProviderQuery {
+		String[] run(Context context);
+	}
+
+	private static String[] single(String result) {
+		return result != null ? new String[] { result, null } : null;
+	}
+
+	/**
+	 * Runs a single-item request: the provider query on the signer executor at the call's
+	 * priority, then the intent fallback if the provider does not answer. Identical requests
+	 * already in flight are joined instead of being sent to the signer again. The call is rejected
+	 * when its deadline passes or it is cancelled; the shared work stops once no caller is waiting
+	 * for it any more.
+	 */
+	private void execute(PluginCall call, SignerRequest request, int defaultPriority, ProviderQuery query) {
+		Integer priority = priority(call, defaultPriority);
+		if (priority == null) {
+			return;
+		}
+		String key = request.key();
+		// Tracked before joining, so a flight that completes right away still finds the call.
+		track(call, request, key);
+		join(call, request, priority, key, query);
+	}
+
+	private void track(PluginCall call, SignerRequest request, String key) {
+		pendingCalls.track(call, request.id, timeoutMs(call), message -> {
+			metrics.count(request.packageName, request.type, cancelOutcome(message));
+			singleFlight.leave(key, call);
+		});
+	}
+
+	// Sends a call that is already tracked to the signer, or attaches it to the identical request in flight.
+	private void join(PluginCall call, SignerRequest request, int priority, String key, ProviderQuery query) {
+		SingleFlight.Flight flight = singleFlight.join(key, call, request);
+		if (flight == null) {
+			return;
+		}
+		if (BunkerSigner.PACKAGE_NAME.equals(request.packageName)) {
+			// The bunker pipelines requests itself, so they do not hold an executor thread while in flight.
+			BunkerSigner.Request pending = bunkerSigner.submit(request.type, request.content, request.pubKey, new BunkerSigner.Callback() {
+				@Override
+				public void onResult(String result, String signedEventJson) {
+					metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_PROVIDER);
+					remember(request, result);
+					singleFlight.complete(flight, result, signedEventJson);
+				}
+
+				@Override
+				public void onError(String message) {
+					if (!flight.signal.isCanceled()) {
+						metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_REJECTED);
+					}
+					singleFlight.fail(flight, message);
+				}
+			});
+			flight.signal.setOnCancelListener(() -> bunkerSigner.cancel(pending));
+			return;
+		}
+		long entered = System.nanoTime();
+		executor.execute(request.packageName, priority, () -> {
+			metrics.recordLatency(SignerMetrics.STAGE_QUEUE, System.nanoTime() - entered);
+			if (flight.signal.isCanceled()) {
+				return;
+			}
+			String[] result;
+			SignerProviderClients.setCancellationSignal(flight.signal);
+			try {
+				result = query.run(getContext());
+			} catch (Exception e) {
+				if (!flight.signal.isCanceled()) {
+					metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_REJECTED);
+				}
+				singleFlight.fail(flight, e.getMessage());
+				return;
+			} finally {
+				SignerProviderClients.setCancellationSignal(null);
+			}
+			if (result != null) {
+				metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_PROVIDER);
+				remember(request, result[0]);
+				singleFlight.complete(flight, result[0], result[1]);
+				return;
+			}
+			metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_INTENT);
+			intentBatcher.enqueue(call, request, new IntentBatcher.Callback() {
+				@Override
+				public void onResult(String result, String signedEventJson) {
+					routes.approvedByIntent(request.packageName, request.type, request.content);
+					remember(request, result);
+					singleFlight.complete(flight, result, signedEventJson);
+				}
+
+				@Override
+				public void onError(String message) {
+					metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_REJECTED);
+					singleFlight.fail(flight, message);
+				}
+			});
+			flight.signal.setOnCancelListener(() -> intentBatcher.cancel(call));
+		});
+	}
+
+	/**
+	 * Tracks a batch call under {@code id} with its deadline. The returned signal is cancelled
+	 * when the call times out or is cancelled.
+	 */
+	private CancellationSignal trackBatch(PluginCall call, String packageName, String type, String id) {
+		CancellationSignal signal = new CancellationSignal();
+		pendingCalls.track(call, id, timeoutMs(call), message -> {
+			metrics.count(packageName, type, cancelOutcome(message));
+			signal.cancel();
+		});
+		return signal;
+	}
+
+	// Stops the provider query, pipelined bunker requests and queued intents of a batch when it is cancelled.
+	private void cancelBatchWith(CancellationSignal signal, PluginCall call, BunkerSigner.Request[] pipelined) {
+		signal.setOnCancelListener(() -> {
+			for (int i = 0; pipelined != null && i < pipelined.length; i++) {
+				if (pipelined[i] != null) {
+					bunkerSigner.cancel(pipelined[i]);
+				}
+			}
+			intentBatcher.cancel(call);
+		});
+		SignerProviderClients.setCancellationSignal(signal);
+	}
+
+	/**
+	 * Sends every valid batch item to the bunker before the results are read, so they are in
+	 * flight together instead of one round trip each. Items whose result is already {@code known},
+	 * e.g. from the decrypt store, are not sent. Returns null for other backends.
+	 */
+	private BunkerSigner.Request[] pipelineToBunker(String packageName, String type, JSArray items, String contentKey, String idKey,
+			String[] known) {
+		if (!BunkerSigner.PACKAGE_NAME.equals(packageName)) {
+			return null;
+		}
+		BunkerSigner.Request[] requests = new BunkerSigner.Request[items.length()];
+		for (int i = 0; i < items.length(); i++) {
+			JSONObject item = items.optJSONObject(i);
+			String content = item != null ? item.optString(contentKey, null) : null;
+			String pubKey = item != null ? item.optString("pubKey", null) : null;
+			String id = item != null ? item.optString(idKey, null) : null;
+			if (content != null && id != null && (pubKey != null || "sign_event".equals(type)) && (known == null || known[i] == null)) {
+				requests[i] = bunkerSigner.submit(type, content, pubKey, null);
+			}
+		}
+		return requests;
+	}
+
+	private void fallbackBatchToIntent(PluginCall call, List<JSObject> results, List<JSObject> fallbackResults,
+			List<SignerRequest> fallbackRequests) {
+		if (fallbackRequests.isEmpty()) {
+			resolveBatch(call, results);
+			return;
+		}
+		AtomicInteger remaining = new AtomicInteger(fallbackRequests.size());
+		for (int i = 0; i < fallbackRequests.size(); i++) {
+			JSObject ret = fallbackResults.get(i);
+			SignerRequest request = fallbackRequests.get(i);
+			metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_INTENT);
+			intentBatcher.enqueue(call, request, new IntentBatcher.Callback() {
+				@Override
+				public void onResult(String result, String signedEventJson) {
+					routes.approvedByIntent(request.packageName, request.type, request.content);
+					remember(request, result);
+					request.putResult(ret, result, signedEventJson);
+					if (remaining.decrementAndGet() == 0) {
+						resolveBatch(call, results);
+					}
+				}
+
+				@Override
+				public void onError(String message) {
+					metrics.count(request.packageName, request.type, SignerMetrics.OUTCOME_REJECTED);
+					ret.put("error", message);
+					if (remaining.decrementAndGet() == 0) {
+						resolveBatch(call, results);
+					}
+				}
+			});
 		}
 	}
 
 	@ActivityCallback
-	private void encryptEventActivity(PluginCall call, ActivityResult result) {
-		if (result.getResultCode() == Activity.RESULT_CANCELED) {
-			call.reject("Activity Cancelled");
-		} else {
-			Intent data = result.getData();
-			JSObject ret = new JSObject();
-			String res = data.getStringExtra("signature");
-			String resultId = data.getStringExtra("id");
-			ret.put("result", res);
-			ret.put("id", resultId);
-			call.resolve(ret);
+	private void intentFallbackResult(PluginCall call, ActivityResult result) {
+		intentBatcher.onActivityResult(call, result.getResultCode(), result.getData());
+	}
+
+	private void resolveBatch(PluginCall call, List<JSObject> results) {
+		if (!pendingCalls.finish(call)) {
+			return;
 		}
+		JSArray resultsArray = new JSArray();
+		for (JSObject ret : results) {
+			resultsArray.put(ret);
+		}
+		JSObject ret = new JSObject();
+		ret.put("results", resultsArray);
+		call.resolve(ret);
+	}
+
+	@PluginMethod
+	public void nip04Encrypt(PluginCall call) {
+		encrypt(call, "nip04_encrypt");
 	}
 
 	@PluginMethod
 	public void nip44Encrypt(PluginCall call) {
+		encrypt(call, "nip44_encrypt");
+	}
+
+	private void encrypt(PluginCall call, String type) {
 		String packageName = getPackageName(call);
 		if (packageName == null || packageName.isEmpty()) {
 			call.reject("Signer package name not set. Call setPackageName first.");
@@ -227,35 +1114,30 @@ public class NostrSignerPlugin extends Plugin {
 		}
 		String plainText = call.getString("plainText");
 		String pubKey = call.getString("pubKey");
-		String npub = call.getString("npub");
+		String npub = getNpub(call);
 		String id = call.getString("id");
 
 		if (plainText == null || pubKey == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
-
-		Context context = getContext();
-		String encryptedText = implementation.nip44Encrypt(context, packageName, plainText, pubKey, npub);
-		if (encryptedText != null) {
-			JSObject ret = new JSObject();
-			ret.put("result", encryptedText);
-			ret.put("id", id);
-			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + plainText));
-			intent.setPackage(packageName);
-			intent.putExtra("type", "nip44_encrypt");
-			intent.putExtra("id", id);
-			intent.putExtra("current_user", npub);
-			intent.putExtra("pubKey", pubKey);
-
-			startActivityForResult(call, intent, "encryptEventActivity");
-		}
+		SignerRequest request = new SignerRequest(type, packageName, plainText, pubKey, npub, id);
+		execute(call, request, SignerExecutor.NORMAL, context -> single("nip44_encrypt".equals(type)
+				? backend(packageName).nip44Encrypt(context, packageName, plainText, pubKey, npub)
+				: backend(packageName).nip04Encrypt(context, packageName, plainText, pubKey, npub)));
 	}
 
 	@PluginMethod
 	public void nip04Decrypt(PluginCall call) {
+		decrypt(call, "nip04_decrypt");
+	}
+
+	@PluginMethod
+	public void nip44Decrypt(PluginCall call) {
+		decrypt(call, "nip44_decrypt");
+	}
+
+	private void decrypt(PluginCall call, String type) {
 		String packageName = getPackageName(call);
 		if (packageName == null || packageName.isEmpty()) {
 			call.reject("Signer package name not set. Call setPackageName first.");
@@ -263,102 +1145,211 @@ public class NostrSignerPlugin extends Plugin {
 		}
 		String encryptedText = call.getString("encryptedText");
 		String pubKey = call.getString("pubKey");
-		String npub = call.getString("npub");
+		String npub = getNpub(call);
 		String id = call.getString("id");
 
 		if (encryptedText == null || pubKey == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
-
-		Context context = getContext();
-		String decryptedText = implementation.nip04Decrypt(context, packageName, encryptedText, pubKey, npub);
-		if (decryptedText != null) {
-			JSObject ret = new JSObject();
-			ret.put("result", decryptedText);
-			ret.put("id", id);
-			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + encryptedText));
-			intent.setPackage(packageName);
-			intent.putExtra("type", "nip04_decrypt");
-			intent.putExtra("id", id);
-			intent.putExtra("current_user", npub);
-			intent.putExtra("pubKey", pubKey);
-			startActivityForResult(call, intent, "encryptEventActivity");
-		}
+		SignerRequest request = new SignerRequest(type, packageName, encryptedText, pubKey, npub, id,
+				SignedEventResult.FORMAT_JSON, call.getString("eventId"));
+		recallOrExecute(call, request, context -> single("nip44_decrypt".equals(type)
+				? backend(packageName).nip44Decrypt(context, packageName, encryptedText, pubKey, npub)
+				: backend(packageName).nip04Decrypt(context, packageName, encryptedText, pubKey, npub)));
 	}
 
 	@PluginMethod
-	public void nip44Decrypt(PluginCall call) {
+	public void decryptZapEvent(PluginCall call) {
 		String packageName = getPackageName(call);
 		if (packageName == null || packageName.isEmpty()) {
 			call.reject("Signer package name not set. Call setPackageName first.");
 			return;
 		}
 
-		String encryptedText = call.getString("encryptedText");
-		String pubKey = call.getString("pubKey");
-		String npub = call.getString("npub");
+		String eventJson = call.getString("eventJson");
+		String npub = getNpub(call);
 		String id = call.getString("id");
 
-		if (encryptedText == null || pubKey == null || npub == null) {
+		if (eventJson == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
+		SignerRequest request = new SignerRequest("decrypt_zap_event", packageName, eventJson, null, npub, id,
+				SignedEventResult.FORMAT_JSON, call.getString("eventId", SignedEventResult.scan(eventJson, "id")[0]));
+		recallOrExecute(call, request, context -> single(backend(packageName).decryptZapEvent(context, packageName, eventJson, npub)));
+	}
 
-		Context context = getContext();
-		String decryptedText = implementation.nip44Decrypt(context, packageName, encryptedText, pubKey, npub);
-
-		if (decryptedText != null) {
-			JSObject ret = new JSObject();
-			ret.put("result", decryptedText);
-			ret.put("id", id);
-			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + encryptedText));
-			intent.setPackage(signerPackageName);
-			intent.putExtra("type", "nip44_decrypt");
-			intent.putExtra("id", id);
-			intent.putExtra("current_user", npub);
-			intent.putExtra("pubKey", pubKey);
-
-			startActivityForResult(call, intent, "encryptEventActivity");
-		}
+	@PluginMethod
+	public void nip04DecryptBatch(PluginCall call) {
+		decryptBatch(call, "nip04_decrypt");
 	}
 
 	@PluginMethod
-	public void decryptZapEvent(PluginCall call) {
+	public void nip44DecryptBatch(PluginCall call) {
+		decryptBatch(call, "nip44_decrypt");
+	}
+
+	private void decryptBatch(PluginCall call, String type) {
 		String packageName = getPackageName(call);
 		if (packageName == null || packageName.isEmpty()) {
 			call.reject("Signer package name not set. Call setPackageName first.");
 			return;
 		}
+		JSArray items = call.getArray("items");
+		String npub = getNpub(call);
+		String batchId = call.getString("batchId", call.getCallbackId());
+		int chunkSize = Math.max(1, call.getInt("chunkSize", DEFAULT_DECRYPT_CHUNK_SIZE));
 
-		String eventJson = call.getString("eventJson");
-		String npub = call.getString("npub");
-		String id = call.getString("id");
-
-		if (eventJson == null || npub == null) {
+		if (items == null || npub == null) {
 			call.reject("Missing parameters");
 			return;
 		}
+		CancellationSignal signal = trackBatch(call, packageName, type, batchId);
+		runOnSigner(call, packageName, SignerExecutor.BACKGROUND, () -> {
+			if (signal.isCanceled()) {
+				return;
+			}
+			Context context = getContext();
+			String[] stored = new String[items.length()];
+			for (int i = 0; i < items.length(); i++) {
+				JSONObject item = items.optJSONObject(i);
+				String eventId = item != null ? item.optString("eventId", null) : null;
+				String encryptedText = item != null ? item.optString("encryptedText", null) : null;
+				stored[i] = eventId != null && encryptedText != null
+						? decryptStore.get(npub, type, eventId, item.optString("pubKey", null), encryptedText) : null;
+			}
+			BunkerSigner.Request[] pipelined = pipelineToBunker(packageName, type, items, "encryptedText", "id", stored);
+			cancelBatchWith(signal, call, pipelined);
+			List<JSObject> results = new ArrayList<>(items.length());
+			List<JSObject> fallbackResults = new ArrayList<>();
+			List<SignerRequest> fallbackRequests = new ArrayList<>();
+			JSArray chunk = new JSArray();
+			for (int i = 0; i < items.length(); i++) {
+				if (signal.isCanceled()) {
+					return;
+				}
+				JSONObject item = items.optJSONObject(i);
+				String encryptedText = item != null ? item.optString("encryptedText", null) : null;
+				String pubKey = item != null ? item.optString("pubKey", null) : null;
+				String id = item != null ? item.optString("id", null) : null;
+				String eventId = item != null ? item.optString("eventId", null) : null;
+				JSObject ret = new JSObject();
+				ret.put("id", id);
+				results.add(ret);
+				if (encryptedText == null || pubKey == null || id == null) {
+					ret.put("error", "Missing parameters");
+				} else if (stored[i] != null) {
+					ret.put("result", stored[i]);
+				} else {
+					SignerRequest request = new SignerRequest(type, packageName, encryptedText, pubKey, npub, id,
+							SignedEventResult.FORMAT_JSON, eventId);
+					try {
+						String decryptedText = pipelined != null ? pipelined[i].await()[0]
+								: "nip44_decrypt".equals(type)
+								? backend(packageName).nip44Decrypt(context, packageName, encryptedText, pubKey, npub)
+								: backend(packageName).nip04Decrypt(context, packageName, encryptedText, pubKey, npub);
+						if (decryptedText != null) {
+							metrics.count(packageName, type, SignerMetrics.OUTCOME_PROVIDER);
+							remember(request, decryptedText);
+							ret.put("result", decryptedText);
+						} else {
+							fallbackResults.add(ret);
+							fallbackRequests.add(request);
+							continue;
+						}
+					} catch (Exception e) {
+						ret.put("error", e.getMessage());
+					}
+				}
+				chunk.put(ret);
+				if (chunk.length() >= chunkSize) {
+					notifyDecryptBatchChunk(batchId, chunk);
+					chunk = new JSArray();
+				}
+			}
+			if (chunk.length() > 0) {
+				notifyDecryptBatchChunk(batchId, chunk);
+			}
+			fallbackBatchToIntent(call, results, fallbackResults, fallbackRequests);
+			if (signal.isCanceled()) {
+				intentBatcher.cancel(call);
+			}
+		});
+	}
+
+	// Decryptions that name their event are kept in the decrypt store, so they survive restarts.
+	// The lookup reads the disk, so it runs on the executor rather than the plugin thread, at the
+	// call's priority. The call is tracked first, so its deadline and cancel(id) apply while the
+	// lookup is queued too.
+	private void recallOrExecute(PluginCall call, SignerRequest request, ProviderQuery query) {
+		if (request.eventId == null || !decryptStore.isEnabled()) {
+			execute(call, request, SignerExecutor.NORMAL, query);
+			return;
+		}
+		Integer priority = priority(call, SignerExecutor.NORMAL);
+		if (priority == null) {
+			return;
+		}
+		String key = request.key();
+		track(call, request, key);
+		runOnSigner(call, DECRYPT_STORE_QUEUE, priority, () -> {
+			if (!pendingCalls.isTracked(call)) {
+				return;
+			}
+			String stored = decryptStore.get(request.npub, request.type, request.eventId, request.pubKey, request.content);
+			if (stored == null) {
+				join(call, request, priority, key, query);
+			} else if (pendingCalls.finish(call)) {
+				call.resolve(request.toResult(stored, null));
+			}
+		});
+	}
+
+	private void remember(SignerRequest request, String result) {
+		if (request.eventId != null && result != null) {
+			decryptStore.put(request.npub, request.type, request.eventId, request.pubKey, request.content, result);
+		}
+	}
 
-		Context context = getContext();
-		String decryptedEventJson = implementation.decryptZapEvent(context, packageName, eventJson, npub);
-		if (decryptedEventJson != null) {
+	@PluginMethod
+	public void getStoredDecryptions(PluginCall call) {
+		JSArray items = call.getArray("items");
+		String npub = getNpub(call);
+		if (items == null || npub == null) {
+			call.reject("Missing parameters");
+			return;
+		}
+		runOnSigner(call, DECRYPT_STORE_QUEUE, SignerExecutor.NORMAL, () -> {
+			List<String[]> lookups = new ArrayList<>(items.length());
+			for (int i = 0; i < items.length(); i++) {
+				JSONObject item = items.optJSONObject(i);
+				String content = item != null ? item.optString("encryptedText", item.optString("eventJson", null)) : null;
+				lookups.add(new String[] { item != null ? item.optString("eventId", null) : null,
+						item != null ? item.optString("pubKey", null) : null, content });
+			}
+			List<String[]> stored = decryptStore.getAll(npub, lookups);
+			JSArray results = new JSArray();
+			for (int i = 0; i < lookups.size(); i++) {
+				JSObject ret = new JSObject();
+				ret.put("eventId", lookups.get(i)[0]);
+				if (stored.get(i) != null) {
+					ret.put("method", stored.get(i)[0]);
+					ret.put("result", stored.get(i)[1]);
+				}
+				results.put(ret);
+			}
 			JSObject ret = new JSObject();
-			ret.put("result", decryptedEventJson);
-			ret.put("id", id);
+			ret.put("results", results);
 			call.resolve(ret);
-		} else {
-			Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + eventJson));
-			intent.setPackage(signerPackageName);
-			intent.putExtra("type", "decrypt_zap_event");
-			intent.putExtra("id", id);
-			intent.putExtra("current_user", npub);
-			startActivityForResult(call, intent, "encryptEventActivity");
-		}
+		});
+	}
+
+	private void notifyDecryptBatchChunk(String batchId, JSArray chunk) {
+		JSObject ret = new JSObject();
+		ret.put("batchId", batchId);
+		ret.put("results", chunk);
+		notifyListeners("decryptBatchChunk", ret);
 	}
 
 }
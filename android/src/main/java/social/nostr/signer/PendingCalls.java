@@ -0,0 +1,123 @@
+package social.nostr.signer;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.getcapacitor.PluginCall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deadlines and cancel(id) for plugin calls waiting on a signer. A call whose deadline passes,
+ * or that JS cancels, is rejected right away and its {@link Canceller} stops the work behind
+ * it, so a stalled signer does not leave calls and their bridge callbacks pending. Whoever
+ * settles a call otherwise must {@link #finish} it first and only settle it if that returns true.
+ */
+class PendingCalls {
+
+	static final String TIMED_OUT = "Timed out waiting for the signer";
+	static final String CANCELLED = "Cancelled";
+
+	interface Canceller {
+		/** Called once the call was rejected with {@code message}; stops the work behind it. */
+		void cancel(String message);
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/** Tracks {@code call} under {@code id}, which may be null; {@code timeoutMs} of 0 means no deadline. */
+	void track(PluginCall call, String id, long timeoutMs, Canceller canceller) {
+		Entry entry = new Entry(call, id, canceller);
+		synchronized (this) {
+			entries.put(call.getCallbackId(), entry);
+		}
+		if (timeoutMs > 0) {
+			handler.postDelayed(entry.deadline, timeoutMs);
+		}
+	}
+
+	/** Stops tracking {@code call}. Returns false if it was already rejected by a deadline or cancel. */
+	boolean finish(PluginCall call) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.remove(call.getCallbackId());
+		}
+		if (entry == null) {
+			return false;
+		}
+		handler.removeCallbacks(entry.deadline);
+		return true;
+	}
+
+	synchronized boolean isTracked(PluginCall call) {
+		return entries.containsKey(call.getCallbackId());
+	}
+
+	/** Cancels the calls tracked under {@code id} and returns how many there were. */
+	int cancel(String id) {
+		List<Entry> cancelled = new ArrayList<>();
+		synchronized (this) {
+			Iterator<Entry> iterator = entries.values().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next();
+				if (id.equals(entry.id)) {
+					iterator.remove();
+					cancelled.add(entry);
+				}
+			}
+		}
+		for (Entry entry : cancelled) {
+			reject(entry, CANCELLED);
+		}
+		return cancelled.size();
+	}
+
+	void cancelAll(String message) {
+		List<Entry> cancelled;
+		synchronized (this) {
+			cancelled = new ArrayList<>(entries.values());
+			entries.clear();
+		}
+		for (Entry entry : cancelled) {
+			reject(entry, message);
+		}
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	private void expire(Entry entry) {
+		synchronized (this) {
+			if (entries.get(entry.call.getCallbackId()) != entry) {
+				return;
+			}
+			entries.remove(entry.call.getCallbackId());
+		}
+		reject(entry, TIMED_OUT);
+	}
+
+	private void reject(Entry entry, String message) {
+		handler.removeCallbacks(entry.deadline);
+		entry.call.reject(message);
+		entry.canceller.cancel(message);
+	}
+
+	private class Entry {
+		final PluginCall call;
+		final String id;
+		final Canceller canceller;
+		final Runnable deadline = () -> expire(this);
+
+		Entry(PluginCall call, String id, Canceller canceller) {
+			this.call = call;
+			this.id = id;
+			this.canceller = canceller;
+		}
+	}
+}
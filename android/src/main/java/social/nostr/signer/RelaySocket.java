@@ -0,0 +1,276 @@
+package social.nostr.signer;
+
+import android.util.Base64;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A minimal RFC 6455 client for one relay connection: text frames only, no extensions.
+ * Messages are delivered to the {@link Listener} on a dedicated reader thread; sends may come
+ * from any thread. Relays only speak JSON text, so this avoids pulling in an HTTP client.
+ */
+class RelaySocket {
+
+	interface Listener {
+		void onMessage(RelaySocket socket, String message);
+
+		/** Called once, when the connection fails or is closed by either side. */
+		void onClosed(RelaySocket socket, String reason);
+	}
+
+	private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+	private static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+	private static final int OP_CONTINUATION = 0x0;
+	private static final int OP_TEXT = 0x1;
+	private static final int OP_BINARY = 0x2;
+	private static final int OP_CLOSE = 0x8;
+	private static final int OP_PING = 0x9;
+	private static final int OP_PONG = 0xA;
+
+	private final SecureRandom random = new SecureRandom();
+	private final Socket socket;
+	private final DataInputStream input;
+	private final OutputStream output;
+	private final Listener listener;
+	private volatile boolean closed = false;
+	private volatile long lastReceivedNanos = System.nanoTime();
+
+	private RelaySocket(Socket socket, Listener listener) throws IOException {
+		this.socket = socket;
+		this.input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		this.output = new BufferedOutputStream(socket.getOutputStream());
+		this.listener = listener;
+	}
+
+	/** Connects and completes the opening handshake, then starts reading. */
+	static RelaySocket open(String url, int timeoutMs, Listener listener) throws IOException {
+		URI uri = URI.create(url);
+		String scheme = uri.getScheme() != null ? uri.getScheme().toLowerCase(Locale.ROOT) : "";
+		boolean secure = "wss".equals(scheme);
+		if (!secure && !"ws".equals(scheme)) {
+			throw new IOException("Not a relay URL: " + url);
+		}
+		String host = uri.getHost();
+		int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(host, port), timeoutMs);
+			socket.setSoTimeout(timeoutMs);
+			socket.setTcpNoDelay(true);
+			if (secure) {
+				SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true);
+				ssl.startHandshake();
+				if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+					throw new IOException("Relay certificate does not match " + host);
+				}
+				socket = ssl;
+			}
+			RelaySocket relay = new RelaySocket(socket, listener);
+			relay.handshake(uri, host, port, secure);
+			socket.setSoTimeout(0);
+			Thread reader = new Thread(relay::read, "NostrSigner-relay");
+			reader.setDaemon(true);
+			reader.start();
+			return relay;
+		} catch (IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/** When the last frame of any kind arrived, or the connection opened; on the {@link System#nanoTime()} clock. */
+	long lastReceivedNanos() {
+		return lastReceivedNanos;
+	}
+
+	void send(String text) throws IOException {
+		writeFrame(OP_TEXT, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writeFrame(OP_CLOSE, new byte[] { 0x03, (byte) 0xE8 });
+		} catch (IOException e) {
+			// Closing anyway.
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Ignored.
+		}
+	}
+
+	private void handshake(URI uri, String host, int port, boolean secure) throws IOException {
+		byte[] nonce = new byte[16];
+		random.nextBytes(nonce);
+		String key = Base64.encodeToString(nonce, Base64.NO_WRAP);
+		String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+		if (uri.getRawQuery() != null) {
+			path += "?" + uri.getRawQuery();
+		}
+		boolean defaultPort = port == (secure ? 443 : 80);
+		String request = "GET " + path + " HTTP/1.1\r\n"
+				+ "Host: " + host + (defaultPort ? "" : ":" + port) + "\r\n"
+				+ "Upgrade: websocket\r\n"
+				+ "Connection: Upgrade\r\n"
+				+ "Sec-WebSocket-Key: " + key + "\r\n"
+				+ "Sec-WebSocket-Version: 13\r\n\r\n";
+		synchronized (output) {
+			output.write(request.getBytes(StandardCharsets.US_ASCII));
+			output.flush();
+		}
+		String status = readLine(input);
+		if (!status.startsWith("HTTP/1.1 101")) {
+			throw new IOException("Relay refused the WebSocket upgrade: " + status);
+		}
+		String accept = null;
+		String line;
+		while (!(line = readLine(input)).isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Sec-WebSocket-Accept")) {
+				accept = line.substring(colon + 1).trim();
+			}
+		}
+		if (!acceptKey(key).equals(accept)) {
+			throw new IOException("Invalid Sec-WebSocket-Accept from relay");
+		}
+	}
+
+	static String acceptKey(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+			return Base64.encodeToString(digest, Base64.NO_WRAP);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readLine(InputStream input) throws IOException {
+		StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = input.read()) != '\n') {
+			if (c == -1) {
+				throw new IOException("Relay closed the connection during the handshake");
+			}
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+
+	private void read() {
+		String reason = "Connection closed";
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		int messageOpcode = -1;
+		try {
+			while (true) {
+				int b0 = input.readUnsignedByte();
+				int b1 = input.readUnsignedByte();
+				boolean fin = (b0 & 0x80) != 0;
+				int opcode = b0 & 0x0F;
+				long length = b1 & 0x7F;
+				if (length == 126) {
+					length = input.readUnsignedShort();
+				} else if (length == 127) {
+					length = input.readLong();
+				}
+				if (length < 0 || message.size() + length > MAX_MESSAGE_BYTES) {
+					throw new IOException("Relay message too large");
+				}
+				byte[] mask = null;
+				if ((b1 & 0x80) != 0) {
+					mask = new byte[4];
+					input.readFully(mask);
+				}
+				byte[] payload = new byte[(int) length];
+				input.readFully(payload);
+				lastReceivedNanos = System.nanoTime();
+				if (mask != null) {
+					for (int i = 0; i < payload.length; i++) {
+						payload[i] ^= mask[i & 3];
+					}
+				}
+				if (opcode == OP_CLOSE) {
+					reason = "Relay closed the connection";
+					break;
+				} else if (opcode == OP_PING) {
+					writeFrame(OP_PONG, payload);
+				} else if (opcode == OP_TEXT || opcode == OP_BINARY || opcode == OP_CONTINUATION) {
+					if (opcode != OP_CONTINUATION) {
+						messageOpcode = opcode;
+						message.reset();
+					}
+					message.write(payload, 0, payload.length);
+					if (fin) {
+						if (messageOpcode == OP_TEXT) {
+							listener.onMessage(this, new String(message.toByteArray(), StandardCharsets.UTF_8));
+						}
+						message.reset();
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			if (!closed) {
+				reason = e.getMessage() != null ? e.getMessage() : reason;
+			}
+		}
+		closed = true;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Ignored.
+		}
+		listener.onClosed(this, reason);
+	}
+
+	// Client frames are always masked.
+	private void writeFrame(int opcode, byte[] payload) throws IOException {
+		byte[] mask = new byte[4];
+		random.nextBytes(mask);
+		synchronized (output) {
+			output.write(0x80 | opcode);
+			if (payload.length < 126) {
+				output.write(0x80 | payload.length);
+			} else if (payload.length <= 0xFFFF) {
+				output.write(0x80 | 126);
+				output.write(payload.length >>> 8);
+				output.write(payload.length);
+			} else {
+				output.write(0x80 | 127);
+				for (int shift = 56; shift >= 0; shift -= 8) {
+					output.write((int) ((long) payload.length >>> shift));
+				}
+			}
+			output.write(mask);
+			byte[] masked = new byte[payload.length];
+			for (int i = 0; i < payload.length; i++) {
+				masked[i] = (byte) (payload[i] ^ mask[i & 3]);
+			}
+			output.write(masked);
+			output.flush();
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package social.nostr.signer;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * secp256k1 with BIP-340 Schnorr signatures and x-only ECDH. Anything that touches a secret
+ * scalar (public keys, signing, ECDH) runs in constant time on {@link Montgomery} limbs, with
+ * complete projective addition and fixed 4-bit windows whose table entries are picked by
+ * scanning every entry. Verification only sees public data and uses BigInteger, with points in
+ * Jacobian coordinates so a scalar multiplication needs one inversion.
+ */
+final class Secp256k1 {
+
+	static final BigInteger P = new BigInteger("fffffffffffffffffffffffffffffffffffffffffffffffffffffffefffffc2f", 16);
+	static final BigInteger N = new BigInteger("fffffffffffffffffffffffffffffffebaaedce6af48a03bbfd25e8cd0364141", 16);
+
+	private static final BigInteger SEVEN = BigInteger.valueOf(7);
+	private static final BigInteger SQRT_EXPONENT = P.add(BigInteger.ONE).shiftRight(2);
+	private static final BigInteger[] G = {
+			new BigInteger("79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798", 16),
+			new BigInteger("483ada7726a3c4655da4fbfc0e1108a8fd17b448a68554199c47d08ffb10d4b8", 16),
+			BigInteger.ONE };
+	// G_TABLE[w][j] = j * 16^w * G, in affine form, so multiplying G needs no doublings.
+	private static final BigInteger[][][] G_TABLE = generatorTable();
+
+	private static final Montgomery FIELD = new Montgomery(P);
+	private static final Montgomery SCALARS = new Montgomery(N);
+	// 3 * b for the complete addition formulas, in Montgomery form.
+	private static final int[] B3 = FIELD.toMontgomery(Montgomery.fromBigInteger(BigInteger.valueOf(21)));
+	// The same table in projective Montgomery form, with the point at infinity as entry 0.
+	private static final int[][][][] G_POINTS = generatorPoints();
+
+	private Secp256k1() {
+	}
+
+	/** The 32-byte x-only public key for a secret key. */
+	static byte[] publicKey(byte[] secretKey) {
+		KeyPair keyPair = new KeyPair(secretKey);
+		try {
+			return keyPair.publicKey;
+		} finally {
+			keyPair.destroy();
+		}
+	}
+
+	static byte[] sign(byte[] message, byte[] secretKey, byte[] auxRand) {
+		KeyPair keyPair = new KeyPair(secretKey);
+		try {
+			return sign(message, keyPair, auxRand);
+		} finally {
+			keyPair.destroy();
+		}
+	}
+
+	static byte[] sign(byte[] message, KeyPair keyPair, byte[] auxRand) {
+		int[] d = keyPair.d;
+		byte[] px = keyPair.publicKey;
+		byte[] secret = Montgomery.toBytes(d);
+		byte[] t = xor(secret, taggedHash("BIP0340/aux", auxRand));
+		int[] k = SCALARS.fromBytes(taggedHash("BIP0340/nonce", t, px, message));
+		Arrays.fill(secret, (byte) 0);
+		Arrays.fill(t, (byte) 0);
+		if (Montgomery.isZero(k) == 1) {
+			throw new IllegalStateException("Nonce is zero");
+		}
+		int[][] r = multiplyG(k);
+		byte[] rx = x(r);
+		Montgomery.select(k, SCALARS.negate(k), -oddY(r));
+		int[] e = SCALARS.fromBytes(taggedHash("BIP0340/challenge", rx, px, message));
+		int[] s = SCALARS.add(k, SCALARS.multiplyPlain(e, d));
+		Arrays.fill(k, 0);
+		byte[] signature = new byte[64];
+		System.arraycopy(rx, 0, signature, 0, 32);
+		System.arraycopy(Montgomery.toBytes(s), 0, signature, 32, 32);
+		return signature;
+	}
+
+	static boolean verify(byte[] message, byte[] publicKey, byte[] signature) {
+		if (publicKey.length != 32 || signature.length != 64) {
+			return false;
+		}
+		BigInteger[] publicPoint = liftX(new BigInteger(1, publicKey));
+		BigInteger r = new BigInteger(1, Arrays.copyOfRange(signature, 0, 32));
+		BigInteger s = new BigInteger(1, Arrays.copyOfRange(signature, 32, 64));
+		if (publicPoint == null || r.compareTo(P) >= 0 || s.compareTo(N) >= 0) {
+			return false;
+		}
+		BigInteger e = new BigInteger(1,
+				taggedHash("BIP0340/challenge", Arrays.copyOfRange(signature, 0, 32), publicKey, message)).mod(N);
+		BigInteger[] point = add(multiplyPublicG(s), negate(multiplyPublic(publicPoint, e)));
+		BigInteger[] affine = toAffine(point);
+		return affine != null && !affine[1].testBit(0) && affine[0].equals(r);
+	}
+
+	/** The x coordinate of secretKey times the point with x-only public key, as used by NIP-04 and NIP-44. */
+	static byte[] sharedX(byte[] secretKey, byte[] publicKey) {
+		int[] d = scalar(secretKey);
+		try {
+			return sharedX(d, publicKey);
+		} finally {
+			Arrays.fill(d, 0);
+		}
+	}
+
+	static byte[] sharedX(KeyPair keyPair, byte[] publicKey) {
+		return sharedX(keyPair.d, publicKey);
+	}
+
+	// The key pair's scalar may be negated; d and -d give the same x.
+	private static byte[] sharedX(int[] d, byte[] publicKey) {
+		BigInteger[] point = publicKey.length == 32 ? liftX(new BigInteger(1, publicKey)) : null;
+		if (point == null) {
+			throw new IllegalArgumentException("Invalid public key");
+		}
+		int[][] projective = { FIELD.toMontgomery(Montgomery.fromBigInteger(point[0])),
+				FIELD.toMontgomery(Montgomery.fromBigInteger(point[1])), FIELD.one() };
+		return x(multiply(projective, d));
+	}
+
+	static byte[] taggedHash(String tag, byte[]... parts) {
+		MessageDigest digest = sha256();
+		byte[] tagHash = digest.digest(tag.getBytes(StandardCharsets.UTF_8));
+		digest.update(tagHash);
+		digest.update(tagHash);
+		for (byte[] part : parts) {
+			digest.update(part);
+		}
+		return digest.digest();
+	}
+
+	static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Whether {@code secretKey} is 32 bytes in [1, n), checked without branching on its value. */
+	static boolean isSecretKey(byte[] secretKey) {
+		if (secretKey.length != 32) {
+			return false;
+		}
+		int[] d = Montgomery.limbs(secretKey);
+		try {
+			return SCALARS.isScalar(d) == 1;
+		} finally {
+			Arrays.fill(d, 0);
+		}
+	}
+
+	private static int[] scalar(byte[] secretKey) {
+		if (!isSecretKey(secretKey)) {
+			throw new IllegalArgumentException("Invalid secret key");
+		}
+		return Montgomery.limbs(secretKey);
+	}
+
+	/**
+	 * A secret key with its x-only public key, negated if needed so the public point has an even y
+	 * as BIP-340 requires. Call {@link #destroy} once done with it to zero the scalar.
+	 */
+	static final class KeyPair {
+		final byte[] publicKey;
+		private final int[] d;
+
+		KeyPair(byte[] secretKey) {
+			d = scalar(secretKey);
+			int[][] point = multiplyG(d);
+			publicKey = x(point);
+			Montgomery.select(d, SCALARS.negate(d), -oddY(point));
+		}
+
+		void destroy() {
+			Arrays.fill(d, 0);
+		}
+	}
+
+	private static BigInteger[] liftX(BigInteger x) {
+		if (x.compareTo(P) >= 0) {
+			return null;
+		}
+		BigInteger c = x.modPow(BigInteger.valueOf(3), P).add(SEVEN).mod(P);
+		BigInteger y = c.modPow(SQRT_EXPONENT, P);
+		if (!y.modPow(BigInteger.valueOf(2), P).equals(c)) {
+			return null;
+		}
+		return new BigInteger[] { x, y.testBit(0) ? P.subtract(y) : y, BigInteger.ONE };
+	}
+
+	// Constant time. Projective coordinates (X, Y, Z) represent (X / Z, Y / Z), in Montgomery
+	// form; (0, 1, 0) is the point at infinity, so no step needs to branch on it.
+
+	private static int[][] multiplyG(int[] k) {
+		int[][] result = infinity();
+		for (int window = 0; window < 64; window++) {
+			result = addComplete(result, lookup(G_POINTS[window], nibble(k, window)));
+		}
+		return result;
+	}
+
+	// Fixed 4-bit window over all 256 bits: 256 doublings and 64 additions whatever the scalar.
+	private static int[][] multiply(int[][] point, int[] k) {
+		int[][][] multiples = new int[16][][];
+		multiples[0] = infinity();
+		for (int i = 1; i < 16; i++) {
+			multiples[i] = addComplete(multiples[i - 1], point);
+		}
+		int[][] result = infinity();
+		for (int window = 63; window >= 0; window--) {
+			for (int i = 0; i < 4; i++) {
+				result = addComplete(result, result);
+			}
+			result = addComplete(result, lookup(multiples, nibble(k, window)));
+		}
+		return result;
+	}
+
+	private static int nibble(int[] k, int window) {
+		return k[window / 8] >>> (window % 8 * 4) & 0xf;
+	}
+
+	// Reads every entry, so the memory accessed does not depend on the digit.
+	private static int[][] lookup(int[][][] table, int digit) {
+		int[][] point = { new int[Montgomery.LIMBS], new int[Montgomery.LIMBS], new int[Montgomery.LIMBS] };
+		for (int i = 0; i < table.length; i++) {
+			int mask = -Montgomery.equal(i, digit);
+			for (int c = 0; c < 3; c++) {
+				Montgomery.select(point[c], table[i][c], mask);
+			}
+		}
+		return point;
+	}
+
+	private static int[][] infinity() {
+		return new int[][] { new int[Montgomery.LIMBS], FIELD.one(), new int[Montgomery.LIMBS] };
+	}
+
+	// Renes, Costello and Batina, "Complete addition formulas for prime order elliptic curves",
+	// algorithm 7 for a = 0. Correct for every pair of inputs, doubling and infinity included.
+	private static int[][] addComplete(int[][] p, int[][] q) {
+		int[] t0 = FIELD.multiply(p[0], q[0]);
+		int[] t1 = FIELD.multiply(p[1], q[1]);
+		int[] t2 = FIELD.multiply(p[2], q[2]);
+		int[] t3 = FIELD.multiply(FIELD.add(p[0], p[1]), FIELD.add(q[0], q[1]));
+		t3 = FIELD.subtract(t3, FIELD.add(t0, t1));
+		int[] t4 = FIELD.multiply(FIELD.add(p[1], p[2]), FIELD.add(q[1], q[2]));
+		t4 = FIELD.subtract(t4, FIELD.add(t1, t2));
+		int[] y3 = FIELD.multiply(FIELD.add(p[0], p[2]), FIELD.add(q[0], q[2]));
+		y3 = FIELD.subtract(y3, FIELD.add(t0, t2));
+		t0 = FIELD.add(FIELD.add(t0, t0), t0);
+		t2 = FIELD.multiply(B3, t2);
+		int[] z3 = FIELD.add(t1, t2);
+		t1 = FIELD.subtract(t1, t2);
+		y3 = FIELD.multiply(B3, y3);
+		int[] x3 = FIELD.subtract(FIELD.multiply(t3, t1), FIELD.multiply(t4, y3));
+		y3 = FIELD.add(FIELD.multiply(t1, z3), FIELD.multiply(y3, t0));
+		z3 = FIELD.add(FIELD.multiply(z3, t4), FIELD.multiply(t0, t3));
+		return new int[][] { x3, y3, z3 };
+	}
+
+	private static byte[] x(int[][] point) {
+		return Montgomery.toBytes(FIELD.fromMontgomery(FIELD.multiply(point[0], FIELD.invert(point[2]))));
+	}
+
+	// 1 if the affine y is odd, else 0.
+	private static int oddY(int[][] point) {
+		return FIELD.fromMontgomery(FIELD.multiply(point[1], FIELD.invert(point[2])))[0] & 1;
+	}
+
+	private static int[][][][] generatorPoints() {
+		int[][][][] points = new int[64][16][][];
+		for (int window = 0; window < 64; window++) {
+			points[window][0] = infinity();
+			for (int digit = 1; digit < 16; digit++) {
+				BigInteger[] affine = G_TABLE[window][digit];
+				points[window][digit] = new int[][] { FIELD.toMontgomery(Montgomery.fromBigInteger(affine[0])),
+						FIELD.toMontgomery(Montgomery.fromBigInteger(affine[1])), FIELD.one() };
+			}
+		}
+		return points;
+	}
+
+	// Jacobian coordinates (X, Y, Z) represent (X / Z^2, Y / Z^3); null is the point at infinity.
+
+	private static BigInteger[] multiplyPublicG(BigInteger k) {
+		BigInteger[] result = null;
+		for (int window = 0; window < 64; window++) {
+			int digit = nibble(k, window);
+			if (digit != 0) {
+				result = add(result, G_TABLE[window][digit]);
+			}
+		}
+		return result;
+	}
+
+	// Fixed 4-bit window: 256 doublings and at most 64 additions.
+	private static BigInteger[] multiplyPublic(BigInteger[] point, BigInteger k) {
+		BigInteger[][] multiples = new BigInteger[16][];
+		multiples[1] = point;
+		for (int i = 2; i < 16; i++) {
+			multiples[i] = add(multiples[i - 1], point);
+		}
+		BigInteger[] result = null;
+		for (int window = (k.bitLength() + 3) / 4 - 1; window >= 0; window--) {
+			for (int i = 0; i < 4; i++) {
+				result = doubled(result);
+			}
+			int digit = nibble(k, window);
+			if (digit != 0) {
+				result = add(result, multiples[digit]);
+			}
+		}
+		return result;
+	}
+
+	private static int nibble(BigInteger k, int window) {
+		int digit = 0;
+		for (int bit = 3; bit >= 0; bit--) {
+			digit = digit << 1 | (k.testBit(window * 4 + bit) ? 1 : 0);
+		}
+		return digit;
+	}
+
+	private static BigInteger[][][] generatorTable() {
+		BigInteger[][][] table = new BigInteger[64][16][];
+		BigInteger[] base = G;
+		for (int window = 0; window < 64; window++) {
+			BigInteger[] multiple = null;
+			for (int digit = 1; digit < 16; digit++) {
+				multiple = add(multiple, base);
+				BigInteger[] affine = toAffine(multiple);
+				table[window][digit] = new BigInteger[] { affine[0], affine[1], BigInteger.ONE };
+			}
+			BigInteger[] next = toAffine(add(multiple, base));
+			base = new BigInteger[] { next[0], next[1], BigInteger.ONE };
+		}
+		return table;
+	}
+
+	private static BigInteger[] doubled(BigInteger[] p) {
+		if (p == null || p[1].signum() == 0) {
+			return null;
+		}
+		BigInteger ySquared = p[1].multiply(p[1]).mod(P);
+		BigInteger s = p[0].multiply(ySquared).shiftLeft(2).mod(P);
+		BigInteger m = p[0].multiply(p[0]).multiply(BigInteger.valueOf(3)).mod(P);
+		BigInteger x = m.multiply(m).subtract(s.shiftLeft(1)).mod(P);
+		BigInteger y = m.multiply(s.subtract(x)).subtract(ySquared.multiply(ySquared).shiftLeft(3)).mod(P);
+		BigInteger z = p[1].multiply(p[2]).shiftLeft(1).mod(P);
+		return new BigInteger[] { x, y, z };
+	}
+
+	private static BigInteger[] add(BigInteger[] p, BigInteger[] q) {
+		if (p == null) {
+			return q;
+		}
+		if (q == null) {
+			return p;
+		}
+		// Table and lifted points have Z = 1, which saves four multiplications.
+		boolean affine = q[2] == BigInteger.ONE;
+		BigInteger z1Squared = p[2].multiply(p[2]).mod(P);
+		BigInteger u1 = affine ? p[0] : p[0].multiply(q[2].multiply(q[2])).mod(P);
+		BigInteger u2 = q[0].multiply(z1Squared).mod(P);
+		BigInteger s1 = affine ? p[1] : p[1].multiply(q[2].pow(3)).mod(P);
+		BigInteger s2 = q[1].multiply(z1Squared).multiply(p[2]).mod(P);
+		if (u1.equals(u2)) {
+			return s1.equals(s2) ? doubled(p) : null;
+		}
+		BigInteger h = u2.subtract(u1).mod(P);
+		BigInteger r = s2.subtract(s1).mod(P);
+		BigInteger hSquared = h.multiply(h).mod(P);
+		BigInteger hCubed = hSquared.multiply(h).mod(P);
+		BigInteger v = u1.multiply(hSquared).mod(P);
+		BigInteger x = r.multiply(r).subtract(hCubed).subtract(v.shiftLeft(1)).mod(P);
+		BigInteger y = r.multiply(v.subtract(x)).subtract(s1.multiply(hCubed)).mod(P);
+		BigInteger z = affine ? h.multiply(p[2]).mod(P) : h.multiply(p[2]).multiply(q[2]).mod(P);
+		return new BigInteger[] { x, y, z };
+	}
+
+	private static BigInteger[] negate(BigInteger[] p) {
+		return p == null ? null : new BigInteger[] { p[0], P.subtract(p[1]).mod(P), p[2] };
+	}
+
+	private static BigInteger[] toAffine(BigInteger[] p) {
+		if (p == null) {
+			return null;
+		}
+		BigInteger zInverse = p[2].modInverse(P);
+		BigInteger zInverseSquared = zInverse.multiply(zInverse).mod(P);
+		return new BigInteger[] { p[0].multiply(zInverseSquared).mod(P),
+				p[1].multiply(zInverseSquared).multiply(zInverse).mod(P) };
+	}
+
+	private static byte[] xor(byte[] a, byte[] b) {
+		byte[] result = new byte[a.length];
+		for (int i = 0; i < a.length; i++) {
+			result[i] = (byte) (a[i] ^ b[i]);
+		}
+		return result;
+	}
+}
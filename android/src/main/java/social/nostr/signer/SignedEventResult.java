@@ -0,0 +1,151 @@
+package social.nostr.signer;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Shapes a signed event for the bridge in the format the caller asked for. {@code json}
+ * returns the signed event JSON as before; {@code fields} and {@code sig} only return the
+ * fields the signer added, read from the JSON without parsing it, so a large content is
+ * neither parsed here nor sent back to JS.
+ */
+final class SignedEventResult {
+
+	static final String FORMAT_JSON = "json";
+	static final String FORMAT_FIELDS = "fields";
+	static final String FORMAT_SIG = "sig";
+
+	private static final String[] FIELDS = { "id", "pubkey", "created_at", "sig" };
+
+	private SignedEventResult() {
+	}
+
+	static boolean isFormat(String format) {
+		return FORMAT_JSON.equals(format) || FORMAT_FIELDS.equals(format) || FORMAT_SIG.equals(format);
+	}
+
+	/**
+	 * Puts the result into {@code ret}. When the signer only returned a signature, pubkey and
+	 * created_at are taken from the npub and the unsigned event, and {@code id} is left as is.
+	 */
+	static void put(JSObject ret, String format, String signature, String signedEventJson, String unsignedEventJson, String npub) {
+		if (!FORMAT_FIELDS.equals(format) && !FORMAT_SIG.equals(format)) {
+			ret.put("signature", signature);
+			ret.put("event", signedEventJson);
+			return;
+		}
+		String[] fields = signedEventJson != null ? scan(signedEventJson, FIELDS) : new String[FIELDS.length];
+		if (fields[0] != null) {
+			ret.put("id", fields[0]);
+		}
+		ret.put("sig", fields[3] != null ? fields[3] : signature);
+		if (FORMAT_SIG.equals(format)) {
+			return;
+		}
+		String pubkey = fields[1];
+		if (pubkey == null && npub != null && npub.startsWith("npub1")) {
+			pubkey = Hex.encode(Bech32.decode("npub", npub));
+		}
+		String createdAt = fields[2] != null ? fields[2] : scan(unsignedEventJson, "created_at")[0];
+		ret.put("pubkey", pubkey);
+		if (createdAt != null) {
+			try {
+				ret.put("created_at", Long.parseLong(createdAt));
+			} catch (NumberFormatException e) {
+				// Leave it out rather than pass on a malformed timestamp.
+			}
+		}
+	}
+
+	/**
+	 * Returns the raw values of the given top-level keys of a JSON object, or null for keys that
+	 * are missing. Other values are skipped over without being copied. String values are
+	 * returned without their quotes and are expected not to contain escapes, as hex fields don't.
+	 */
+	static String[] scan(String json, String... keys) {
+		String[] values = new String[keys.length];
+		if (json == null) {
+			return values;
+		}
+		try {
+			int i = skipWhitespace(json, 0);
+			if (json.charAt(i) != '{') {
+				return values;
+			}
+			i = skipWhitespace(json, i + 1);
+			while (json.charAt(i) != '}') {
+				int keyEnd = skipString(json, i);
+				int valueStart = skipWhitespace(json, skipWhitespace(json, keyEnd) + 1);
+				int valueEnd = skipValue(json, valueStart);
+				for (int k = 0; k < keys.length; k++) {
+					if (keyEnd - i - 2 == keys[k].length() && json.startsWith(keys[k], i + 1)) {
+						values[k] = json.charAt(valueStart) == '"'
+								? json.substring(valueStart + 1, valueEnd - 1)
+								: json.substring(valueStart, valueEnd);
+					}
+				}
+				i = skipWhitespace(json, valueEnd);
+				if (json.charAt(i) == ',') {
+					i = skipWhitespace(json, i + 1);
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// Malformed JSON; return what was found.
+		}
+		return values;
+	}
+
+	private static int skipWhitespace(String json, int i) {
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	// i is at the opening quote; returns the index after the closing quote.
+	private static int skipString(String json, int i) {
+		if (json.charAt(i) != '"') {
+			throw new IndexOutOfBoundsException("Expected a string at " + i);
+		}
+		i++;
+		while (true) {
+			char c = json.charAt(i);
+			if (c == '\\') {
+				i += 2;
+			} else if (c == '"') {
+				return i + 1;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private static int skipValue(String json, int i) {
+		char c = json.charAt(i);
+		if (c == '"') {
+			return skipString(json, i);
+		}
+		if (c == '{' || c == '[') {
+			int depth = 0;
+			while (true) {
+				c = json.charAt(i);
+				if (c == '"') {
+					i = skipString(json, i);
+					continue;
+				}
+				if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+					if (depth == 0) {
+						return i + 1;
+					}
+				}
+				i++;
+			}
+		}
+		while (i < json.length() && ",}] \t\r\n".indexOf(json.charAt(i)) < 0) {
+			i++;
+		}
+		return i;
+	}
+}
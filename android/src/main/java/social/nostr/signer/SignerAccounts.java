@@ -0,0 +1,146 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every account that logged in, by npub, with its signer package and granted permissions.
+ * Calls that pass an npub are routed to that account's signer, so several accounts, possibly
+ * on different signer apps, work side by side without setPackageName. Persisted like
+ * {@link SignerSession}, including the signer's lastUpdateTime, so an account whose signer
+ * was updated or reinstalled is dropped.
+ */
+class SignerAccounts {
+
+	private static final String PREFS_NAME = "NostrSignerPluginAccounts";
+
+	static class Account {
+		final String npub;
+		final String packageName;
+		final String permissions;
+		final long signerUpdated;
+
+		Account(String npub, String packageName, String permissions, long signerUpdated) {
+			this.npub = npub;
+			this.packageName = packageName;
+			this.permissions = permissions;
+			this.signerUpdated = signerUpdated;
+		}
+	}
+
+	private final SharedPreferences preferences;
+	private final Map<String, Account> accounts = new LinkedHashMap<>();
+
+	SignerAccounts(Context context) {
+		preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		SharedPreferences.Editor editor = preferences.edit();
+		for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+			Account account = parse(entry.getKey(), entry.getValue());
+			if (account == null || account.signerUpdated != lastUpdateTime(context, account.packageName)) {
+				editor.remove(entry.getKey());
+			} else {
+				accounts.put(account.npub, account);
+			}
+		}
+		editor.apply();
+	}
+
+	synchronized Account get(String npub) {
+		return npub != null ? accounts.get(npub) : null;
+	}
+
+	/** Returns the first account on {@code packageName}, or null. */
+	synchronized Account forPackage(String packageName) {
+		for (Account account : accounts.values()) {
+			if (account.packageName.equals(packageName)) {
+				return account;
+			}
+		}
+		return null;
+	}
+
+	synchronized List<Account> list() {
+		return new ArrayList<>(accounts.values());
+	}
+
+	/** Adds or updates an account. Null permissions keep the ones granted before. */
+	synchronized void put(Context context, String npub, String packageName, String permissions) {
+		Account previous = accounts.get(npub);
+		if (permissions == null && previous != null && packageName.equals(previous.packageName)) {
+			permissions = previous.permissions;
+		}
+		Account account = new Account(npub, packageName, permissions, lastUpdateTime(context, packageName));
+		accounts.put(npub, account);
+		try {
+			JSONObject json = new JSONObject();
+			json.put("package", account.packageName);
+			json.put("permissions", account.permissions);
+			json.put("signerUpdated", account.signerUpdated);
+			preferences.edit().putString(npub, json.toString()).apply();
+		} catch (JSONException e) {
+			// Kept in memory only.
+		}
+	}
+
+	synchronized Account remove(String npub) {
+		Account account = accounts.remove(npub);
+		if (account != null) {
+			preferences.edit().remove(npub).apply();
+		}
+		return account;
+	}
+
+	/** Removes the accounts of {@code packageName} and returns them. */
+	synchronized List<Account> removePackage(String packageName) {
+		List<Account> removed = new ArrayList<>();
+		SharedPreferences.Editor editor = preferences.edit();
+		Iterator<Account> iterator = accounts.values().iterator();
+		while (iterator.hasNext()) {
+			Account account = iterator.next();
+			if (account.packageName.equals(packageName)) {
+				iterator.remove();
+				editor.remove(account.npub);
+				removed.add(account);
+			}
+		}
+		editor.apply();
+		return removed;
+	}
+
+	synchronized void clear() {
+		accounts.clear();
+		preferences.edit().clear().apply();
+	}
+
+	private static Account parse(String npub, Object value) {
+		if (!(value instanceof String)) {
+			return null;
+		}
+		try {
+			JSONObject json = new JSONObject((String) value);
+			return new Account(npub, json.getString("package"), json.optString("permissions", null),
+					json.optLong("signerUpdated", 0));
+		} catch (JSONException e) {
+			return null;
+		}
+	}
+
+	// The local key and bunker backends are not installed packages and report -1, as SignerSession does.
+	private static long lastUpdateTime(Context context, String packageName) {
+		try {
+			return context.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+		} catch (PackageManager.NameNotFoundException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package social.nostr.signer;
+
+import android.content.Context;
+
+/**
+ * The signing operations the plugin routes per signer package: {@link NostrSigner} talks to
+ * an external NIP-55 signer app, {@link LocalSigner} signs in process with a stored key and
+ * {@link BunkerSigner} asks a NIP-46 remote signer over a relay.
+ * A null result means the backend did not answer and the plugin should use the intent.
+ */
+interface SignerBackend {
+
+	String getPublicKey(Context context, String packageName);
+
+	/** Returns {signature, signed event JSON}. */
+	String[] signEvent(Context context, String packageName, String eventJson, String loggedInUserNpub);
+
+	String nip04Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub);
+
+	String nip04Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub);
+
+	String nip44Encrypt(Context context, String packageName, String plainText, String recipientPubKey, String loggedInUserNpub);
+
+	String nip44Decrypt(Context context, String packageName, String encryptedText, String senderPubKey, String loggedInUserNpub);
+
+	String decryptZapEvent(Context context, String packageName, String eventJson, String loggedInUserNpub);
+}
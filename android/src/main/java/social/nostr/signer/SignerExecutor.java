@@ -0,0 +1,270 @@
+package social.nostr.signer;
+
+import com.getcapacitor.JSObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs signer calls on a bounded worker pool instead of the Capacitor plugin thread.
+ * Each signer package gets its own queue and may only occupy {@code perPackageParallelism}
+ * workers, so a signer that is cold starting or stalled cannot starve calls to other signers.
+ * Calls are queued by priority class: a free worker always takes the oldest interactive call
+ * first, then normal, then background calls, and background calls never occupy more than
+ * {@code backgroundParallelism} workers so user actions find one free.
+ */
+class SignerExecutor {
+
+	static final int INTERACTIVE = 0;
+	static final int NORMAL = 1;
+	static final int BACKGROUND = 2;
+	private static final String[] PRIORITIES = { "interactive", "normal", "background" };
+
+	private static final long KEEP_ALIVE_SECONDS = 30;
+
+	private final ThreadPoolExecutor pool;
+	private final int parallelism;
+	private final int perPackageParallelism;
+	private final int backgroundParallelism;
+	private final Map<String, PackageQueue> queues = new HashMap<>();
+	private final PriorityStats[] stats = { new PriorityStats(), new PriorityStats(), new PriorityStats() };
+	private int running = 0;
+	private long sequence = 0;
+
+	SignerExecutor(int parallelism, int perPackageParallelism) {
+		this(parallelism, perPackageParallelism, parallelism);
+	}
+
+	SignerExecutor(int parallelism, int perPackageParallelism, int backgroundParallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		this.perPackageParallelism = Math.max(1, Math.min(perPackageParallelism, this.parallelism));
+		this.backgroundParallelism = Math.max(1, Math.min(backgroundParallelism, this.parallelism));
+		this.pool = new ThreadPoolExecutor(this.parallelism, this.parallelism, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), new SignerThreadFactory());
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	/** Parses a priority class name, returning {@code fallback} for null. */
+	static int priority(String name, int fallback) {
+		if (name == null) {
+			return fallback;
+		}
+		for (int i = 0; i < PRIORITIES.length; i++) {
+			if (PRIORITIES[i].equals(name)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Unknown priority: " + name);
+	}
+
+	void execute(String packageName, Runnable task) {
+		execute(packageName, NORMAL, task);
+	}
+
+	void execute(String packageName, int priority, Runnable task) {
+		execute(packageName, priority, task, null);
+	}
+
+	/** Runs {@code task}, or {@code onDropped} if the executor shuts down before the task started. */
+	void execute(String packageName, int priority, Runnable task, Runnable onDropped) {
+		String key = packageName != null ? packageName : "";
+		synchronized (queues) {
+			PackageQueue queue = queues.get(key);
+			if (queue == null) {
+				queue = new PackageQueue(key);
+				queues.put(key, queue);
+			}
+			queue.pending[priority].add(new Task(task, onDropped, priority, sequence++));
+			PriorityStats counters = stats[priority];
+			counters.queued++;
+			counters.maxQueued = Math.max(counters.maxQueued, counters.queued);
+			drain();
+		}
+	}
+
+	/** Queue depths and waits per priority class; {@code reset} restarts the peaks, counts and waits. */
+	JSObject stats(boolean reset) {
+		synchronized (queues) {
+			JSObject ret = new JSObject();
+			ret.put("parallelism", parallelism);
+			ret.put("backgroundParallelism", backgroundParallelism);
+			ret.put("running", running);
+			int queued = 0;
+			for (int i = 0; i < PRIORITIES.length; i++) {
+				PriorityStats counters = stats[i];
+				queued += counters.queued;
+				JSObject entry = new JSObject();
+				entry.put("queued", counters.queued);
+				entry.put("running", counters.running);
+				entry.put("maxQueued", counters.maxQueued);
+				entry.put("started", counters.started);
+				entry.put("meanWaitMs", counters.started > 0 ? counters.waitNanos / 1e6 / counters.started : 0);
+				entry.put("maxWaitMs", counters.maxWaitNanos / 1e6);
+				ret.put(PRIORITIES[i], entry);
+				if (reset) {
+					counters.maxQueued = counters.queued;
+					counters.started = 0;
+					counters.waitNanos = 0;
+					counters.maxWaitNanos = 0;
+				}
+			}
+			ret.put("queued", queued);
+			return ret;
+		}
+	}
+
+	void shutdown() {
+		List<Task> dropped = new ArrayList<>();
+		synchronized (queues) {
+			for (PackageQueue queue : queues.values()) {
+				for (ArrayDeque<Task> pending : queue.pending) {
+					dropped.addAll(pending);
+				}
+			}
+			queues.clear();
+		}
+		for (Runnable runnable : pool.shutdownNow()) {
+			if (runnable instanceof Started) {
+				dropped.add(((Started) runnable).task);
+			}
+		}
+		for (Task task : dropped) {
+			if (task.onDropped != null) {
+				task.onDropped.run();
+			}
+		}
+	}
+
+	// Must be called while holding the queues lock. Tasks only go to the pool when a worker is
+	// free, so the order in which they run is decided here rather than by the pool's FIFO queue.
+	private void drain() {
+		while (running < parallelism && !pool.isShutdown()) {
+			PackageQueue from = null;
+			Task next = null;
+			for (PackageQueue queue : queues.values()) {
+				if (queue.running >= perPackageParallelism) {
+					continue;
+				}
+				for (int priority = INTERACTIVE; priority <= BACKGROUND; priority++) {
+					if (priority == BACKGROUND && stats[BACKGROUND].running >= backgroundParallelism) {
+						break;
+					}
+					Task head = queue.pending[priority].peek();
+					if (head != null) {
+						if (next == null || priority < next.priority || (priority == next.priority && head.sequence < next.sequence)) {
+							next = head;
+							from = queue;
+						}
+						break;
+					}
+				}
+			}
+			if (next == null) {
+				return;
+			}
+			start(from, next);
+		}
+	}
+
+	private void start(PackageQueue queue, Task task) {
+		queue.pending[task.priority].poll();
+		queue.running++;
+		running++;
+		PriorityStats counters = stats[task.priority];
+		counters.queued--;
+		counters.running++;
+		counters.started++;
+		long waited = System.nanoTime() - task.enqueuedAt;
+		counters.waitNanos += waited;
+		counters.maxWaitNanos = Math.max(counters.maxWaitNanos, waited);
+		pool.execute(new Started(task, queue, counters));
+	}
+
+	private static class Task {
+		final Runnable runnable;
+		final Runnable onDropped;
+		final int priority;
+		final long sequence;
+		final long enqueuedAt = System.nanoTime();
+
+		Task(Runnable runnable, Runnable onDropped, int priority, long sequence) {
+			this.runnable = runnable;
+			this.onDropped = onDropped;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+	}
+
+	// A task handed to the pool; kept as a class so shutdown can find tasks the pool never ran.
+	private class Started implements Runnable {
+		final Task task;
+		final PackageQueue queue;
+		final PriorityStats counters;
+
+		Started(Task task, PackageQueue queue, PriorityStats counters) {
+			this.task = task;
+			this.queue = queue;
+			this.counters = counters;
+		}
+
+		@Override
+		public void run() {
+			try {
+				task.runnable.run();
+			} finally {
+				synchronized (queues) {
+					queue.running--;
+					running--;
+					counters.running--;
+					if (queue.running == 0 && queue.isEmpty()) {
+						queues.remove(queue.key);
+					}
+					drain();
+				}
+			}
+		}
+	}
+
+	private static class PackageQueue {
+		final String key;
+		@SuppressWarnings("unchecked")
+		final ArrayDeque<Task>[] pending = new ArrayDeque[] { new ArrayDeque<Task>(), new ArrayDeque<Task>(), new ArrayDeque<Task>() };
+		int running = 0;
+
+		PackageQueue(String key) {
+			this.key = key;
+		}
+
+		boolean isEmpty() {
+			return pending[INTERACTIVE].isEmpty() && pending[NORMAL].isEmpty() && pending[BACKGROUND].isEmpty();
+		}
+	}
+
+	private static class PriorityStats {
+		int queued;
+		int running;
+		int maxQueued;
+		long started;
+		long waitNanos;
+		long maxWaitNanos;
+	}
+
+	private static class SignerThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "NostrSigner-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
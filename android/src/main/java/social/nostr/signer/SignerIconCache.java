@@ -0,0 +1,129 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Renders signer app icons at the requested size and keeps the PNGs in the app's cache
+ * directory, keyed by package name, versionCode and size, so each icon is only drawn and
+ * encoded once per signer version.
+ */
+class SignerIconCache {
+
+	private static final String CACHE_DIR = "nostr-signer-icons";
+
+	private final File cacheDir;
+
+	SignerIconCache(Context context) {
+		cacheDir = new File(context.getCacheDir(), CACHE_DIR);
+	}
+
+	/**
+	 * Returns the icon as a base64 encoded PNG, or null if the package is not installed.
+	 * A size of 0 or less keeps the drawable's intrinsic size.
+	 */
+	String getIcon(Context context, String packageName, int size) {
+		PackageManager packageManager = context.getPackageManager();
+		long versionCode;
+		try {
+			versionCode = versionCode(packageManager.getPackageInfo(packageName, 0));
+		} catch (PackageManager.NameNotFoundException e) {
+			return null;
+		}
+		String prefix = packageName + "-";
+		File file = new File(cacheDir, prefix + versionCode + "-" + Math.max(size, 0) + ".png");
+		byte[] png = read(file);
+		if (png == null) {
+			Drawable drawable;
+			try {
+				drawable = packageManager.getApplicationIcon(packageName);
+			} catch (PackageManager.NameNotFoundException e) {
+				return null;
+			}
+			png = render(drawable, size);
+			deleteOtherVersions(prefix, versionCode);
+			write(file, png);
+		}
+		return Base64.encodeToString(png, Base64.NO_WRAP);
+	}
+
+	private static byte[] render(Drawable drawable, int size) {
+		int width = size > 0 ? size : Math.max(drawable.getIntrinsicWidth(), 1);
+		int height = size > 0 ? size : Math.max(drawable.getIntrinsicHeight(), 1);
+		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		Canvas canvas = new Canvas(bitmap);
+		drawable.setBounds(0, 0, width, height);
+		drawable.draw(canvas);
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
+		bitmap.recycle();
+		return outputStream.toByteArray();
+	}
+
+	@SuppressWarnings("deprecation")
+	private static long versionCode(PackageInfo packageInfo) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+			return packageInfo.getLongVersionCode();
+		}
+		return packageInfo.versionCode;
+	}
+
+	private void deleteOtherVersions(String prefix, long versionCode) {
+		File[] files = cacheDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		String current = prefix + versionCode + "-";
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(prefix) && !name.startsWith(current)) {
+				file.delete();
+			}
+		}
+	}
+
+	private static byte[] read(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (FileInputStream inputStream = new FileInputStream(file)) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) file.length());
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, read);
+			}
+			return outputStream.toByteArray();
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private void write(File file, byte[] png) {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			return;
+		}
+		File tmp = new File(cacheDir, file.getName() + ".tmp");
+		try (FileOutputStream outputStream = new FileOutputStream(tmp)) {
+			outputStream.write(png);
+		} catch (IOException e) {
+			tmp.delete();
+			return;
+		}
+		if (!tmp.renameTo(file)) {
+			tmp.delete();
+		}
+	}
+}
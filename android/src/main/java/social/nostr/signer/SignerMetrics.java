@@ -0,0 +1,137 @@
+package social.nostr.signer;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms per stage of a signer call and outcome counters per signer package and
+ * method. Histograms split each power of two into four linear buckets (at most 25% wide),
+ * so recording is allocation free and percentiles are accurate to one bucket.
+ */
+class SignerMetrics {
+
+	// From handing a call to SignerExecutor until a worker starts it; the bridge crossing before that is not observable natively.
+	static final String STAGE_QUEUE = "queue";
+	static final String STAGE_PROVIDER_QUERY = "providerQuery";
+	static final String STAGE_CURSOR_READ = "cursorRead";
+	static final String STAGE_INTENT_ROUND_TRIP = "intentRoundTrip";
+	static final String STAGE_BUNKER_ROUND_TRIP = "bunkerRoundTrip";
+	static final String STAGE_VERIFY = "verify";
+
+	static final int OUTCOME_PROVIDER = 0;
+	static final int OUTCOME_INTENT = 1;
+	static final int OUTCOME_REJECTED = 2;
+	static final int OUTCOME_TIMED_OUT = 3;
+	static final int OUTCOME_CANCELLED = 4;
+	private static final int OUTCOMES = 5;
+
+	private final ConcurrentHashMap<String, Histogram> stages = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, AtomicLongArray> outcomes = new ConcurrentHashMap<>();
+
+	void recordLatency(String stage, long nanos) {
+		Histogram histogram = stages.get(stage);
+		if (histogram == null) {
+			histogram = new Histogram();
+			Histogram existing = stages.putIfAbsent(stage, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		histogram.record(nanos);
+	}
+
+	void count(String packageName, String method, int outcome) {
+		String key = packageName + '|' + method;
+		AtomicLongArray counters = outcomes.get(key);
+		if (counters == null) {
+			counters = new AtomicLongArray(OUTCOMES);
+			AtomicLongArray existing = outcomes.putIfAbsent(key, counters);
+			if (existing != null) {
+				counters = existing;
+			}
+		}
+		counters.incrementAndGet(outcome);
+	}
+
+	JSObject snapshot() {
+		JSObject stagesObject = new JSObject();
+		for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+			stagesObject.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		JSArray operations = new JSArray();
+		for (Map.Entry<String, AtomicLongArray> entry : outcomes.entrySet()) {
+			int separator = entry.getKey().lastIndexOf('|');
+			AtomicLongArray counters = entry.getValue();
+			JSObject operation = new JSObject();
+			operation.put("packageName", entry.getKey().substring(0, separator));
+			operation.put("method", entry.getKey().substring(separator + 1));
+			operation.put("provider", counters.get(OUTCOME_PROVIDER));
+			operation.put("intent", counters.get(OUTCOME_INTENT));
+			operation.put("rejected", counters.get(OUTCOME_REJECTED));
+			operation.put("timedOut", counters.get(OUTCOME_TIMED_OUT));
+			operation.put("cancelled", counters.get(OUTCOME_CANCELLED));
+			operations.put(operation);
+		}
+		JSObject ret = new JSObject();
+		ret.put("stages", stagesObject);
+		ret.put("operations", operations);
+		return ret;
+	}
+
+	void reset() {
+		stages.clear();
+		outcomes.clear();
+	}
+
+	private static class Histogram {
+		private static final int BUCKETS = 128;
+
+		private final long[] counts = new long[BUCKETS];
+		private long total = 0;
+		private long sumNanos = 0;
+		private long maxNanos = 0;
+
+		synchronized void record(long nanos) {
+			long micros = Math.max(1, nanos / 1000);
+			// Bucket = 4 * floor(log2(micros)) + the two bits below the leading one.
+			int log2 = 63 - Long.numberOfLeadingZeros(micros);
+			int fraction = log2 >= 2 ? (int) ((micros >>> (log2 - 2)) & 0x3) : (int) ((micros << (2 - log2)) & 0x3);
+			counts[Math.min(BUCKETS - 1, log2 * 4 + fraction)]++;
+			total++;
+			sumNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		synchronized JSObject snapshot() {
+			JSObject ret = new JSObject();
+			ret.put("count", total);
+			ret.put("mean", total > 0 ? sumNanos / 1e6 / total : 0);
+			ret.put("p50", percentile(0.50));
+			ret.put("p95", percentile(0.95));
+			ret.put("p99", percentile(0.99));
+			ret.put("max", maxNanos / 1e6);
+			return ret;
+		}
+
+		// Upper bound of the bucket holding the given quantile, in milliseconds.
+		private double percentile(double quantile) {
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					double upperMicros = Math.pow(2, i / 4) * (1 + (i % 4 + 1) / 4.0);
+					return Math.min(upperMicros / 1000.0, maxNanos / 1e6);
+				}
+			}
+			return maxNanos / 1e6;
+		}
+	}
+}
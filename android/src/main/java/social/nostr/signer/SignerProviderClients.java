@@ -0,0 +1,170 @@
+package social.nostr.signer;
+
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.DeadObjectException;
+import android.os.RemoteException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one ContentProviderClient per signer authority (e.g. {@code com.example.signer.SIGN_EVENT})
+ * so that back-to-back queries reuse the binding to the signer process instead of resolving the
+ * provider again each time. Clients whose process died are evicted and re-acquired on next use.
+ */
+class SignerProviderClients {
+
+	// Set by the plugin around each request, so a cancelled or timed out call also cancels its query.
+	private static final ThreadLocal<CancellationSignal> cancellationSignal = new ThreadLocal<>();
+
+	private final ConcurrentHashMap<String, ContentProviderClient> clients = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Uri> uris = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Health> health = new ConcurrentHashMap<>();
+	private final SignerMetrics metrics;
+
+	/** When a signer's provider last answered, and how long that took. */
+	static class Health {
+		final long seenAt;
+		final long latencyNanos;
+
+		Health(long seenAt, long latencyNanos) {
+			this.seenAt = seenAt;
+			this.latencyNanos = latencyNanos;
+		}
+	}
+
+	SignerProviderClients(SignerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Makes the queries on this thread cancellable through {@code signal}, or not if it is null.
+	 * A cancelled query throws {@link android.os.OperationCanceledException}.
+	 */
+	static void setCancellationSignal(CancellationSignal signal) {
+		if (signal != null) {
+			cancellationSignal.set(signal);
+		} else {
+			cancellationSignal.remove();
+		}
+	}
+
+	/** The signal set for this thread's queries, or null. */
+	static CancellationSignal currentCancellationSignal() {
+		return cancellationSignal.get();
+	}
+
+	Cursor query(Context context, String packageName, String method, String[] projection, String selection) {
+		CancellationSignal signal = cancellationSignal.get();
+		return run(context, packageName, method, (client, uri) -> client.query(uri, projection, selection, null, null, signal));
+	}
+
+	/** Runs {@code ContentProvider.call} on the signer's authority for {@code method}. */
+	Bundle call(Context context, String packageName, String method, Bundle extras) {
+		return run(context, packageName, method, (client, uri) -> client.call(method, null, extras));
+	}
+
+	private <T> T run(Context context, String packageName, String method, Operation<T> operation) {
+		String authority = packageName + "." + method;
+		Uri uri = uris.get(authority);
+		if (uri == null) {
+			uri = Uri.parse("content://" + authority);
+			uris.put(authority, uri);
+		}
+		long start = System.nanoTime();
+		try {
+			return run(context, packageName, authority, uri, (client, u) -> {
+				T result = operation.run(client, u);
+				health.put(packageName, new Health(System.currentTimeMillis(), System.nanoTime() - start));
+				return result;
+			});
+		} finally {
+			metrics.recordLatency(SignerMetrics.STAGE_PROVIDER_QUERY, System.nanoTime() - start);
+		}
+	}
+
+	private <T> T run(Context context, String packageName, String authority, Uri uri, Operation<T> operation) {
+		ContentProviderClient client = acquire(context, authority);
+		if (client == null) {
+			health.remove(packageName);
+			return null;
+		}
+		try {
+			return operation.run(client, uri);
+		} catch (DeadObjectException e) {
+			// The signer process went away since the client was cached; bind again once.
+			evict(authority, client);
+			client = acquire(context, authority);
+			if (client == null) {
+				health.remove(packageName);
+				return null;
+			}
+			try {
+				return operation.run(client, uri);
+			} catch (RemoteException retryException) {
+				evict(authority, client);
+				health.remove(packageName);
+				return null;
+			}
+		} catch (RemoteException e) {
+			evict(authority, client);
+			health.remove(packageName);
+			return null;
+		}
+	}
+
+	/**
+	 * Binds to the signer's providers for {@code methods} ahead of the first call, which starts
+	 * the signer process if it is not running. The bindings are kept until {@link #release}, so
+	 * the signer stays warm while the app is.
+	 */
+	void prewarm(Context context, String packageName, String... methods) {
+		for (String method : methods) {
+			acquire(context, packageName + "." + method);
+		}
+	}
+
+	/** The last answer from {@code packageName}'s provider, or null if it has not answered since it was bound. */
+	Health health(String packageName) {
+		return health.get(packageName);
+	}
+
+	void release() {
+		for (Map.Entry<String, ContentProviderClient> entry : clients.entrySet()) {
+			evict(entry.getKey(), entry.getValue());
+		}
+		health.clear();
+	}
+
+	private ContentProviderClient acquire(Context context, String authority) {
+		ContentProviderClient client = clients.get(authority);
+		if (client != null) {
+			return client;
+		}
+		client = context.getContentResolver().acquireUnstableContentProviderClient(authority);
+		if (client == null) {
+			return null;
+		}
+		ContentProviderClient existing = clients.putIfAbsent(authority, client);
+		if (existing != null) {
+			client.release();
+			return existing;
+		}
+		return client;
+	}
+
+	private void evict(String authority, ContentProviderClient client) {
+		if (clients.remove(authority, client)) {
+			client.release();
+		}
+	}
+
+	private interface Operation<T> {
+		T run(ContentProviderClient client, Uri uri) throws RemoteException;
+	}
+}
@@ -0,0 +1,83 @@
+package social.nostr.signer;
+
+import android.content.Intent;
+import android.net.Uri;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single NIP-55 operation, used to build the nostrsigner: intent when the signer's
+ * content provider does not answer and to shape the result handed back to JS.
+ */
+class SignerRequest {
+
+	private static final AtomicLong UNSHARED = new AtomicLong();
+
+	final String type;
+	final String packageName;
+	final String content;
+	final String pubKey;
+	final String npub;
+	final String id;
+	final String format;
+	// The event a decryption belongs to, under which its result is stored; may be null.
+	final String eventId;
+
+	SignerRequest(String type, String packageName, String content, String pubKey, String npub, String id) {
+		this(type, packageName, content, pubKey, npub, id, SignedEventResult.FORMAT_JSON, null);
+	}
+
+	SignerRequest(String type, String packageName, String content, String pubKey, String npub, String id, String format) {
+		this(type, packageName, content, pubKey, npub, id, format, null);
+	}
+
+	SignerRequest(String type, String packageName, String content, String pubKey, String npub, String id, String format,
+			String eventId) {
+		this.type = type;
+		this.packageName = packageName;
+		this.content = content;
+		this.pubKey = pubKey;
+		this.npub = npub;
+		this.id = id;
+		this.format = format;
+		this.eventId = eventId;
+	}
+
+	// Identifies requests that would produce the same result, for single-flight coalescing. Each
+	// encryption gets a key of its own: sharing one would reuse its nonce and link the messages.
+	String key() {
+		if (type.endsWith("_encrypt")) {
+			return type + '|' + UNSHARED.incrementAndGet();
+		}
+		return type + '|' + packageName + '|' + npub + '|' + pubKey + '|' + Digests.sha256Hex(content);
+	}
+
+	Intent toIntent(String intentId) {
+		Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:" + content));
+		intent.setPackage(packageName);
+		intent.putExtra("type", type);
+		intent.putExtra("id", intentId);
+		intent.putExtra("current_user", npub);
+		if (pubKey != null) {
+			intent.putExtra("pubKey", pubKey);
+		}
+		return intent;
+	}
+
+	JSObject toResult(String result, String signedEventJson) {
+		JSObject ret = new JSObject();
+		ret.put("id", id);
+		putResult(ret, result, signedEventJson);
+		return ret;
+	}
+
+	void putResult(JSObject ret, String result, String signedEventJson) {
+		if ("sign_event".equals(type)) {
+			SignedEventResult.put(ret, format, result, signedEventJson, content, npub);
+		} else {
+			ret.put("result", result);
+		}
+	}
+}
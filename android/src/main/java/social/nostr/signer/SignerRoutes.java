@@ -0,0 +1,143 @@
+package social.nostr.signer;
+
+import android.os.SystemClock;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What each signer's content provider does with each method and, for SIGN_EVENT, each event
+ * kind. A provider that rejects a combination, usually because the permission was not granted,
+ * is not queried for it again for {@code rejectionTtlMs}, and those calls go straight to the
+ * intent. Approving a request in the signer app may grant the permission, so it ends the wait
+ * early, as do permission changes that clear a signer's routes.
+ */
+class SignerRoutes {
+
+	static final int NO_KIND = -1;
+
+	private final long rejectionTtlMs;
+	private final Map<String, Route> routes = new HashMap<>();
+
+	private static class Route {
+		final String packageName;
+		final String method;
+		final int kind;
+		long answered;
+		long rejected;
+		long skipped;
+		long rejectedUntil;
+
+		Route(String packageName, String method, int kind) {
+			this.packageName = packageName;
+			this.method = method;
+			this.kind = kind;
+		}
+	}
+
+	SignerRoutes(long rejectionTtlMs) {
+		this.rejectionTtlMs = Math.max(0, rejectionTtlMs);
+	}
+
+	/** The event kind of a SIGN_EVENT request, read without parsing the event, or {@link #NO_KIND}. */
+	static int kind(String method, String content) {
+		if (!"SIGN_EVENT".equals(method)) {
+			return NO_KIND;
+		}
+		String kind = SignedEventResult.scan(content, "kind")[0];
+		try {
+			return kind != null ? Integer.parseInt(kind) : NO_KIND;
+		} catch (NumberFormatException e) {
+			return NO_KIND;
+		}
+	}
+
+	/** Returns false, and counts the skipped query, while the provider is known to reject this combination. */
+	synchronized boolean useProvider(String packageName, String method, int kind) {
+		Route route = routes.get(key(packageName, method, kind));
+		if (route == null || route.rejectedUntil <= SystemClock.elapsedRealtime()) {
+			return true;
+		}
+		route.skipped++;
+		return false;
+	}
+
+	synchronized void answered(String packageName, String method, int kind) {
+		Route route = route(packageName, method, kind);
+		route.answered++;
+		route.rejectedUntil = 0;
+	}
+
+	synchronized void rejected(String packageName, String method, int kind) {
+		if (rejectionTtlMs == 0) {
+			return;
+		}
+		Route route = route(packageName, method, kind);
+		route.rejected++;
+		route.rejectedUntil = SystemClock.elapsedRealtime() + rejectionTtlMs;
+	}
+
+	/** The user approved a request of this type in the signer app; ask the provider again next time. */
+	synchronized void approvedByIntent(String packageName, String type, String content) {
+		String method = type.toUpperCase(Locale.ROOT);
+		Route route = routes.get(key(packageName, method, kind(method, content)));
+		if (route != null) {
+			route.rejectedUntil = 0;
+		}
+	}
+
+	synchronized void clear(String packageName) {
+		Iterator<Route> iterator = routes.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().packageName.equals(packageName)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized void clear() {
+		routes.clear();
+	}
+
+	synchronized JSArray snapshot() {
+		long now = SystemClock.elapsedRealtime();
+		JSArray ret = new JSArray();
+		for (Route route : routes.values()) {
+			JSObject entry = new JSObject();
+			entry.put("packageName", route.packageName);
+			entry.put("method", route.method);
+			if (route.kind != NO_KIND) {
+				entry.put("kind", route.kind);
+			}
+			boolean intent = route.rejectedUntil > now;
+			entry.put("route", intent ? "intent" : "provider");
+			if (intent) {
+				entry.put("retryInMs", route.rejectedUntil - now);
+			}
+			entry.put("answered", route.answered);
+			entry.put("rejected", route.rejected);
+			entry.put("skipped", route.skipped);
+			ret.put(entry);
+		}
+		return ret;
+	}
+
+	private Route route(String packageName, String method, int kind) {
+		String key = key(packageName, method, kind);
+		Route route = routes.get(key);
+		if (route == null) {
+			route = new Route(packageName, method, kind);
+			routes.put(key, route);
+		}
+		return route;
+	}
+
+	private static String key(String packageName, String method, int kind) {
+		return packageName + '|' + method + '|' + kind;
+	}
+}
@@ -0,0 +1,84 @@
+package social.nostr.signer;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+
+/**
+ * The logged in signer package, npub and requested permissions, kept in memory and
+ * persisted to SharedPreferences so getPublicKey can be answered without IPC after login.
+ * The signer's lastUpdateTime is stored with the session so an update or reinstall made
+ * while the app was not running still invalidates it.
+ */
+class SignerSession {
+
+	private static final String PREFS_NAME = "NostrSignerPluginSession";
+	private static final String KEY_PACKAGE = "package";
+	private static final String KEY_NPUB = "npub";
+	private static final String KEY_PERMISSIONS = "permissions";
+	private static final String KEY_SIGNER_UPDATED = "signerUpdated";
+
+	private final SharedPreferences preferences;
+	private String packageName;
+	private String npub;
+	private String permissions;
+	private long signerUpdated;
+
+	SignerSession(Context context) {
+		preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		packageName = preferences.getString(KEY_PACKAGE, null);
+		npub = preferences.getString(KEY_NPUB, null);
+		permissions = preferences.getString(KEY_PERMISSIONS, null);
+		signerUpdated = preferences.getLong(KEY_SIGNER_UPDATED, 0);
+		if (packageName != null && signerUpdated != lastUpdateTime(context, packageName)) {
+			clear();
+		}
+	}
+
+	synchronized String getPackageName() {
+		return packageName;
+	}
+
+	synchronized String getNpub() {
+		return npub;
+	}
+
+	synchronized String getPermissions() {
+		return permissions;
+	}
+
+	synchronized boolean isLoggedIn(String packageName) {
+		return npub != null && packageName != null && packageName.equals(this.packageName);
+	}
+
+	synchronized void save(Context context, String packageName, String npub, String permissions) {
+		this.packageName = packageName;
+		this.npub = npub;
+		if (permissions != null) {
+			this.permissions = permissions;
+		}
+		this.signerUpdated = lastUpdateTime(context, packageName);
+		preferences.edit()
+				.putString(KEY_PACKAGE, packageName)
+				.putString(KEY_NPUB, npub)
+				.putString(KEY_PERMISSIONS, this.permissions)
+				.putLong(KEY_SIGNER_UPDATED, signerUpdated)
+				.apply();
+	}
+
+	synchronized void clear() {
+		packageName = null;
+		npub = null;
+		permissions = null;
+		signerUpdated = 0;
+		preferences.edit().clear().apply();
+	}
+
+	private static long lastUpdateTime(Context context, String packageName) {
+		try {
+			return context.getPackageManager().getPackageInfo(packageName, 0).lastUpdateTime;
+		} catch (PackageManager.NameNotFoundException e) {
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package social.nostr.signer;
+
+import android.os.CancellationSignal;
+
+import com.getcapacitor.PluginCall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lets concurrent identical signer requests share one provider query or activity launch.
+ * The first caller for a key becomes the leader and runs the operation; callers that join
+ * while it is in flight are resolved with the same result, shaped by their own request.
+ * A caller that leaves early only cancels the operation if it was the last one waiting.
+ */
+class SingleFlight {
+
+	/** One shared operation. Its signal is cancelled once every caller has left. */
+	static class Flight {
+		final String key;
+		final CancellationSignal signal = new CancellationSignal();
+		private final List<Waiter> waiters = new ArrayList<>(1);
+
+		Flight(String key) {
+			this.key = key;
+		}
+	}
+
+	private final Map<String, Flight> inFlight = new HashMap<>();
+	private final PendingCalls pendingCalls;
+
+	SingleFlight(PendingCalls pendingCalls) {
+		this.pendingCalls = pendingCalls;
+	}
+
+	/**
+	 * Returns the new flight if the caller is the leader and must run the operation, or null if
+	 * it was attached to an operation already in flight.
+	 */
+	synchronized Flight join(String key, PluginCall call, SignerRequest request) {
+		Flight flight = inFlight.get(key);
+		boolean leader = flight == null;
+		if (leader) {
+			flight = new Flight(key);
+			inFlight.put(key, flight);
+		}
+		flight.waiters.add(new Waiter(call, request));
+		return leader ? flight : null;
+	}
+
+	/** Detaches {@code call}, which was already rejected, from the flight for {@code key}. */
+	void leave(String key, PluginCall call) {
+		Flight abandoned = null;
+		synchronized (this) {
+			Flight flight = inFlight.get(key);
+			if (flight == null) {
+				return;
+			}
+			for (int i = 0; i < flight.waiters.size(); i++) {
+				if (flight.waiters.get(i).call == call) {
+					flight.waiters.remove(i);
+					break;
+				}
+			}
+			if (flight.waiters.isEmpty()) {
+				inFlight.remove(key);
+				abandoned = flight;
+			}
+		}
+		if (abandoned != null) {
+			abandoned.signal.cancel();
+		}
+	}
+
+	void complete(Flight flight, String result, String signedEventJson) {
+		for (Waiter waiter : remove(flight)) {
+			if (pendingCalls.finish(waiter.call)) {
+				waiter.call.resolve(waiter.request.toResult(result, signedEventJson));
+			}
+		}
+	}
+
+	void fail(Flight flight, String message) {
+		for (Waiter waiter : remove(flight)) {
+			if (pendingCalls.finish(waiter.call)) {
+				waiter.call.reject(message);
+			}
+		}
+	}
+
+	// A flight that every caller left is no longer in the map, and may have been replaced by a new one for the same key.
+	private synchronized List<Waiter> remove(Flight flight) {
+		if (inFlight.get(flight.key) != flight) {
+			return new ArrayList<>(0);
+		}
+		inFlight.remove(flight.key);
+		return flight.waiters;
+	}
+
+	private static class Waiter {
+		final PluginCall call;
+		final SignerRequest request;
+
+		Waiter(PluginCall call, SignerRequest request) {
+			this.call = call;
+			this.request = request;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package social.nostr.signer;
+
+import android.os.Process;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in NIP-55 signer for tests and load tests, shared by the benchmark module's
+ * {@code FakeSignerProvider} and {@code FakeSignerActivity}. It signs with BIP-340 Schnorr and encrypts with NIP-04/NIP-44
+ * using a fixed test key, and can be told to be slow, to reject, to require the intent
+ * fallback, or to crash. Configuration is static so tests can change it between calls;
+ * call {@link #reset()} between tests.
+ */
+final class FakeSigner {
+
+	static final String PACKAGE_NAME = "com.example.fakesigner";
+
+	static final String[] AUTHORITIES = { "GET_PUBLIC_KEY", "SIGN_EVENT", "NIP04_ENCRYPT", "NIP04_DECRYPT",
+			"NIP44_ENCRYPT", "NIP44_DECRYPT", "DECRYPT_ZAP_EVENT" };
+
+	static final byte[] DEFAULT_SECRET_KEY = Hex.decode("5e8c8f4f4b1cfd3c1d3f1b0a2f4e6d8c7b9a0e1f2d3c4b5a69788796a5b4c3d2");
+
+	/** Fixed delay before each answer, in milliseconds. */
+	static volatile long latencyMs;
+	/** Random extra delay of up to this many milliseconds. */
+	static volatile long latencyJitterMs;
+	/** Share of requests the user "rejects". The provider answers with a rejected row, the activity with RESULT_CANCELED. */
+	static volatile double rejectionRate;
+	/** Share of provider queries answered with null, as a signer does without a remembered permission, so the plugin falls back to the intent. */
+	static volatile double fallbackRate;
+	/** Share of requests that crash the signer. */
+	static volatile double crashRate;
+	/** Crash by killing the process, for runs where the signer has its own process; otherwise crashes throw. */
+	static volatile boolean killProcessOnCrash;
+	/** Answer with fixed values instead of doing any crypto, for benchmarks of the plugin's own overhead. */
+	static volatile boolean passthrough;
+	/** Support the pipe based call() for large payloads. */
+	static volatile boolean largePayloads = true;
+
+	static final AtomicLong providerQueries = new AtomicLong();
+	static final AtomicLong largePayloadCalls = new AtomicLong();
+	static final AtomicLong intentRequests = new AtomicLong();
+	static final AtomicLong rejections = new AtomicLong();
+	static final AtomicLong fallbacks = new AtomicLong();
+	static final AtomicLong crashes = new AtomicLong();
+
+	static final String PASSTHROUGH_SIGNATURE = "3b7f7e0f4e3d1b2c9a8d7c6b5a4f3e2d1c0b9a8f7e6d5c4b3a291807f6e5d4c3"
+			+ "b2a1908f7e6d5c4b3a291807f6e5d4c3b2a1908f7e6d5c4b3a291807f6e5d4c3";
+
+	private static volatile byte[] secretKey = DEFAULT_SECRET_KEY;
+	private static volatile byte[] publicKey = Secp256k1.publicKey(DEFAULT_SECRET_KEY);
+
+	static class Rejected extends Exception {
+		Rejected() {
+			super("Rejected by fake signer");
+		}
+	}
+
+	private FakeSigner() {
+	}
+
+	static void reset() {
+		latencyMs = 0;
+		latencyJitterMs = 0;
+		rejectionRate = 0;
+		fallbackRate = 0;
+		crashRate = 0;
+		killProcessOnCrash = false;
+		passthrough = false;
+		largePayloads = true;
+		setSecretKey(DEFAULT_SECRET_KEY);
+		providerQueries.set(0);
+		largePayloadCalls.set(0);
+		intentRequests.set(0);
+		rejections.set(0);
+		fallbacks.set(0);
+		crashes.set(0);
+	}
+
+	static void setSecretKey(byte[] key) {
+		publicKey = Secp256k1.publicKey(key);
+		secretKey = key.clone();
+	}
+
+	static String publicKeyHex() {
+		return Hex.encode(publicKey);
+	}
+
+	static String npub() {
+		return Bech32.encode("npub", publicKey);
+	}
+
+	/** Returns true if this provider query should go unanswered so the plugin uses the intent. */
+	static boolean shouldFallBack() {
+		if (chance(fallbackRate)) {
+			fallbacks.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs one NIP-55 operation after the configured delay. {@code type} is a provider authority
+	 * suffix or an intent type, in either case. Returns {result, signed event JSON or null}.
+	 */
+	static String[] handle(String type, String content, String otherPubKey) throws Rejected {
+		delay();
+		if (chance(crashRate)) {
+			crashes.incrementAndGet();
+			if (killProcessOnCrash) {
+				Process.killProcess(Process.myPid());
+			}
+			throw new IllegalStateException("Injected fake signer crash");
+		}
+		if (chance(rejectionRate)) {
+			rejections.incrementAndGet();
+			throw new Rejected();
+		}
+		String operation = type.toUpperCase(Locale.ROOT);
+		if (passthrough) {
+			return passthrough(operation, content);
+		}
+		try {
+			switch (operation) {
+				case "GET_PUBLIC_KEY":
+					return new String[] { npub(), null };
+				case "SIGN_EVENT":
+					String signed = signEvent(content);
+					return new String[] { new JSONObject(signed).getString("sig"), signed };
+				case "NIP04_ENCRYPT":
+					return new String[] { Nip04.encrypt(content, secretKey, pubKey(otherPubKey)), null };
+				case "NIP04_DECRYPT":
+					return new String[] { Nip04.decrypt(content, secretKey, pubKey(otherPubKey)), null };
+				case "NIP44_ENCRYPT":
+					return new String[] { Nip44.encrypt(content, Nip44.conversationKey(secretKey, pubKey(otherPubKey))), null };
+				case "NIP44_DECRYPT":
+					return new String[] { Nip44.decrypt(content, Nip44.conversationKey(secretKey, pubKey(otherPubKey))), null };
+				case "DECRYPT_ZAP_EVENT":
+					return new String[] { decryptZapEvent(content), null };
+				default:
+					throw new IllegalArgumentException("Unsupported type " + type);
+			}
+		} catch (JSONException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/** Sets pubkey, id and sig on an unsigned event. */
+	static String signEvent(String eventJson) throws JSONException {
+		JSONObject event = new JSONObject(eventJson);
+		event.put("pubkey", publicKeyHex());
+		if (!event.has("tags")) {
+			event.put("tags", new JSONArray());
+		}
+		byte[] id = Nip01.eventId(event);
+		byte[] auxRand = new byte[32];
+		ThreadLocalRandom.current().nextBytes(auxRand);
+		event.put("id", Hex.encode(id));
+		event.put("sig", Hex.encode(Secp256k1.sign(id, secretKey, auxRand)));
+		return event.toString();
+	}
+
+	/** Encrypts a private zap request the way {@link #decryptZapEvent} expects it in the zap's "anon" tag. */
+	static String encryptZapRequest(String zapRequestJson, byte[] senderSecretKey, String recipientPubKey) {
+		byte[] iv = new byte[16];
+		ThreadLocalRandom.current().nextBytes(iv);
+		byte[] ciphertext = Nip04.aes(javax.crypto.Cipher.ENCRYPT_MODE,
+				Secp256k1.sharedX(senderSecretKey, pubKey(recipientPubKey)), iv, zapRequestJson.getBytes(StandardCharsets.UTF_8));
+		return Bech32.encode("pzap", ciphertext) + "_" + Bech32.encode("iv", iv);
+	}
+
+	// NIP-57 private zaps: the "anon" tag holds bech32 "pzap" ciphertext and "iv", AES-CBC keyed with ECDH against the event's pubkey.
+	private static String decryptZapEvent(String eventJson) throws JSONException {
+		JSONObject event = new JSONObject(eventJson);
+		JSONArray tags = event.getJSONArray("tags");
+		for (int i = 0; i < tags.length(); i++) {
+			JSONArray tag = tags.getJSONArray(i);
+			if (tag.length() > 1 && "anon".equals(tag.getString(0))) {
+				String[] parts = tag.getString(1).split("_");
+				byte[] ciphertext = Bech32.decode("pzap", parts[0]);
+				byte[] iv = Bech32.decode("iv", parts[1]);
+				byte[] key = Secp256k1.sharedX(secretKey, pubKey(event.getString("pubkey")));
+				return new String(Nip04.aes(javax.crypto.Cipher.DECRYPT_MODE, key, iv, ciphertext), StandardCharsets.UTF_8);
+			}
+		}
+		throw new IllegalArgumentException("Not a private zap");
+	}
+
+	private static String[] passthrough(String operation, String content) {
+		switch (operation) {
+			case "GET_PUBLIC_KEY":
+				return new String[] { npub(), null };
+			case "SIGN_EVENT":
+				return new String[] { PASSTHROUGH_SIGNATURE, content };
+			default:
+				// Echo the input so results scale with the payload like a real signer's would.
+				return new String[] { content, null };
+		}
+	}
+
+	private static byte[] pubKey(String value) {
+		if (value == null) {
+			throw new IllegalArgumentException("Missing pubKey");
+		}
+		return value.startsWith("npub1") ? Bech32.decode("npub", value) : Hex.decode(value);
+	}
+
+	private static void delay() {
+		long millis = latencyMs;
+		long jitter = latencyJitterMs;
+		if (jitter > 0) {
+			millis += ThreadLocalRandom.current().nextLong(jitter + 1);
+		}
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static boolean chance(double rate) {
+		return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+	}
+}
@@ -0,0 +1,90 @@
+package social.nostr.signer;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The nostrsigner: intent side of {@link FakeSigner}. Intents delivered together through
+ * onNewIntent, as NIP-55 multi-intents are, are answered with one "results" array; a single
+ * intent is answered with the signature, result, id and event extras. Answers are computed on
+ * the main thread, so configured latency blocks it like a user deciding would.
+ */
+public class FakeSignerActivity extends Activity {
+
+	private static final String SCHEME_PREFIX = "nostrsigner:";
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final List<Intent> requests = new ArrayList<>();
+	private final Runnable answer = this::answer;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		accept(getIntent());
+	}
+
+	@Override
+	protected void onNewIntent(Intent intent) {
+		super.onNewIntent(intent);
+		accept(intent);
+	}
+
+	private void accept(Intent intent) {
+		FakeSigner.intentRequests.incrementAndGet();
+		requests.add(intent);
+		// Answer once the whole batch has been delivered.
+		handler.removeCallbacks(answer);
+		handler.post(answer);
+	}
+
+	private void answer() {
+		JSONArray results = new JSONArray();
+		Intent single = new Intent();
+		try {
+			for (Intent request : requests) {
+				String data = request.getDataString();
+				String content = data != null && data.startsWith(SCHEME_PREFIX) ? data.substring(SCHEME_PREFIX.length()) : "";
+				String[] answer = FakeSigner.handle(request.getStringExtra("type"), content, request.getStringExtra("pubKey"));
+				JSONObject result = new JSONObject();
+				result.put("package", FakeSigner.PACKAGE_NAME);
+				result.put("id", request.getStringExtra("id"));
+				result.put("result", answer[0]);
+				if (answer[1] != null) {
+					result.put("event", answer[1]);
+				}
+				results.put(result);
+
+				single.putExtra("package", FakeSigner.PACKAGE_NAME);
+				single.putExtra("id", request.getStringExtra("id"));
+				single.putExtra("signature", answer[0]);
+				single.putExtra("result", answer[0]);
+				single.putExtra("event", answer[1]);
+			}
+		} catch (FakeSigner.Rejected e) {
+			setResult(RESULT_CANCELED);
+			finish();
+			return;
+		} catch (JSONException e) {
+			throw new IllegalStateException(e);
+		}
+		if (requests.size() > 1) {
+			Intent batch = new Intent();
+			batch.putExtra("results", results.toString());
+			setResult(RESULT_OK, batch);
+		} else {
+			setResult(RESULT_OK, single);
+		}
+		requests.clear();
+		finish();
+	}
+}
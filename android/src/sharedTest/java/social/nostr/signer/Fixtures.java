@@ -0,0 +1,24 @@
+package social.nostr.signer;
+
+/** Test data shared by the plugin's unit tests and the benchmark module. */
+final class Fixtures {
+
+	static final String EVENT_JSON = "{\"kind\":1,\"created_at\":1700000000,\"tags\":[[\"p\",\"82341f882b6eabcd2ba7f1ef90aad961cf074af15b9ef44a09f9d2a8fbfbe6a2\"]],"
+			+ "\"content\":\"hello from the benchmark suite\",\"pubkey\":\"82341f882b6eabcd2ba7f1ef90aad961cf074af15b9ef44a09f9d2a8fbfbe6a2\"}";
+	static final int LARGE_PAYLOAD_THRESHOLD = 64 * 1024;
+	static final String NPUB = "npub1sg6plzptd64u62a878hep2kev88swjh3tw00gjsfl8f237lmu63q0uf63m";
+	static final String PUBKEY = "82341f882b6eabcd2ba7f1ef90aad961cf074af15b9ef44a09f9d2a8fbfbe6a2";
+
+	private Fixtures() {
+	}
+
+	/** A ciphertext of roughly the given length, shaped like a NIP-44 payload. */
+	static String payload(int length) {
+		StringBuilder builder = new StringBuilder(length);
+		while (builder.length() < length) {
+			builder.append("AqwLGY8yUbW0kUcHvTJ9hE6xm8v4fn+Z");
+		}
+		builder.setLength(length);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,228 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link BunkerSigner} against {@link FakeBunker} on an in-process {@link FakeRelay}: the
+ * connect handshake, every operation, pipelining over one connection, timeouts, auth_url
+ * challenges and reconnecting after the relay drops or stops answering on the connection.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BunkerSignerTest {
+
+	private static final byte[] CLIENT_SECRET_KEY = Hex.decode("00000000000000000000000000000000000000000000000000000000000000a1");
+	private static final byte[] PEER_SECRET_KEY = Hex.decode("0000000000000000000000000000000000000000000000000000000000000007");
+	private static final int MAX_IN_FLIGHT = 8;
+
+	private Context context;
+	private FakeRelay relay;
+	private FakeBunker bunker;
+	private BunkerSigner signer;
+	private final ConcurrentLinkedQueue<String> authUrls = new ConcurrentLinkedQueue<>();
+
+	@Before
+	public void setUp() throws Exception {
+		context = ApplicationProvider.getApplicationContext();
+		FakeSigner.reset();
+		relay = new FakeRelay();
+		bunker = new FakeBunker(relay);
+		signer = new BunkerSigner(MAX_IN_FLIGHT, 5000, new SignerMetrics(), authUrls::add);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		signer.release();
+		bunker.close();
+		relay.close();
+		FakeSigner.reset();
+	}
+
+	@Test
+	public void connectsAndSigns() throws Exception {
+		String npub = signer.connect(BunkerSigner.Target.parse(bunker.bunkerUrl(FakeBunker.SECRET)), CLIENT_SECRET_KEY, "sign_event:1");
+		assertEquals(FakeSigner.npub(), npub);
+		assertEquals(npub, signer.getPublicKey(context, BunkerSigner.PACKAGE_NAME));
+
+		String[] signed = signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+		JSONObject event = new JSONObject(signed[1]);
+		assertEquals(signed[0], event.getString("sig"));
+		assertTrue(Secp256k1.verify(Nip01.eventId(event), Hex.decode(FakeSigner.publicKeyHex()), Hex.decode(signed[0])));
+		assertEquals(1, relay.connectionsAccepted.get());
+	}
+
+	@Test
+	public void rejectsWrongSecret() {
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> signer.connect(BunkerSigner.Target.parse(bunker.bunkerUrl("wrong")), CLIENT_SECRET_KEY, null));
+		assertEquals("invalid secret", e.getMessage());
+	}
+
+	@Test
+	public void encryptsAndDecrypts() throws Exception {
+		String npub = connect();
+		String peerPubKey = Hex.encode(Secp256k1.publicKey(PEER_SECRET_KEY));
+		byte[] userPubKey = Hex.decode(FakeSigner.publicKeyHex());
+
+		String nip44 = signer.nip44Encrypt(context, BunkerSigner.PACKAGE_NAME, "hello", peerPubKey, npub);
+		assertEquals("hello", Nip44.decrypt(nip44, Nip44.conversationKey(PEER_SECRET_KEY, userPubKey)));
+		String nip04 = Nip04.encrypt("hello", PEER_SECRET_KEY, userPubKey);
+		assertEquals("hello", signer.nip04Decrypt(context, BunkerSigner.PACKAGE_NAME, nip04, peerPubKey, npub));
+
+		JSONObject zap = new JSONObject(Fixtures.EVENT_JSON);
+		zap.put("pubkey", peerPubKey);
+		zap.put("tags", new JSONArray().put(new JSONArray().put("anon")
+				.put(FakeSigner.encryptZapRequest("{\"kind\":9733}", PEER_SECRET_KEY, FakeSigner.publicKeyHex()))));
+		assertEquals("{\"kind\":9733}", signer.decryptZapEvent(context, BunkerSigner.PACKAGE_NAME, zap.toString(), npub));
+	}
+
+	@Test
+	public void pipelinesRequestsOverOneConnection() throws Exception {
+		connect();
+		FakeSigner.latencyMs = 100;
+		int count = 5 * MAX_IN_FLIGHT;
+		long start = System.nanoTime();
+		List<BunkerSigner.Request> requests = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			requests.add(signer.submit("sign_event", "{\"kind\":1,\"created_at\":1700000000,\"tags\":[],\"content\":\"" + i + "\"}", null, null));
+		}
+		for (BunkerSigner.Request request : requests) {
+			assertEquals(128, request.await()[0].length());
+		}
+		long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+		System.out.println("bunker: " + count + " signatures in " + elapsedMs + " ms, at most " + bunker.maxConcurrent.get() + " in flight");
+		// Sequentially this would take count * 100 ms.
+		assertTrue("took " + elapsedMs + " ms", elapsedMs < count * 100 / 2);
+		assertTrue(bunker.maxConcurrent.get() > 1);
+		assertTrue(bunker.maxConcurrent.get() <= MAX_IN_FLIGHT);
+		assertEquals(1, relay.connectionsAccepted.get());
+	}
+
+	@Test
+	public void timesOutWhenTheBunkerDoesNotAnswer() throws Exception {
+		String npub = connect();
+		signer.release();
+		signer = new BunkerSigner(MAX_IN_FLIGHT, 300, new SignerMetrics(), authUrls::add);
+		signer.use(BunkerSigner.Target.parse(bunker.bunkerUrl(null)), CLIENT_SECRET_KEY, npub);
+		bunker.silent = true;
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub));
+		assertEquals("Timed out waiting for the bunker", e.getMessage());
+	}
+
+	@Test
+	public void reconnectsAfterATimeoutWithNothingFromTheRelay() throws Exception {
+		String npub = connect();
+		signer.release();
+		signer = new BunkerSigner(MAX_IN_FLIGHT, 300, new SignerMetrics(), authUrls::add);
+		signer.use(BunkerSigner.Target.parse(bunker.bunkerUrl(null)), CLIENT_SECRET_KEY, npub);
+		assertEquals(128, signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub)[0].length());
+		long accepted = relay.connectionsAccepted.get();
+		relay.stalled = true;
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub));
+		assertEquals("Timed out waiting for the bunker", e.getMessage());
+
+		// The silent connection was dropped, so the next request opens a new one instead of timing out too.
+		relay.stalled = false;
+		assertEquals(128, signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub)[0].length());
+		assertEquals(accepted + 1, relay.connectionsAccepted.get());
+	}
+
+	@Test
+	public void cancelledRequestsFreeTheirSlots() throws Exception {
+		connect();
+		long answered = bunker.requests.get();
+		bunker.silent = true;
+		List<BunkerSigner.Request> stalled = new ArrayList<>();
+		for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+			stalled.add(signer.submit("sign_event", Fixtures.EVENT_JSON, null, null));
+		}
+		BunkerSigner.Request waiting = signer.submit("sign_event", Fixtures.EVENT_JSON, null, null);
+		while (bunker.requests.get() - answered < MAX_IN_FLIGHT) {
+			Thread.sleep(10);
+		}
+		// The stalled requests were already dropped by the bunker; the waiting one is only sent once a slot frees up.
+		bunker.silent = false;
+		for (BunkerSigner.Request request : stalled) {
+			signer.cancel(request);
+			IllegalStateException e = assertThrows(IllegalStateException.class, request::await);
+			assertEquals(PendingCalls.CANCELLED, e.getMessage());
+		}
+		assertEquals(128, waiting.await()[0].length());
+	}
+
+	@Test
+	public void reportsRejections() throws Exception {
+		String npub = connect();
+		FakeSigner.rejectionRate = 1;
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub));
+		assertEquals("Rejected by fake signer", e.getMessage());
+
+		FakeSigner.rejectionRate = 0;
+		relay.rejectEvents = true;
+		e = assertThrows(IllegalStateException.class,
+				() -> signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub));
+		assertTrue(e.getMessage().startsWith("Relay rejected the request"));
+	}
+
+	@Test
+	public void waitsThroughAuthChallenges() throws Exception {
+		String npub = connect();
+		bunker.requireAuth = true;
+		String[] signed = signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+		assertEquals(128, signed[0].length());
+		assertEquals(FakeBunker.AUTH_URL, authUrls.poll());
+	}
+
+	@Test
+	public void dropsAuthUrlsThatAreNotHttps() throws Exception {
+		String npub = connect();
+		bunker.requireAuth = true;
+		String[] urls = { "http://bunker.example.com/auth", "intent://auth#Intent;scheme=https;package=com.example;end",
+				"javascript:alert(1)", "file:///data/data/com.example/shared_prefs", "https:///auth", "not a url" };
+		for (String url : urls) {
+			bunker.authUrl = url;
+			String[] signed = signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+			assertEquals(128, signed[0].length());
+		}
+		assertTrue(authUrls.isEmpty());
+	}
+
+	@Test
+	public void reconnectsAfterTheRelayDropsTheConnection() throws Exception {
+		String npub = connect();
+		relay.dropConnections();
+		// The drop may race the next request, which then fails; the one after it must go through.
+		try {
+			signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage().startsWith("Lost the bunker relay connection"));
+		}
+		String[] signed = signer.signEvent(context, BunkerSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+		assertEquals(128, signed[0].length());
+		assertEquals(2, relay.connectionsAccepted.get());
+	}
+
+	private String connect() {
+		return signer.connect(BunkerSigner.Target.parse(bunker.bunkerUrl(FakeBunker.SECRET)), CLIENT_SECRET_KEY, null);
+	}
+}
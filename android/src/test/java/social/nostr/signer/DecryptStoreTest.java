@@ -0,0 +1,178 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@link DecryptStore} with a fixed data key, as Robolectric has no Android Keystore: reopening,
+ * per-account partitions, binding to the ciphertext and counterparty, compaction, torn writes and
+ * a lost key, and bulk lookups.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DecryptStoreTest {
+
+	private static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+	private static final String OTHER_NPUB = "npub1other";
+
+	private File directory;
+	private DecryptStore store;
+
+	@Before
+	public void setUp() {
+		Context context = ApplicationProvider.getApplicationContext();
+		directory = new File(context.getCacheDir(), "decrypt-store-test");
+		delete(directory);
+		store = open(1024 * 1024);
+	}
+
+	@After
+	public void tearDown() {
+		store.release();
+		delete(directory);
+	}
+
+	@Test
+	public void resultsSurviveReopening() {
+		put(Fixtures.NPUB, "nip44_decrypt", "e1", "hello");
+		put(Fixtures.NPUB, "nip04_decrypt", "e2", "caf\u00e9");
+		put(OTHER_NPUB, "nip44_decrypt", "e1", "other account");
+		store.release();
+
+		store = open(1024 * 1024);
+		assertEquals("hello", get(Fixtures.NPUB, "nip44_decrypt", "e1"));
+		assertEquals("caf\u00e9", get(Fixtures.NPUB, "nip04_decrypt", "e2"));
+		assertNull(get(Fixtures.NPUB, "nip04_decrypt", "e1"));
+		assertEquals("other account", get(OTHER_NPUB, "nip44_decrypt", "e1"));
+
+		store.removeAccount(OTHER_NPUB);
+		assertNull(get(OTHER_NPUB, "nip44_decrypt", "e1"));
+		assertEquals("hello", get(Fixtures.NPUB, "nip44_decrypt", "e1"));
+	}
+
+	@Test
+	public void resultsAreOnlyServedForTheirCiphertextAndCounterparty() {
+		put(Fixtures.NPUB, "nip44_decrypt", "e1", "hello");
+
+		assertEquals("hello", store.get(Fixtures.NPUB, "nip44_decrypt", "e1", Fixtures.PUBKEY, cipherText("e1")));
+		assertNull(store.get(Fixtures.NPUB, "nip44_decrypt", "e1", Fixtures.PUBKEY, cipherText("e2")));
+		assertNull(store.get(Fixtures.NPUB, "nip44_decrypt", "e1", "npub1someoneelse", cipherText("e1")));
+		List<String[]> lookups = new ArrayList<>();
+		lookups.add(new String[] { "e1", Fixtures.PUBKEY, cipherText("e1") });
+		lookups.add(new String[] { "e1", Fixtures.PUBKEY, cipherText("e2") });
+		List<String[]> results = store.getAll(Fixtures.NPUB, lookups);
+		assertEquals("hello", results.get(0)[1]);
+		assertNull(results.get(1));
+	}
+
+	@Test
+	public void compactionKeepsTheNewestWithinTheLimit() {
+		int maxBytes = 16 * 1024;
+		store.release();
+		store = open(maxBytes);
+		for (int i = 0; i < 500; i++) {
+			put(Fixtures.NPUB, "nip44_decrypt", "e" + i, Fixtures.payload(100));
+		}
+		DecryptStore.Stats stats = store.stats();
+		assertTrue(stats.bytes <= maxBytes);
+		assertTrue(stats.compactions > 0);
+		assertEquals(Fixtures.payload(100), get(Fixtures.NPUB, "nip44_decrypt", "e499"));
+		assertNull(get(Fixtures.NPUB, "nip44_decrypt", "e0"));
+		store.release();
+
+		store = open(maxBytes);
+		assertEquals(Fixtures.payload(100), get(Fixtures.NPUB, "nip44_decrypt", "e499"));
+		assertEquals(stats.entries, store.stats().entries);
+	}
+
+	@Test
+	public void tornRecordIsCutOff() throws Exception {
+		put(Fixtures.NPUB, "nip44_decrypt", "e1", "hello");
+		put(Fixtures.NPUB, "nip44_decrypt", "e2", "world");
+		store.release();
+		File file = directory.listFiles()[0];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		store = open(1024 * 1024);
+		assertEquals("hello", get(Fixtures.NPUB, "nip44_decrypt", "e1"));
+		assertNull(get(Fixtures.NPUB, "nip44_decrypt", "e2"));
+		put(Fixtures.NPUB, "nip44_decrypt", "e3", "again");
+		store.release();
+		store = open(1024 * 1024);
+		assertEquals("again", get(Fixtures.NPUB, "nip44_decrypt", "e3"));
+	}
+
+	@Test
+	public void filesUnderAnotherKeyAreDropped() {
+		put(Fixtures.NPUB, "nip44_decrypt", "e1", "hello");
+		store.release();
+		SecretKey otherKey = new SecretKeySpec(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 }, "AES");
+		store = new DecryptStore(directory, 1024 * 1024, () -> otherKey);
+		assertNull(get(Fixtures.NPUB, "nip44_decrypt", "e1"));
+		assertEquals(0, store.stats().entries);
+	}
+
+	@Test
+	public void bulkLookup() {
+		for (int i = 0; i < 100; i++) {
+			put(Fixtures.NPUB, "nip44_decrypt", "e" + i, Fixtures.payload(200));
+		}
+		List<String[]> page = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			page.add(new String[] { "e" + (i * 10), Fixtures.PUBKEY, cipherText("e" + (i * 10)) });
+		}
+		page.add(new String[] { "missing", Fixtures.PUBKEY, cipherText("missing") });
+		List<String[]> results = store.getAll(Fixtures.NPUB, page);
+		assertEquals("nip44_decrypt", results.get(0)[0]);
+		assertEquals(Fixtures.payload(200), results.get(9)[1]);
+		assertNull(results.get(10));
+		DecryptStore.Stats stats = store.stats();
+		assertEquals(10, stats.hits);
+		assertEquals(1, stats.misses);
+	}
+
+	// Each event gets its own ciphertext, as it would from the signer.
+	private static String cipherText(String eventId) {
+		return "ciphertext of " + eventId;
+	}
+
+	private void put(String npub, String method, String eventId, String result) {
+		store.put(npub, method, eventId, Fixtures.PUBKEY, cipherText(eventId), result);
+	}
+
+	private String get(String npub, String method, String eventId) {
+		return store.get(npub, method, eventId, Fixtures.PUBKEY, cipherText(eventId));
+	}
+
+	private DecryptStore open(int maxBytes) {
+		return new DecryptStore(directory, maxBytes, () -> KEY);
+	}
+
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+	}
+}
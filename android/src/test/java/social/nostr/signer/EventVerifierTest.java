@@ -0,0 +1,117 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Native NIP-01 ids and {@link EventVerifier}'s per-event results, including events that break the parser. */
+@RunWith(RobolectricTestRunner.class)
+public class EventVerifierTest {
+
+	private static final int BATCH_SIZE = 64;
+
+	private EventVerifier verifier;
+
+	@Before
+	public void setUp() {
+		FakeSigner.reset();
+		verifier = new EventVerifier(4);
+	}
+
+	@After
+	public void tearDown() {
+		verifier.shutdown();
+	}
+
+	@Test
+	public void streamedIdMatchesSerializedId() throws Exception {
+		String[] contents = { "", "plain", "quote \" backslash \\ newline \n tab \t", "caf\u00e9 \u20ac \ud83d\ude00",
+				"unpaired \ud83d and \ude00", "trailing \ud83d", Fixtures.payload(5000) + "\ud83d\ude00" };
+		for (String content : contents) {
+			JSONObject event = new JSONObject(Fixtures.EVENT_JSON);
+			event.put("pubkey", Fixtures.PUBKEY);
+			event.put("content", content);
+			byte[] expected = Secp256k1.sha256().digest(Nip01.serialize(event).getBytes(StandardCharsets.UTF_8));
+			assertArrayEquals(content, expected, Nip01.eventId(event));
+		}
+		JSONObject event = new JSONObject(Fixtures.EVENT_JSON);
+		event.put("pubkey", Fixtures.PUBKEY);
+		assertArrayEquals(Nip01.eventId(event), Nip01.eventId(Fixtures.EVENT_JSON, Fixtures.PUBKEY));
+	}
+
+	@Test
+	public void verifyEventsReportsEachEventInOrder() throws Exception {
+		List<Object> events = new ArrayList<>();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			events.add(FakeSigner.signEvent(Fixtures.EVENT_JSON));
+		}
+		JSONObject badId = new JSONObject((String) events.get(1));
+		badId.put("content", "changed");
+		events.set(1, badId);
+		JSONObject badSig = new JSONObject((String) events.get(2));
+		String sig = badSig.getString("sig");
+		badSig.put("sig", (sig.charAt(0) == '0' ? "1" : "0") + sig.substring(1));
+		events.set(2, badSig);
+		events.set(3, "{not json");
+
+		JSObject[] results = verify(events);
+		assertEquals(BATCH_SIZE, results.length);
+		assertEquals(new JSONObject((String) events.get(0)).getString("id"), results[0].getString("id"));
+		assertTrue(results[0].getBoolean("valid", false));
+		assertFalse(results[1].getBoolean("valid", false));
+		assertEquals("Invalid id", results[1].getString("error"));
+		assertEquals("Invalid signature", results[2].getString("error"));
+		assertEquals("Malformed event", results[3].getString("error"));
+		for (int i = 4; i < BATCH_SIZE; i++) {
+			assertTrue(results[i].getBoolean("valid", false));
+		}
+	}
+
+	@Test
+	public void unexpectedFailuresMarkTheEventMalformed() throws Exception {
+		List<Object> events = new ArrayList<>();
+		events.add(FakeSigner.signEvent(Fixtures.EVENT_JSON));
+		// Stands in for a tags shape the parser does not expect.
+		events.add(new JSONObject(Fixtures.EVENT_JSON) {
+			@Override
+			public String getString(String name) {
+				throw new ClassCastException("odd tags");
+			}
+		});
+		events.add(FakeSigner.signEvent(Fixtures.EVENT_JSON));
+
+		JSObject[] results = verify(events);
+		assertTrue(results[0].getBoolean("valid", false));
+		assertFalse(results[1].getBoolean("valid", true));
+		assertEquals("Malformed event", results[1].getString("error"));
+		assertTrue(results[2].getBoolean("valid", false));
+	}
+
+	private JSObject[] verify(List<Object> events) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicReference<JSObject[]> results = new AtomicReference<>();
+		verifier.verify(events, verified -> {
+			results.set(verified);
+			done.countDown();
+		});
+		assertTrue("verifyEvents never resolved", done.await(60, TimeUnit.SECONDS));
+		return results.get();
+	}
+}
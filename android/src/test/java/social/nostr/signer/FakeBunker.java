@@ -0,0 +1,149 @@
+package social.nostr.signer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A NIP-46 remote signer on a {@link FakeRelay}. It answers as {@link FakeSigner}, with the
+ * same latency and rejection settings, and handles requests concurrently the way a real
+ * bunker answers whatever arrives. The bunker's own key is the fake signer's default key.
+ */
+final class FakeBunker implements Closeable {
+
+	static final int KIND = 24133;
+	static final String SECRET = "fake-bunker-secret";
+	static final String AUTH_URL = "https://bunker.example.com/auth";
+
+	/** Receive requests but never answer them. */
+	volatile boolean silent;
+	/** Answer each request with an auth_url challenge first, then with the result. */
+	volatile boolean requireAuth;
+	/** The URL sent with auth_url challenges. */
+	volatile String authUrl = AUTH_URL;
+
+	final AtomicLong requests = new AtomicLong();
+	final AtomicInteger maxConcurrent = new AtomicInteger();
+
+	private final FakeRelay relay;
+	private final byte[] secretKey = FakeSigner.DEFAULT_SECRET_KEY;
+	private final String publicKey = Hex.encode(Secp256k1.publicKey(FakeSigner.DEFAULT_SECRET_KEY));
+	private final ConcurrentHashMap<String, byte[]> conversationKeys = new ConcurrentHashMap<>();
+	private final Set<String> challenged = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger concurrent = new AtomicInteger();
+	private final ExecutorService pool = Executors.newCachedThreadPool();
+
+	FakeBunker(FakeRelay relay) {
+		this.relay = relay;
+		relay.subscribe(KIND, publicKey, event -> pool.execute(() -> onRequest(event)));
+	}
+
+	String publicKeyHex() {
+		return publicKey;
+	}
+
+	String bunkerUrl(String secret) {
+		try {
+			return "bunker://" + publicKey + "?relay=" + URLEncoder.encode(relay.url(), "UTF-8")
+					+ (secret != null ? "&secret=" + secret : "");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	private void onRequest(JSONObject event) {
+		requests.incrementAndGet();
+		if (silent) {
+			return;
+		}
+		int running = concurrent.incrementAndGet();
+		maxConcurrent.accumulateAndGet(running, Math::max);
+		try {
+			String clientPubKey = event.getString("pubkey");
+			byte[] conversationKey = conversationKey(clientPubKey);
+			JSONObject request = new JSONObject(Nip44.decrypt(event.getString("content"), conversationKey));
+			String id = request.getString("id");
+			JSONObject response = new JSONObject();
+			response.put("id", id);
+			if (requireAuth && challenged.add(id)) {
+				response.put("result", "auth_url");
+				response.put("error", authUrl);
+				respond(clientPubKey, conversationKey, response);
+				response = new JSONObject();
+				response.put("id", id);
+			}
+			try {
+				response.put("result", handle(request.getString("method"), request.getJSONArray("params")));
+			} catch (FakeSigner.Rejected | IllegalArgumentException e) {
+				response.put("error", e.getMessage());
+			}
+			respond(clientPubKey, conversationKey, response);
+		} catch (JSONException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			concurrent.decrementAndGet();
+		}
+	}
+
+	private String handle(String method, JSONArray params) throws FakeSigner.Rejected, JSONException {
+		switch (method) {
+			case "connect":
+				if (!SECRET.equals(params.optString(1))) {
+					throw new IllegalArgumentException("invalid secret");
+				}
+				return "ack";
+			case "get_public_key":
+				return FakeSigner.publicKeyHex();
+			case "sign_event":
+				return FakeSigner.handle("sign_event", params.getString(0), null)[1];
+			case "nip04_encrypt":
+			case "nip04_decrypt":
+			case "nip44_encrypt":
+			case "nip44_decrypt":
+				return FakeSigner.handle(method.toUpperCase(Locale.ROOT), params.getString(1), params.getString(0))[0];
+			default:
+				throw new IllegalArgumentException("unsupported method " + method);
+		}
+	}
+
+	private void respond(String clientPubKey, byte[] conversationKey, JSONObject response) throws JSONException {
+		JSONObject event = new JSONObject();
+		event.put("pubkey", publicKey);
+		event.put("created_at", System.currentTimeMillis() / 1000);
+		event.put("kind", KIND);
+		event.put("tags", new JSONArray().put(new JSONArray().put("p").put(clientPubKey)));
+		event.put("content", Nip44.encrypt(response.toString(), conversationKey));
+		byte[] id = Nip01.eventId(event);
+		byte[] auxRand = new byte[32];
+		ThreadLocalRandom.current().nextBytes(auxRand);
+		event.put("id", Hex.encode(id));
+		event.put("sig", Hex.encode(Secp256k1.sign(id, secretKey, auxRand)));
+		relay.publish(event);
+	}
+
+	private byte[] conversationKey(String clientPubKey) {
+		byte[] key = conversationKeys.get(clientPubKey);
+		if (key == null) {
+			key = Nip44.conversationKey(secretKey, Hex.decode(clientPubKey));
+			conversationKeys.put(clientPubKey, key);
+		}
+		return key;
+	}
+}
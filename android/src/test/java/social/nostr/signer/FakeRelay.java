@@ -0,0 +1,287 @@
+package social.nostr.signer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process relay stand-in for NIP-46 tests: a WebSocket server on the loopback interface
+ * that keeps REQ subscriptions and forwards EVENTs to the ones whose kinds and #p tags match.
+ * {@link FakeBunker} subscribes in process through {@link #subscribe} instead of a socket.
+ */
+final class FakeRelay implements Closeable {
+
+	interface Subscriber {
+		void onEvent(JSONObject event);
+	}
+
+	/** Answer EVENTs with OK false, as a relay that refuses the write. */
+	volatile boolean rejectEvents;
+
+	/** Read frames but never answer or forward them, as a half-open connection. */
+	volatile boolean stalled;
+
+	final AtomicLong connectionsAccepted = new AtomicLong();
+	final AtomicLong eventsReceived = new AtomicLong();
+
+	private final ServerSocket server;
+	private final CopyOnWriteArrayList<Connection> connections = new CopyOnWriteArrayList<>();
+	private final CopyOnWriteArrayList<LocalSubscription> localSubscriptions = new CopyOnWriteArrayList<>();
+
+	FakeRelay() throws IOException {
+		server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(this::accept, "FakeRelay-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	String url() {
+		return "ws://127.0.0.1:" + server.getLocalPort();
+	}
+
+	void subscribe(int kind, String pubKey, Subscriber subscriber) {
+		localSubscriptions.add(new LocalSubscription(kind, pubKey, subscriber));
+	}
+
+	/** Delivers an event to every matching subscription, as if a client had published it. */
+	void publish(JSONObject event) {
+		for (LocalSubscription subscription : localSubscriptions) {
+			if (subscription.matches(event)) {
+				subscription.subscriber.onEvent(event);
+			}
+		}
+		for (Connection connection : connections) {
+			connection.deliver(event);
+		}
+	}
+
+	/** Drops every client connection, as a relay restart would. */
+	void dropConnections() {
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		dropConnections();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				Socket socket = server.accept();
+				connectionsAccepted.incrementAndGet();
+				Connection connection = new Connection(socket);
+				connections.add(connection);
+				Thread reader = new Thread(connection::run, "FakeRelay-connection");
+				reader.setDaemon(true);
+				reader.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private static boolean matches(JSONObject filter, JSONObject event) {
+		JSONArray kinds = filter.optJSONArray("kinds");
+		if (kinds != null && !contains(kinds, String.valueOf(event.optInt("kind")))) {
+			return false;
+		}
+		JSONArray pTags = filter.optJSONArray("#p");
+		return pTags == null || contains(pTags, pTag(event));
+	}
+
+	private static boolean contains(JSONArray values, String value) {
+		for (int i = 0; i < values.length(); i++) {
+			if (values.optString(i).equals(value)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String pTag(JSONObject event) {
+		JSONArray tags = event.optJSONArray("tags");
+		for (int i = 0; tags != null && i < tags.length(); i++) {
+			JSONArray tag = tags.optJSONArray(i);
+			if (tag != null && tag.length() > 1 && "p".equals(tag.optString(0))) {
+				return tag.optString(1);
+			}
+		}
+		return null;
+	}
+
+	private static class LocalSubscription {
+		final int kind;
+		final String pubKey;
+		final Subscriber subscriber;
+
+		LocalSubscription(int kind, String pubKey, Subscriber subscriber) {
+			this.kind = kind;
+			this.pubKey = pubKey;
+			this.subscriber = subscriber;
+		}
+
+		boolean matches(JSONObject event) {
+			return event.optInt("kind") == kind && pubKey.equals(pTag(event));
+		}
+	}
+
+	private class Connection {
+		private final Socket socket;
+		private final Map<String, JSONObject> subscriptions = new ConcurrentHashMap<>();
+		private OutputStream output;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		void run() {
+			try {
+				DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				output = new BufferedOutputStream(socket.getOutputStream());
+				handshake(input);
+				while (true) {
+					int b0 = input.readUnsignedByte();
+					int b1 = input.readUnsignedByte();
+					int opcode = b0 & 0x0F;
+					long length = b1 & 0x7F;
+					if (length == 126) {
+						length = input.readUnsignedShort();
+					} else if (length == 127) {
+						length = input.readLong();
+					}
+					byte[] mask = new byte[4];
+					input.readFully(mask);
+					byte[] payload = new byte[(int) length];
+					input.readFully(payload);
+					for (int i = 0; i < payload.length; i++) {
+						payload[i] ^= mask[i & 3];
+					}
+					if (opcode == 0x8) {
+						break;
+					} else if (opcode == 0x1) {
+						onMessage(new String(payload, StandardCharsets.UTF_8));
+					}
+				}
+			} catch (IOException | JSONException e) {
+				// Connection closed.
+			}
+			close();
+		}
+
+		void deliver(JSONObject event) {
+			for (Map.Entry<String, JSONObject> subscription : subscriptions.entrySet()) {
+				if (matches(subscription.getValue(), event)) {
+					send(new JSONArray().put("EVENT").put(subscription.getKey()).put(event).toString());
+				}
+			}
+		}
+
+		void close() {
+			connections.remove(this);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// Ignored.
+			}
+		}
+
+		private void handshake(DataInputStream input) throws IOException {
+			String key = null;
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = input.read()) != -1) {
+				if (c == '\n') {
+					if (line.length() == 0) {
+						break;
+					}
+					String header = line.toString();
+					if (header.toLowerCase().startsWith("sec-websocket-key:")) {
+						key = header.substring(header.indexOf(':') + 1).trim();
+					}
+					line.setLength(0);
+				} else if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			if (key == null) {
+				throw new IOException("Not a WebSocket upgrade");
+			}
+			String response = "HTTP/1.1 101 Switching Protocols\r\n"
+					+ "Upgrade: websocket\r\n"
+					+ "Connection: Upgrade\r\n"
+					+ "Sec-WebSocket-Accept: " + RelaySocket.acceptKey(key) + "\r\n\r\n";
+			synchronized (this) {
+				output.write(response.getBytes(StandardCharsets.US_ASCII));
+				output.flush();
+			}
+		}
+
+		private void onMessage(String message) throws JSONException {
+			if (stalled) {
+				return;
+			}
+			JSONArray frame = new JSONArray(message);
+			String type = frame.getString(0);
+			if ("REQ".equals(type)) {
+				subscriptions.put(frame.getString(1), frame.getJSONObject(2));
+				send(new JSONArray().put("EOSE").put(frame.getString(1)).toString());
+			} else if ("CLOSE".equals(type)) {
+				subscriptions.remove(frame.getString(1));
+			} else if ("EVENT".equals(type)) {
+				eventsReceived.incrementAndGet();
+				JSONObject event = frame.getJSONObject(1);
+				boolean accepted = !rejectEvents;
+				send(new JSONArray().put("OK").put(event.getString("id")).put(accepted)
+						.put(accepted ? "" : "blocked: test relay").toString());
+				if (accepted) {
+					publish(event);
+				}
+			}
+		}
+
+		// Server frames are not masked.
+		private void send(String text) {
+			byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+			try {
+				synchronized (this) {
+					output.write(0x81);
+					if (payload.length < 126) {
+						output.write(payload.length);
+					} else if (payload.length <= 0xFFFF) {
+						output.write(126);
+						output.write(payload.length >>> 8);
+						output.write(payload.length);
+					} else {
+						output.write(127);
+						for (int shift = 56; shift >= 0; shift -= 8) {
+							output.write((int) ((long) payload.length >>> shift));
+						}
+					}
+					output.write(payload);
+					output.flush();
+				}
+			} catch (IOException e) {
+				close();
+			}
+		}
+	}
+}
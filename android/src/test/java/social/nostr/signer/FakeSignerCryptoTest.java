@@ -0,0 +1,66 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** Checks the pure-Java crypto shared by {@link LocalSigner} and {@link FakeSigner} against the BIP-340, NIP-44 and NIP-19 test vectors. */
+@RunWith(RobolectricTestRunner.class)
+public class FakeSignerCryptoTest {
+
+	@Test
+	public void bip340Vectors() {
+		byte[] secretKey = Hex.decode("0000000000000000000000000000000000000000000000000000000000000003");
+		byte[] zero = new byte[32];
+		assertEquals("f9308a019258c31049344f85f89d5229b531c845836f99b08601f113bce036f9", Hex.encode(Secp256k1.publicKey(secretKey)));
+		assertEquals("e907831f80848d1069a5371b402410364bdf1c5f8307b0084c55f1ce2dca821525f66a4a85ea8b71e482a74f382d2ce5ebeee8fdb2172f477df4900d310536c0",
+				Hex.encode(Secp256k1.sign(zero, secretKey, zero)));
+
+		secretKey = Hex.decode("b7e151628aed2a6abf7158809cf4f3c762e7160f38b4da56a784d9045190cfef");
+		byte[] message = Hex.decode("243f6a8885a308d313198a2e03707344a4093822299f31d0082efa98ec4e6c89");
+		byte[] auxRand = Hex.decode("0000000000000000000000000000000000000000000000000000000000000001");
+		byte[] signature = Secp256k1.sign(message, secretKey, auxRand);
+		assertEquals("6896bd60eeae296db48a229ff71dfe071bde413e6d43f917dc8dcf8c78de33418906d11ac976abccb20b091292bff4ea897efcb639ea871cfa95f6de339e4b0a",
+				Hex.encode(signature));
+		assertTrue(Secp256k1.verify(message, Secp256k1.publicKey(secretKey), signature));
+		signature[63] ^= 1;
+		assertFalse(Secp256k1.verify(message, Secp256k1.publicKey(secretKey), signature));
+	}
+
+	@Test
+	public void nip44Vector() {
+		byte[] secretKey1 = Hex.decode("0000000000000000000000000000000000000000000000000000000000000001");
+		byte[] secretKey2 = Hex.decode("0000000000000000000000000000000000000000000000000000000000000002");
+		byte[] conversationKey = Nip44.conversationKey(secretKey1, Secp256k1.publicKey(secretKey2));
+		assertEquals("c41c775356fd92eadc63ff5a0dc1da211b268cbea22316767095b2871ea1412d", Hex.encode(conversationKey));
+		String payload = Nip44.encrypt("a", conversationKey, secretKey1);
+		assertEquals("AgAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAABee0G5VSK0/9YypIObAtDKfYEAjD35uVkHyB0F4DwrcNaCXlCWZKaArsGrY6M9wnuTMxWfp1RTN9Xga8no+kF5Vsb",
+				payload);
+		assertEquals("a", Nip44.decrypt(payload, Nip44.conversationKey(secretKey2, Secp256k1.publicKey(secretKey1))));
+		assertEquals(64, Nip44.paddedLength(33));
+		assertEquals(320, Nip44.paddedLength(320));
+		assertEquals(640, Nip44.paddedLength(515));
+	}
+
+	@Test
+	public void npub() {
+		assertEquals("npub10elfcs4fr0l0r8af98jlmgdh9c8tcxjvz9qkw038js35mp4dma8qzvjptg",
+				Bech32.encode("npub", Hex.decode("7e7e9c42a91bfef19fa929e5fda1b72e0ebc1a4c1141673e2794234d86addf4e")));
+	}
+
+	@Test
+	public void privateZapRoundTrip() throws Exception {
+		FakeSigner.reset();
+		byte[] senderSecretKey = Hex.decode("0000000000000000000000000000000000000000000000000000000000000005");
+		String anon = FakeSigner.encryptZapRequest("{\"kind\":9733}", senderSecretKey, FakeSigner.publicKeyHex());
+		JSONObject zap = new JSONObject();
+		zap.put("pubkey", Hex.encode(Secp256k1.publicKey(senderSecretKey)));
+		zap.put("tags", new org.json.JSONArray().put(new org.json.JSONArray().put("anon").put(anon)));
+		assertEquals("{\"kind\":9733}", FakeSigner.handle("DECRYPT_ZAP_EVENT", zap.toString(), null)[0]);
+	}
+}
@@ -0,0 +1,210 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Looper;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link IntentBatcher} against {@link FakeSignerActivity}: batched and rejected intents, and one
+ * signer screen at a time.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class IntentBatcherTest {
+
+	@Before
+	public void setUp() {
+		FakeSigner.reset();
+	}
+
+	@After
+	public void tearDown() {
+		FakeSigner.reset();
+	}
+
+	@Test
+	public void batchedIntentFallback() throws Exception {
+		List<ActivityController<FakeSignerActivity>> launched = new ArrayList<>();
+		List<PluginCall> carriers = new ArrayList<>();
+		IntentBatcher batcher = new IntentBatcher(50, new SignerMetrics(), (carrier, intents) -> {
+			ActivityController<FakeSignerActivity> controller = Robolectric
+					.buildActivity(FakeSignerActivity.class, intents.get(0)).setup();
+			for (Intent intent : intents.subList(1, intents.size())) {
+				controller.newIntent(intent);
+			}
+			launched.add(controller);
+			carriers.add(carrier);
+		});
+
+		byte[] peerSecretKey = Hex.decode("0000000000000000000000000000000000000000000000000000000000000003");
+		String peerPubKey = Hex.encode(Secp256k1.publicKey(peerSecretKey));
+		byte[] conversationKey = Nip44.conversationKey(peerSecretKey, Hex.decode(FakeSigner.publicKeyHex()));
+		String[] results = new String[5];
+		for (int i = 0; i < results.length; i++) {
+			int index = i;
+			PluginCall call = new PluginCall(null, "NostrSignerPlugin", "call-" + i, "nip44Encrypt", new JSObject());
+			SignerRequest request = new SignerRequest("nip44_encrypt", FakeSigner.PACKAGE_NAME, "message " + i, peerPubKey,
+					FakeSigner.npub(), "request-" + i);
+			batcher.enqueue(call, request, new IntentBatcher.Callback() {
+				@Override
+				public void onResult(String result, String signedEventJson) {
+					results[index] = result;
+				}
+
+				@Override
+				public void onError(String message) {
+					results[index] = "error: " + message;
+				}
+			});
+		}
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(50));
+		shadowOf(Looper.getMainLooper()).idle();
+
+		assertEquals(1, launched.size());
+		assertEquals(results.length, FakeSigner.intentRequests.get());
+		Activity activity = launched.get(0).get();
+		batcher.onActivityResult(carriers.get(0), shadowOf(activity).getResultCode(), shadowOf(activity).getResultIntent());
+		for (int i = 0; i < results.length; i++) {
+			assertEquals("message " + i, Nip44.decrypt(results[i], conversationKey));
+		}
+	}
+
+	@Test
+	public void rejectedIntentBatch() throws Exception {
+		FakeSigner.rejectionRate = 1;
+		List<Activity> launched = new ArrayList<>();
+		List<PluginCall> carriers = new ArrayList<>();
+		IntentBatcher batcher = new IntentBatcher(0, new SignerMetrics(), (carrier, intents) -> {
+			launched.add(Robolectric.buildActivity(FakeSignerActivity.class, intents.get(0)).setup().get());
+			carriers.add(carrier);
+		});
+		String[] error = new String[1];
+		PluginCall call = new PluginCall(null, "NostrSignerPlugin", "call-0", "signEvent", new JSObject());
+		batcher.enqueue(call, new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, "{}", null, FakeSigner.npub(), null),
+				new IntentBatcher.Callback() {
+					@Override
+					public void onResult(String result, String signedEventJson) {
+					}
+
+					@Override
+					public void onError(String message) {
+						error[0] = message;
+					}
+				});
+		shadowOf(Looper.getMainLooper()).idle();
+
+		Activity activity = launched.get(0);
+		assertEquals(Activity.RESULT_CANCELED, shadowOf(activity).getResultCode());
+		batcher.onActivityResult(carriers.get(0), shadowOf(activity).getResultCode(), shadowOf(activity).getResultIntent());
+		assertEquals("Activity Cancelled", error[0]);
+	}
+
+	@Test
+	public void cancelledIntentBatchReleasesTheSigner() throws Exception {
+		List<PluginCall> carriers = new ArrayList<>();
+		IntentBatcher batcher = new IntentBatcher(0, new SignerMetrics(), (carrier, intents) -> carriers.add(carrier));
+		List<String> callbacks = new ArrayList<>();
+		IntentBatcher.Callback callback = new IntentBatcher.Callback() {
+			@Override
+			public void onResult(String result, String signedEventJson) {
+				callbacks.add(result);
+			}
+
+			@Override
+			public void onError(String message) {
+				callbacks.add(message);
+			}
+		};
+		PluginCall stalled = new PluginCall(null, "NostrSignerPlugin", "call-0", "signEvent", new JSObject());
+		batcher.enqueue(stalled, new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, "{}", null, FakeSigner.npub(), "a"), callback);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, carriers.size());
+
+		// The signer never returns; the next request waits behind the batch on screen until it is cancelled.
+		PluginCall next = new PluginCall(null, "NostrSignerPlugin", "call-1", "signEvent", new JSObject());
+		batcher.enqueue(next, new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, "{}", null, FakeSigner.npub(), "b"), callback);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, carriers.size());
+		batcher.cancel(stalled);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(2, carriers.size());
+		assertEquals(next, carriers.get(1));
+		assertTrue(callbacks.isEmpty());
+	}
+
+	@Test
+	public void launchAloneRunsOnTheMainThread() throws Exception {
+		IntentBatcher batcher = new IntentBatcher(0, new SignerMetrics(), (carrier, intents) -> {
+		});
+		PluginCall login = new PluginCall(null, "NostrSignerPlugin", "call-0", "getPublicKey", new JSObject());
+		List<Thread> threads = new ArrayList<>();
+		Thread worker = new Thread(() -> batcher.launchAlone(login, () -> threads.add(Thread.currentThread())));
+		worker.start();
+		worker.join();
+		assertTrue(threads.isEmpty());
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, threads.size());
+		// Robolectric runs the test on the main looper's thread.
+		assertEquals(Thread.currentThread(), threads.get(0));
+	}
+
+	@Test
+	public void oneSignerScreenAtATimeAcrossSigners() throws Exception {
+		List<PluginCall> carriers = new ArrayList<>();
+		IntentBatcher batcher = new IntentBatcher(0, new SignerMetrics(), (carrier, intents) -> carriers.add(carrier));
+		List<String> errors = new ArrayList<>();
+		IntentBatcher.Callback callback = new IntentBatcher.Callback() {
+			@Override
+			public void onResult(String result, String signedEventJson) {
+			}
+
+			@Override
+			public void onError(String message) {
+				errors.add(message);
+			}
+		};
+		PluginCall first = new PluginCall(null, "NostrSignerPlugin", "call-0", "signEvent", new JSObject());
+		batcher.enqueue(first, new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, "{}", null, FakeSigner.npub(), "a"), callback);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, carriers.size());
+
+		// Another signer's batch and a getPublicKey launch wait until the first screen returns.
+		PluginCall other = new PluginCall(null, "NostrSignerPlugin", "call-1", "signEvent", new JSObject());
+		batcher.enqueue(other, new SignerRequest("sign_event", "com.example.othersigner", "{}", null, FakeSigner.npub(), "b"), callback);
+		PluginCall login = new PluginCall(null, "NostrSignerPlugin", "call-2", "getPublicKey", new JSObject());
+		List<PluginCall> alone = new ArrayList<>();
+		batcher.launchAlone(login, () -> alone.add(login));
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, carriers.size());
+		assertTrue(alone.isEmpty());
+
+		batcher.onActivityResult(first, Activity.RESULT_CANCELED, null);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(1, alone.size());
+		assertEquals(1, carriers.size());
+
+		batcher.release(login);
+		shadowOf(Looper.getMainLooper()).idle();
+		assertEquals(2, carriers.size());
+		assertEquals(other, carriers.get(1));
+		assertEquals(1, errors.size());
+	}
+}
@@ -0,0 +1,80 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Deadlines, cancel(id) and finish() in {@link PendingCalls}, on Robolectric's main looper clock. */
+@RunWith(RobolectricTestRunner.class)
+public class PendingCallsTest {
+
+	private final PendingCalls pendingCalls = new PendingCalls();
+	private final List<String> cancelled = new ArrayList<>();
+
+	@Test
+	public void deadlineRejectsTheCall() {
+		RecordingCall call = new RecordingCall("call-0");
+		pendingCalls.track(call, "a", 1000, cancelled::add);
+
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(999));
+		assertNull(call.rejected);
+		assertTrue(pendingCalls.isTracked(call));
+
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+		assertEquals(PendingCalls.TIMED_OUT, call.rejected);
+		assertEquals(1, cancelled.size());
+		assertEquals(PendingCalls.TIMED_OUT, cancelled.get(0));
+		assertFalse(pendingCalls.isTracked(call));
+	}
+
+	@Test
+	public void cancelRejectsEveryCallWithTheId() {
+		RecordingCall first = new RecordingCall("call-0");
+		RecordingCall second = new RecordingCall("call-1");
+		RecordingCall other = new RecordingCall("call-2");
+		pendingCalls.track(first, "a", 0, cancelled::add);
+		pendingCalls.track(second, "a", 0, cancelled::add);
+		pendingCalls.track(other, "b", 0, cancelled::add);
+
+		assertEquals(2, pendingCalls.cancel("a"));
+		assertEquals(PendingCalls.CANCELLED, first.rejected);
+		assertEquals(PendingCalls.CANCELLED, second.rejected);
+		assertNull(other.rejected);
+		assertEquals(2, cancelled.size());
+		assertEquals(1, pendingCalls.size());
+		assertEquals(0, pendingCalls.cancel("a"));
+	}
+
+	@Test
+	public void finishAfterTheDeadlineReturnsFalse() {
+		RecordingCall call = new RecordingCall("call-0");
+		pendingCalls.track(call, null, 1000, cancelled::add);
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000));
+
+		assertFalse(pendingCalls.finish(call));
+		assertEquals(1, call.rejections);
+	}
+
+	@Test
+	public void finishedCallsMissTheirDeadline() {
+		RecordingCall call = new RecordingCall("call-0");
+		pendingCalls.track(call, null, 1000, cancelled::add);
+		assertTrue(pendingCalls.finish(call));
+
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000));
+		assertNull(call.rejected);
+		assertTrue(cancelled.isEmpty());
+	}
+}
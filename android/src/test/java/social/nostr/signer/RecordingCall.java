@@ -0,0 +1,27 @@
+package social.nostr.signer;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.PluginCall;
+
+/** A plugin call that records how it was settled instead of answering a bridge. */
+class RecordingCall extends PluginCall {
+
+	JSObject resolved;
+	String rejected;
+	int rejections;
+
+	RecordingCall(String callbackId) {
+		super(null, "NostrSignerPlugin", callbackId, "nip44Decrypt", new JSObject());
+	}
+
+	@Override
+	public void resolve(JSObject data) {
+		resolved = data;
+	}
+
+	@Override
+	public void reject(String message) {
+		rejected = message;
+		rejections++;
+	}
+}
@@ -0,0 +1,96 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * The constant-time secret key paths of {@link Secp256k1} against the BIP-340 vectors, and
+ * against verification, which still runs on BigInteger.
+ */
+public class Secp256k1Test {
+
+	// BIP-340 test vectors 1 to 3: secret key, public key, aux_rand, message, signature.
+	private static final String[][] VECTORS = {
+			{ "b7e151628aed2a6abf7158809cf4f3c762e7160f38b4da56a784d9045190cfef",
+					"dff1d77f2a671c5f36183726db2341be58feae1da2deced843240f7b502ba659",
+					"0000000000000000000000000000000000000000000000000000000000000001",
+					"243f6a8885a308d313198a2e03707344a4093822299f31d0082efa98ec4e6c89",
+					"6896bd60eeae296db48a229ff71dfe071bde413e6d43f917dc8dcf8c78de33418906d11ac976abccb20b091292bff4ea897efcb639ea871cfa95f6de339e4b0a" },
+			{ "c90fdaa22168c234c4c6628b80dc1cd129024e088a67cc74020bbea63b14e5c9",
+					"dd308afec5777e13121fa72b9cc1b7cc0139715309b086c960e18fd969774eb8",
+					"c87aa53824b4d7ae2eb035a2b5bbbccc080e76cdc6d1692c4b0b62d798e6d906",
+					"7e2d58d8b3bcdf1abadec7829054f90dda9805aab56c77333024b9d0a508b75c",
+					"5831aaeed7b44bb74e5eab94ba9d4294c49bcf2a60728d8b4c200f50dd313c1bab745879a5ad954a72c45a91c3a51d3c7adea98d82f8481e0e1e03674a6f3fb7" },
+			{ "0b432b2677937381aef05bb02a66ecd012773062cf3fa2549e44f58ed2401710",
+					"25d1dff95105f5253c4022f628a996ad3a0d95fbf21d468a1b33f8c160d8f517",
+					"ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+					"ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+					"7eb0509757e246f19449885651611cb965ecc1a187dd51b64fda1edc9637d5ec97582b9cb13db3933705b32ba982af5af25fd78881ebb32771fc5922efc66ea3" } };
+
+	@Test
+	public void bip340Vectors() {
+		for (String[] vector : VECTORS) {
+			byte[] secretKey = Hex.decode(vector[0]);
+			assertEquals(vector[1], Hex.encode(Secp256k1.publicKey(secretKey)));
+			assertEquals(vector[4], Hex.encode(Secp256k1.sign(Hex.decode(vector[3]), secretKey, Hex.decode(vector[2]))));
+		}
+	}
+
+	@Test
+	public void signaturesVerify() {
+		Random random = new Random(1);
+		for (int i = 0; i < 32; i++) {
+			byte[] secretKey = randomKey(random);
+			byte[] message = new byte[32];
+			byte[] auxRand = new byte[32];
+			random.nextBytes(message);
+			random.nextBytes(auxRand);
+			Secp256k1.KeyPair keyPair = new Secp256k1.KeyPair(secretKey);
+			byte[] signature = Secp256k1.sign(message, keyPair, auxRand);
+			assertArrayEquals(Secp256k1.sign(message, secretKey, auxRand), signature);
+			assertTrue(Secp256k1.verify(message, keyPair.publicKey, signature));
+		}
+	}
+
+	@Test
+	public void sharedXIsSymmetric() {
+		Random random = new Random(2);
+		for (int i = 0; i < 16; i++) {
+			byte[] a = randomKey(random);
+			byte[] b = randomKey(random);
+			byte[] shared = Secp256k1.sharedX(a, Secp256k1.publicKey(b));
+			assertArrayEquals(shared, Secp256k1.sharedX(b, Secp256k1.publicKey(a)));
+			assertArrayEquals(shared, Secp256k1.sharedX(new Secp256k1.KeyPair(a), Secp256k1.publicKey(b)));
+		}
+	}
+
+	@Test
+	public void scalarsAtTheEdgesOfTheRange() {
+		String gx = "79be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798";
+		assertEquals(gx, Hex.encode(Secp256k1.publicKey(key(BigInteger.ONE))));
+		assertEquals(gx, Hex.encode(Secp256k1.publicKey(key(Secp256k1.N.subtract(BigInteger.ONE)))));
+		assertThrows(IllegalArgumentException.class, () -> Secp256k1.publicKey(key(BigInteger.ZERO)));
+		assertThrows(IllegalArgumentException.class, () -> Secp256k1.publicKey(key(Secp256k1.N)));
+		assertThrows(IllegalArgumentException.class, () -> Secp256k1.publicKey(new byte[31]));
+	}
+
+	private static byte[] randomKey(Random random) {
+		BigInteger d = new BigInteger(256, random).mod(Secp256k1.N.subtract(BigInteger.ONE)).add(BigInteger.ONE);
+		return key(d);
+	}
+
+	private static byte[] key(BigInteger d) {
+		byte[] key = new byte[32];
+		byte[] bytes = d.toByteArray();
+		int length = Math.min(bytes.length, 32);
+		System.arraycopy(bytes, bytes.length - length, key, 32 - length, length);
+		return key;
+	}
+}
@@ -0,0 +1,116 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** {@link SignerExecutor}'s priority order, background cap and shutdown. */
+public class SignerExecutorTest {
+
+	private static final String PACKAGE_NAME = "com.example.signer";
+
+	@Test
+	public void interactiveCallsOvertakeBackgroundWork() throws Exception {
+		SignerExecutor executor = new SignerExecutor(1, 1);
+		try {
+			CountDownLatch release = new CountDownLatch(1);
+			executor.execute(PACKAGE_NAME, SignerExecutor.BACKGROUND, () -> await(release));
+			List<String> order = Collections.synchronizedList(new ArrayList<>());
+			CountDownLatch done = new CountDownLatch(4);
+			for (int i = 0; i < 3; i++) {
+				String name = "background " + i;
+				executor.execute(PACKAGE_NAME, SignerExecutor.BACKGROUND, () -> {
+					order.add(name);
+					done.countDown();
+				});
+			}
+			executor.execute(PACKAGE_NAME, SignerExecutor.INTERACTIVE, () -> {
+				order.add("interactive");
+				done.countDown();
+			});
+			release.countDown();
+			assertTrue("Timed out", done.await(10, TimeUnit.SECONDS));
+
+			assertEquals(Arrays.asList("interactive", "background 0", "background 1", "background 2"), order);
+			JSObject stats = executor.stats(false);
+			assertEquals(3, stats.getJSObject("background").getInteger("maxQueued").intValue());
+			assertEquals(4, stats.getJSObject("background").getLong("started"));
+			assertEquals(1, stats.getJSObject("interactive").getLong("started"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void backgroundWorkLeavesWorkersFree() throws Exception {
+		SignerExecutor executor = new SignerExecutor(4, 4, 2);
+		try {
+			CountDownLatch release = new CountDownLatch(1);
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger maxRunning = new AtomicInteger();
+			CountDownLatch backlog = new CountDownLatch(10);
+			for (int i = 0; i < 10; i++) {
+				executor.execute(PACKAGE_NAME, SignerExecutor.BACKGROUND, () -> {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					await(release);
+					running.decrementAndGet();
+					backlog.countDown();
+				});
+			}
+			// The background calls are all blocked, yet a normal call still finds a worker.
+			CountDownLatch normal = new CountDownLatch(1);
+			executor.execute(PACKAGE_NAME, SignerExecutor.NORMAL, normal::countDown);
+			assertTrue("Timed out", normal.await(10, TimeUnit.SECONDS));
+			assertEquals(2, executor.stats(false).getJSObject("background").getInteger("running").intValue());
+
+			release.countDown();
+			assertTrue("Timed out", backlog.await(10, TimeUnit.SECONDS));
+			assertEquals(2, maxRunning.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void shutdownDropsQueuedCalls() throws Exception {
+		SignerExecutor executor = new SignerExecutor(1, 1);
+		CountDownLatch started = new CountDownLatch(1);
+		executor.execute(PACKAGE_NAME, SignerExecutor.NORMAL, () -> {
+			started.countDown();
+			await(new CountDownLatch(1));
+		});
+		assertTrue("Timed out", started.await(10, TimeUnit.SECONDS));
+		AtomicInteger ran = new AtomicInteger();
+		AtomicInteger dropped = new AtomicInteger();
+		for (int priority = SignerExecutor.INTERACTIVE; priority <= SignerExecutor.BACKGROUND; priority++) {
+			executor.execute(PACKAGE_NAME, priority, ran::incrementAndGet, dropped::incrementAndGet);
+		}
+		executor.shutdown();
+
+		assertEquals(3, dropped.get());
+		assertEquals(0, ran.get());
+		// Calls queued after shutdown are never started.
+		executor.execute(PACKAGE_NAME, SignerExecutor.NORMAL, ran::incrementAndGet);
+		assertEquals(0, ran.get());
+	}
+
+	// Blocks until released, or until shutdown interrupts the worker.
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+
+/** The negative cache in {@link SignerRoutes}: its TTL, its per-kind keys and approvals that end it early. */
+@RunWith(RobolectricTestRunner.class)
+public class SignerRoutesTest {
+
+	private static final String PACKAGE_NAME = "com.example.signer";
+
+	private final SignerRoutes routes = new SignerRoutes(60_000);
+
+	@Test
+	public void rejectionsExpireAfterTheTtl() throws Exception {
+		routes.rejected(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND);
+		assertFalse(routes.useProvider(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND));
+
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(59_999));
+		assertFalse(routes.useProvider(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND));
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1));
+		assertTrue(routes.useProvider(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND));
+
+		JSONObject route = routes.snapshot().getJSONObject(0);
+		assertEquals("provider", route.getString("route"));
+		assertEquals(1, route.getLong("rejected"));
+		assertEquals(2, route.getLong("skipped"));
+	}
+
+	@Test
+	public void signEventRejectionsArePerKind() throws Exception {
+		String note = new JSONObject(Fixtures.EVENT_JSON).put("kind", 1).toString();
+		String reaction = new JSONObject(Fixtures.EVENT_JSON).put("kind", 7).toString();
+		assertEquals(1, SignerRoutes.kind("SIGN_EVENT", note));
+		assertEquals(7, SignerRoutes.kind("SIGN_EVENT", reaction));
+		assertEquals(SignerRoutes.NO_KIND, SignerRoutes.kind("NIP44_DECRYPT", note));
+
+		routes.rejected(PACKAGE_NAME, "SIGN_EVENT", 1);
+		assertFalse(routes.useProvider(PACKAGE_NAME, "SIGN_EVENT", 1));
+		assertTrue(routes.useProvider(PACKAGE_NAME, "SIGN_EVENT", 7));
+		assertTrue(routes.useProvider("com.example.othersigner", "SIGN_EVENT", 1));
+		assertTrue(routes.useProvider(PACKAGE_NAME, "NIP44_DECRYPT", SignerRoutes.NO_KIND));
+	}
+
+	@Test
+	public void approvalByIntentClearsTheRejection() throws Exception {
+		String note = new JSONObject(Fixtures.EVENT_JSON).put("kind", 1).toString();
+		routes.rejected(PACKAGE_NAME, "SIGN_EVENT", 1);
+		routes.rejected(PACKAGE_NAME, "SIGN_EVENT", 7);
+
+		routes.approvedByIntent(PACKAGE_NAME, "sign_event", note);
+		assertTrue(routes.useProvider(PACKAGE_NAME, "SIGN_EVENT", 1));
+		assertFalse(routes.useProvider(PACKAGE_NAME, "SIGN_EVENT", 7));
+	}
+
+	@Test
+	public void zeroTtlNeverSkipsTheProvider() {
+		SignerRoutes uncached = new SignerRoutes(0);
+		uncached.rejected(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND);
+		assertTrue(uncached.useProvider(PACKAGE_NAME, "NIP04_ENCRYPT", SignerRoutes.NO_KIND));
+		assertEquals(0, uncached.snapshot().length());
+	}
+}
@@ -0,0 +1,87 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+
+import com.getcapacitor.PluginCall;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.time.Duration;
+
+/**
+ * {@link SingleFlight} wired to {@link PendingCalls} the way the plugin's execute() wires them:
+ * each call is tracked, then joins the flight for its request's key, and leaves it when it is
+ * rejected by a deadline or cancel.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SingleFlightTest {
+
+	private final PendingCalls pendingCalls = new PendingCalls();
+	private final SingleFlight singleFlight = new SingleFlight(pendingCalls);
+
+	@Test
+	public void identicalDecryptsShareOneQuery() {
+		RecordingCall first = new RecordingCall("call-0");
+		RecordingCall second = new RecordingCall("call-1");
+		SingleFlight.Flight leader = start(first, request("nip44_decrypt", "a"), 0);
+		SingleFlight.Flight follower = start(second, request("nip44_decrypt", "b"), 0);
+
+		assertNotNull(leader);
+		assertNull(follower);
+		singleFlight.complete(leader, "hello", null);
+		assertEquals("hello", first.resolved.getString("result"));
+		assertEquals("a", first.resolved.getString("id"));
+		assertEquals("hello", second.resolved.getString("result"));
+		assertEquals("b", second.resolved.getString("id"));
+		assertEquals(0, pendingCalls.size());
+	}
+
+	@Test
+	public void identicalEncryptsAreNotShared() {
+		RecordingCall first = new RecordingCall("call-0");
+		RecordingCall second = new RecordingCall("call-1");
+		SingleFlight.Flight one = start(first, request("nip44_encrypt", "a"), 0);
+		SingleFlight.Flight other = start(second, request("nip44_encrypt", "b"), 0);
+
+		assertNotNull(one);
+		assertNotNull(other);
+		singleFlight.complete(one, "cipher one", null);
+		singleFlight.complete(other, "cipher two", null);
+		assertEquals("cipher one", first.resolved.getString("result"));
+		assertEquals("cipher two", second.resolved.getString("result"));
+	}
+
+	@Test
+	public void leaderTimingOutLeavesTheFlightToTheFollower() {
+		RecordingCall leaderCall = new RecordingCall("call-0");
+		RecordingCall followerCall = new RecordingCall("call-1");
+		SingleFlight.Flight flight = start(leaderCall, request("nip44_decrypt", "a"), 1000);
+		assertNull(start(followerCall, request("nip44_decrypt", "b"), 0));
+
+		shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(1000));
+		assertEquals(PendingCalls.TIMED_OUT, leaderCall.rejected);
+		assertFalse(flight.signal.isCanceled());
+
+		singleFlight.complete(flight, "hello", null);
+		assertNull(leaderCall.resolved);
+		assertEquals("hello", followerCall.resolved.getString("result"));
+	}
+
+	private SingleFlight.Flight start(PluginCall call, SignerRequest request, long timeoutMs) {
+		String key = request.key();
+		pendingCalls.track(call, request.id, timeoutMs, message -> singleFlight.leave(key, call));
+		return singleFlight.join(key, call, request);
+	}
+
+	private static SignerRequest request(String type, String id) {
+		return new SignerRequest(type, FakeSigner.PACKAGE_NAME, "cipher", Fixtures.PUBKEY, FakeSigner.npub(), id);
+	}
+}
@@ -0,0 +1,59 @@
+package social.nostr.signer;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.spec.SecretKeySpec;
+
+/** {@link DecryptStore} page lookups, as getStoredDecryptions does them, with a fixed data key. */
+@RunWith(RobolectricTestRunner.class)
+public class DecryptStoreBenchmark {
+
+	private File directory;
+	private DecryptStore store;
+
+	@Before
+	public void setUp() {
+		Context context = ApplicationProvider.getApplicationContext();
+		directory = new File(context.getCacheDir(), "decrypt-store-benchmark");
+		delete(directory);
+		store = new DecryptStore(directory, 1024 * 1024, () -> new SecretKeySpec(new byte[32], "AES"));
+	}
+
+	@After
+	public void tearDown() {
+		store.release();
+		delete(directory);
+	}
+
+	@Test
+	public void getAll() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			store.put(Fixtures.NPUB, "nip44_decrypt", "e" + i, Fixtures.PUBKEY, "ciphertext of e" + i, Fixtures.payload(200));
+		}
+		List<String[]> page = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			page.add(new String[] { "e" + (i * 20), Fixtures.PUBKEY, "ciphertext of e" + (i * 20) });
+		}
+		Microbench.run("decryptStore.getAll.50", 100, () -> store.getAll(Fixtures.NPUB, page));
+	}
+
+	private static void delete(File directory) {
+		File[] files = directory.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+	}
+}
@@ -0,0 +1,76 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertTrue;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Native NIP-01 ids and {@link EventVerifier}'s batch signature checks, serial and in parallel. */
+@RunWith(RobolectricTestRunner.class)
+public class EventVerifierBenchmark {
+
+	private static final int BATCH_SIZE = 64;
+
+	private EventVerifier verifier;
+
+	@Before
+	public void setUp() {
+		FakeSigner.reset();
+		verifier = new EventVerifier(Runtime.getRuntime().availableProcessors());
+	}
+
+	@After
+	public void tearDown() {
+		verifier.shutdown();
+	}
+
+	@Test
+	public void eventId() throws Exception {
+		JSONObject event = new JSONObject(Fixtures.EVENT_JSON);
+		event.put("pubkey", Fixtures.PUBKEY);
+		event.put("content", Fixtures.payload(4096));
+		Microbench.run("nip01.eventId.4KB", 2_000, () -> Nip01.eventId(event));
+	}
+
+	@Test
+	public void verifyEventsBatch() throws Exception {
+		List<Object> events = new ArrayList<>();
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			events.add(FakeSigner.signEvent(Fixtures.EVENT_JSON));
+		}
+		Microbench.run("verifyEvents.64", 1, () -> verify(events));
+		EventVerifier serial = new EventVerifier(1);
+		try {
+			Microbench.run("verifyEvents.64.serial", 1, () -> verify(serial, events));
+		} finally {
+			serial.shutdown();
+		}
+	}
+
+	private JSObject[] verify(List<Object> events) throws InterruptedException {
+		return verify(verifier, events);
+	}
+
+	private static JSObject[] verify(EventVerifier verifier, List<Object> events) throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicReference<JSObject[]> results = new AtomicReference<>();
+		verifier.verify(events, verified -> {
+			results.set(verified);
+			done.countDown();
+		});
+		assertTrue(done.await(60, TimeUnit.SECONDS));
+		return results.get();
+	}
+}
@@ -0,0 +1,135 @@
+package social.nostr.signer;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+
+import org.robolectric.Robolectric;
+
+import java.io.IOException;
+
+/**
+ * The content provider side of {@link FakeSigner}. Register it once per authority in
+ * {@link FakeSigner#AUTHORITIES}, prefixed with {@link FakeSigner#PACKAGE_NAME}. Besides
+ * queries it answers the large payload call() described in {@link LargePayloads}, unless
+ * {@link FakeSigner#largePayloads} is off.
+ */
+public class FakeSignerProvider extends ContentProvider {
+
+	private static final String[] COLUMNS = { "signature", "result", "event" };
+
+	/** Registers {@link FakeSigner}'s providers and its nostrsigner: activity with the shadow PackageManager. */
+	static void install(Context context) {
+		for (String type : FakeSigner.AUTHORITIES) {
+			Robolectric.setupContentProvider(FakeSignerProvider.class, FakeSigner.PACKAGE_NAME + "." + type);
+		}
+
+		ApplicationInfo applicationInfo = new ApplicationInfo();
+		applicationInfo.packageName = FakeSigner.PACKAGE_NAME;
+		PackageInfo packageInfo = new PackageInfo();
+		packageInfo.packageName = FakeSigner.PACKAGE_NAME;
+		packageInfo.applicationInfo = applicationInfo;
+		packageInfo.versionCode = 1;
+		shadowOf(context.getPackageManager()).installPackage(packageInfo);
+
+		ResolveInfo resolveInfo = new ResolveInfo();
+		resolveInfo.activityInfo = new ActivityInfo();
+		resolveInfo.activityInfo.packageName = FakeSigner.PACKAGE_NAME;
+		resolveInfo.activityInfo.name = FakeSignerActivity.class.getName();
+		resolveInfo.activityInfo.applicationInfo = applicationInfo;
+		shadowOf(context.getPackageManager())
+				.addResolveInfoForIntent(new Intent(Intent.ACTION_VIEW, Uri.parse("nostrsigner:")), resolveInfo);
+	}
+
+	@Override
+	public boolean onCreate() {
+		return true;
+	}
+
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		FakeSigner.providerQueries.incrementAndGet();
+		if (FakeSigner.shouldFallBack()) {
+			return null;
+		}
+		String type = uri.getAuthority().substring(FakeSigner.PACKAGE_NAME.length() + 1);
+		// Projections are {content, pubKey, current user}; GET_PUBLIC_KEY only sends {"login"}.
+		String content = projection != null && projection.length > 0 ? projection[0] : null;
+		String pubKey = projection != null && projection.length > 1 ? projection[1] : null;
+		String[] answer;
+		try {
+			answer = FakeSigner.handle(type, content, pubKey);
+		} catch (FakeSigner.Rejected e) {
+			MatrixCursor rejected = new MatrixCursor(new String[] { "rejected" });
+			rejected.addRow(new Object[] { "true" });
+			return rejected;
+		}
+		MatrixCursor cursor = new MatrixCursor(COLUMNS);
+		cursor.addRow(new Object[] { answer[0], answer[0], answer[1] });
+		return cursor;
+	}
+
+	@Override
+	public Bundle call(String method, String arg, Bundle extras) {
+		if (!FakeSigner.largePayloads) {
+			return null;
+		}
+		FakeSigner.largePayloadCalls.incrementAndGet();
+		Bundle result = new Bundle();
+		try {
+			String content = LargePayloads.readFully(extras.getParcelable(LargePayloads.EXTRA_CONTENT));
+			String[] answer = FakeSigner.handle(method, content, extras.getString(LargePayloads.EXTRA_PUB_KEY));
+			putValue(result, LargePayloads.RESULT_SIGNATURE, answer[0]);
+			putValue(result, LargePayloads.RESULT_EVENT, answer[1]);
+		} catch (FakeSigner.Rejected e) {
+			result.putBoolean(LargePayloads.RESULT_REJECTED, true);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return result;
+	}
+
+	// Large values go back through a pipe too, as a real signer's would.
+	private static void putValue(Bundle bundle, String key, String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.length() > Fixtures.LARGE_PAYLOAD_THRESHOLD) {
+			bundle.putParcelable(key, LargePayloads.pipe(value));
+		} else {
+			bundle.putString(key, value);
+		}
+	}
+
+	@Override
+	public String getType(Uri uri) {
+		return null;
+	}
+
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		return null;
+	}
+
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		return 0;
+	}
+
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		return 0;
+	}
+}
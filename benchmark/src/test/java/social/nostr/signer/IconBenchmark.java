@@ -0,0 +1,59 @@
+package social.nostr.signer;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+/** Signer icon rendering and base64 encoding, cold (render and write) and warm (read from disk). */
+@RunWith(RobolectricTestRunner.class)
+public class IconBenchmark {
+
+	private Context context;
+	private SignerIconCache cache;
+	private File cacheDir;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		FakeSignerProvider.install(context);
+		cache = new SignerIconCache(context);
+		cacheDir = new File(context.getCacheDir(), "nostr-signer-icons");
+	}
+
+	@Test
+	public void iconCold() throws Exception {
+		Microbench.run("icon.cold.96px", 100, () -> {
+			clearCacheDir();
+			return cache.getIcon(context, FakeSigner.PACKAGE_NAME, 96);
+		});
+	}
+
+	@Test
+	public void iconWarm() throws Exception {
+		cache.getIcon(context, FakeSigner.PACKAGE_NAME, 96);
+		Microbench.run("icon.warm.96px", 1_000, () -> cache.getIcon(context, FakeSigner.PACKAGE_NAME, 96));
+	}
+
+	@Test
+	public void installedSignerAppsWithIcons() throws Exception {
+		NostrSigner signer = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics());
+		signer.getInstalledSignerApps(context, true, 48);
+		Microbench.run("signers.getInstalledSignerApps.icons", 1_000, () -> signer.getInstalledSignerApps(context, true, 48));
+	}
+
+	private void clearCacheDir() {
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+}
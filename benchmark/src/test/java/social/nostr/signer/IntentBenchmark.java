@@ -0,0 +1,31 @@
+package social.nostr.signer;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** nostrsigner: intent construction for the activity fallback. */
+@RunWith(RobolectricTestRunner.class)
+public class IntentBenchmark {
+
+	@Test
+	public void signEventIntent() throws Exception {
+		SignerRequest request = new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, null,
+				Fixtures.NPUB, "id-1");
+		Microbench.run("intent.signEvent", 20_000, () -> request.toIntent("id-1"));
+	}
+
+	@Test
+	public void decryptIntent() throws Exception {
+		SignerRequest request = new SignerRequest("nip44_decrypt", FakeSigner.PACKAGE_NAME, Fixtures.payload(4096),
+				Fixtures.PUBKEY, Fixtures.NPUB, "id-1");
+		Microbench.run("intent.nip44Decrypt.4KiB", 20_000, () -> request.toIntent("id-1"));
+	}
+
+	@Test
+	public void requestKey() throws Exception {
+		SignerRequest request = new SignerRequest("nip44_decrypt", FakeSigner.PACKAGE_NAME, Fixtures.payload(4096),
+				Fixtures.PUBKEY, Fixtures.NPUB, "id-1");
+		Microbench.run("request.key.4KiB", 20_000, request::key);
+	}
+}
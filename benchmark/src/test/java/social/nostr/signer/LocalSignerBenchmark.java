@@ -0,0 +1,118 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * {@link LocalSigner} against the same operations through {@link NostrSigner} and the fake
+ * signer's provider. Keys are added in memory, as Robolectric has no Android Keystore.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class LocalSignerBenchmark {
+
+	private static final byte[] PEER_SECRET_KEY = Hex.decode("0000000000000000000000000000000000000000000000000000000000000007");
+
+	private Context context;
+	private LocalSigner local;
+	private NostrSigner external;
+	private String npub;
+	private String peerPubKey;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		FakeSignerProvider.install(context);
+		FakeSigner.reset();
+		local = new LocalSigner(new LocalKeyStore(context), 256, true);
+		npub = local.addKey(FakeSigner.DEFAULT_SECRET_KEY);
+		external = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics());
+		peerPubKey = Hex.encode(Secp256k1.publicKey(PEER_SECRET_KEY));
+	}
+
+	@After
+	public void tearDown() {
+		external.release();
+		FakeSigner.reset();
+	}
+
+	@Test
+	public void localAndFakeSignerAgree() throws Exception {
+		assertEquals(FakeSigner.npub(), npub);
+		String[] signed = local.signEvent(context, LocalSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub);
+		JSONObject event = new JSONObject(signed[1]);
+		assertTrue(Secp256k1.verify(Nip01.eventId(event), Hex.decode(event.getString("pubkey")), Hex.decode(signed[0])));
+
+		String cipher = local.nip44Encrypt(context, LocalSigner.PACKAGE_NAME, "hello", peerPubKey, npub);
+		assertEquals("hello", external.nip44Decrypt(context, FakeSigner.PACKAGE_NAME, cipher, peerPubKey, npub));
+		cipher = external.nip04Encrypt(context, FakeSigner.PACKAGE_NAME, "hello", peerPubKey, npub);
+		assertEquals("hello", local.nip04Decrypt(context, LocalSigner.PACKAGE_NAME, cipher, peerPubKey, npub));
+	}
+
+	@Test
+	public void nip44DecryptLocal() throws Exception {
+		String cipher = Nip44.encrypt(Fixtures.payload(256), Nip44.conversationKey(PEER_SECRET_KEY,
+				Hex.decode(FakeSigner.publicKeyHex())));
+		Microbench.run("local.nip44Decrypt.256B", 5_000,
+				() -> local.nip44Decrypt(context, LocalSigner.PACKAGE_NAME, cipher, peerPubKey, npub));
+	}
+
+	@Test
+	public void nip44DecryptLocalWithoutKeyCache() throws Exception {
+		LocalSigner uncached = new LocalSigner(new LocalKeyStore(context), 0, true);
+		uncached.addKey(FakeSigner.DEFAULT_SECRET_KEY);
+		String cipher = Nip44.encrypt(Fixtures.payload(256), Nip44.conversationKey(PEER_SECRET_KEY,
+				Hex.decode(FakeSigner.publicKeyHex())));
+		Microbench.run("local.nip44Decrypt.256B.noKeyCache", 200,
+				() -> uncached.nip44Decrypt(context, LocalSigner.PACKAGE_NAME, cipher, peerPubKey, npub));
+	}
+
+	@Test
+	public void conversationKeyCacheEvictsAndZeroes() {
+		ConversationKeyCache cache = new ConversationKeyCache(2);
+		byte[] first = new byte[] { 1, 2, 3 };
+		cache.put("a", first);
+		cache.put("b", new byte[] { 4 });
+		byte[] copy = cache.get("a");
+		assertArrayEquals(first, copy);
+		copy[0] = 9;
+		assertArrayEquals(first, cache.get("a"));
+		cache.put("c", new byte[] { 5 });
+		assertNull(cache.get("b"));
+		assertEquals(1, cache.stats().evictions);
+
+		String cipher = local.nip44Encrypt(context, LocalSigner.PACKAGE_NAME, "hello", peerPubKey, npub);
+		assertEquals("hello", local.nip44Decrypt(context, LocalSigner.PACKAGE_NAME, cipher, peerPubKey.toUpperCase(), npub));
+		ConversationKeyCache.Stats stats = local.getCacheStats();
+		assertEquals(1, stats.entries);
+		assertEquals(1, stats.misses);
+		assertEquals(1, stats.hits);
+		local.clearCache();
+		assertEquals(0, local.getCacheStats().entries);
+	}
+
+	@Test
+	public void nip44DecryptExternal() throws Exception {
+		String cipher = Nip44.encrypt(Fixtures.payload(256), Nip44.conversationKey(PEER_SECRET_KEY,
+				Hex.decode(FakeSigner.publicKeyHex())));
+		Microbench.run("external.nip44Decrypt.256B", 50,
+				() -> external.nip44Decrypt(context, FakeSigner.PACKAGE_NAME, cipher, peerPubKey, npub));
+	}
+
+	@Test
+	public void signEventLocal() throws Exception {
+		Microbench.run("local.signEvent", 200, () -> local.signEvent(context, LocalSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, npub));
+	}
+}
@@ -0,0 +1,117 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal in-process benchmark harness in the style of JMH: warmup iterations, then measured
+ * iterations reporting the best ns/op and the mean bytes allocated per op. It runs inside the
+ * Robolectric sandbox, where JMH's forked and generated runners cannot load the shadowed
+ * Android classes.
+ *
+ * Results are appended to the file named by the {@code benchmark.results} system property.
+ * If {@code benchmark.baseline} names a results file from an earlier run, a benchmark fails
+ * when it is more than {@link #TOLERANCE} times slower or allocates that much more.
+ */
+final class Microbench {
+
+	interface Op {
+		Object run() throws Exception;
+	}
+
+	static final double TOLERANCE = 1.25;
+
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURED_ITERATIONS = 10;
+
+	// Keeps results reachable so the JIT cannot drop the measured work.
+	static volatile Object blackhole;
+
+	private Microbench() {
+	}
+
+	static void run(String name, int opsPerIteration, Op op) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iterate(op, opsPerIteration);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long totalBytes = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			long bytesBefore = allocatedBytes();
+			long start = System.nanoTime();
+			iterate(op, opsPerIteration);
+			long elapsed = System.nanoTime() - start;
+			totalBytes += allocatedBytes() - bytesBefore;
+			bestNanos = Math.min(bestNanos, elapsed);
+		}
+		double nanosPerOp = (double) bestNanos / opsPerIteration;
+		double bytesPerOp = (double) totalBytes / MEASURED_ITERATIONS / opsPerIteration;
+		System.out.printf(Locale.ROOT, "%-40s %12.1f ns/op %12.1f B/op%n", name, nanosPerOp, bytesPerOp);
+		record(name, nanosPerOp, bytesPerOp);
+		compareWithBaseline(name, nanosPerOp, bytesPerOp);
+	}
+
+	private static void iterate(Op op, int ops) throws Exception {
+		for (int i = 0; i < ops; i++) {
+			blackhole = op.run();
+		}
+	}
+
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	private static synchronized void record(String name, double nanosPerOp, double bytesPerOp) throws IOException {
+		String path = System.getProperty("benchmark.results");
+		if (path == null) {
+			return;
+		}
+		File file = new File(path);
+		file.getParentFile().mkdirs();
+		try (FileWriter writer = new FileWriter(file, StandardCharsets.UTF_8, true)) {
+			writer.write(String.format(Locale.ROOT, "%s,%.1f,%.1f%n", name, nanosPerOp, bytesPerOp));
+		}
+	}
+
+	private static void compareWithBaseline(String name, double nanosPerOp, double bytesPerOp) throws IOException {
+		String path = System.getProperty("benchmark.baseline");
+		if (path == null) {
+			return;
+		}
+		double[] baseline = readBaseline(new File(path)).get(name);
+		if (baseline == null) {
+			return;
+		}
+		assertTrue(String.format(Locale.ROOT, "%s: %.1f ns/op, baseline %.1f", name, nanosPerOp, baseline[0]),
+				nanosPerOp <= baseline[0] * TOLERANCE);
+		// Allow a little slack for ops that allocate next to nothing.
+		assertTrue(String.format(Locale.ROOT, "%s: %.1f B/op, baseline %.1f", name, bytesPerOp, baseline[1]),
+				bytesPerOp <= baseline[1] * TOLERANCE + 64);
+	}
+
+	private static Map<String, double[]> readBaseline(File file) throws IOException {
+		Map<String, double[]> baseline = new HashMap<>();
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		for (String line : lines) {
+			String[] fields = line.split(",");
+			if (fields.length == 3) {
+				baseline.put(fields[0], new double[] { Double.parseDouble(fields[1]), Double.parseDouble(fields[2]) });
+			}
+		}
+		return baseline;
+	}
+}
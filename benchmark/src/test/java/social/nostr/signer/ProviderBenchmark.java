@@ -0,0 +1,84 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/**
+ * Provider round trips through {@link NostrSigner} against {@link FakeSignerProvider} in
+ * passthrough mode: client lookup, query and cursor parsing, with the decrypt cache disabled so
+ * every call reaches the provider.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ProviderBenchmark {
+
+	private Context context;
+	private NostrSigner signer;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		FakeSignerProvider.install(context);
+		FakeSigner.passthrough = true;
+		signer = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics());
+	}
+
+	@After
+	public void tearDown() {
+		signer.release();
+		FakeSigner.reset();
+	}
+
+	@Test
+	public void getPublicKey() throws Exception {
+		Microbench.run("provider.getPublicKey", 2_000, () -> signer.getPublicKey(context, FakeSigner.PACKAGE_NAME));
+	}
+
+	@Test
+	public void signEvent() throws Exception {
+		Microbench.run("provider.signEvent", 2_000,
+				() -> signer.signEvent(context, FakeSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, Fixtures.NPUB));
+	}
+
+	@Test
+	public void nip44DecryptSmall() throws Exception {
+		String cipher = Fixtures.payload(256);
+		Microbench.run("provider.nip44Decrypt.256B", 2_000, () -> signer.nip44Decrypt(context,
+				FakeSigner.PACKAGE_NAME, cipher, Fixtures.PUBKEY, Fixtures.NPUB));
+	}
+
+	@Test
+	public void nip44DecryptLarge() throws Exception {
+		String cipher = Fixtures.payload(64 * 1024);
+		Microbench.run("provider.nip44Decrypt.64KiB", 200, () -> signer.nip44Decrypt(context,
+				FakeSigner.PACKAGE_NAME, cipher, Fixtures.PUBKEY, Fixtures.NPUB));
+	}
+
+	@Test
+	public void prewarmReportsHealth() {
+		assertNull(signer.health(FakeSigner.PACKAGE_NAME));
+		SignerProviderClients.Health health = signer.prewarm(context, FakeSigner.PACKAGE_NAME);
+		assertNotNull(health);
+		assertTrue(health.latencyNanos > 0);
+		assertTrue(health.seenAt > 0);
+		assertNull(signer.probe(context, "com.example.notinstalled"));
+		signer.release();
+		assertNull(signer.health(FakeSigner.PACKAGE_NAME));
+	}
+
+	@Test
+	public void isExternalSignerInstalled() throws Exception {
+		Microbench.run("signers.isExternalSignerInstalled", 10_000,
+				() -> signer.isExternalSignerInstalled(context, FakeSigner.PACKAGE_NAME));
+	}
+}
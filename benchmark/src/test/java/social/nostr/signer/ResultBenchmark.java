@@ -0,0 +1,104 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+/** JSObject building for the results the plugin hands back to JS. */
+@RunWith(RobolectricTestRunner.class)
+public class ResultBenchmark {
+
+	@Test
+	public void signEventResult() throws Exception {
+		SignerRequest request = new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, null,
+				Fixtures.NPUB, "id-1");
+		Microbench.run("result.signEvent", 20_000, () -> request.toResult(FakeSigner.PASSTHROUGH_SIGNATURE, Fixtures.EVENT_JSON));
+	}
+
+	@Test
+	public void signEventFieldsResult() throws Exception {
+		// A long-form event: the fields format skips over the content instead of echoing it back.
+		JSONObject unsigned = new JSONObject(Fixtures.EVENT_JSON);
+		unsigned.put("content", Fixtures.payload(32 * 1024));
+		String[] signed = FakeSigner.handle("sign_event", unsigned.toString(), null);
+		JSONObject event = new JSONObject(signed[1]);
+		SignerRequest request = new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, unsigned.toString(), null,
+				Fixtures.NPUB, "id-1", SignedEventResult.FORMAT_FIELDS);
+		JSObject ret = request.toResult(signed[0], signed[1]);
+		assertEquals(event.getString("id"), ret.getString("id"));
+		assertEquals(event.getString("sig"), ret.getString("sig"));
+		assertEquals(event.getString("pubkey"), ret.getString("pubkey"));
+		assertEquals(event.getLong("created_at"), ret.getLong("created_at"));
+		assertFalse(ret.has("event"));
+
+		SignerRequest json = new SignerRequest("sign_event", FakeSigner.PACKAGE_NAME, unsigned.toString(), null,
+				Fixtures.NPUB, "id-1");
+		Microbench.run("result.signEvent.json.32k", 2_000, () -> json.toResult(signed[0], signed[1]).toString());
+		Microbench.run("result.signEvent.fields.32k", 2_000, () -> request.toResult(signed[0], signed[1]).toString());
+	}
+
+	@Test
+	public void decryptBatchChunk() throws Exception {
+		String plain = Fixtures.payload(256);
+		Microbench.run("result.decryptBatchChunk.25", 2_000, () -> {
+			JSArray results = new JSArray();
+			for (int i = 0; i < 25; i++) {
+				JSObject item = new JSObject();
+				item.put("id", "item-" + i);
+				item.put("result", plain);
+				results.put(item);
+			}
+			JSObject chunk = new JSObject();
+			chunk.put("batchId", "batch-1");
+			chunk.put("results", results);
+			return chunk;
+		});
+	}
+
+	@Test
+	public void installedSignerApps() throws Exception {
+		// A 48px icon encodes to a few KiB of base64, which is copied again into iconUrl.
+		SignerAppInfo app = new SignerAppInfo("Fake Signer", FakeSigner.PACKAGE_NAME, Fixtures.payload(4096));
+		Microbench.run("result.installedSignerApps.4", 10_000, () -> {
+			JSArray apps = new JSArray();
+			for (int i = 0; i < 4; i++) {
+				JSObject info = new JSObject();
+				info.put("name", app.name);
+				info.put("packageName", app.packageName);
+				info.put("iconData", app.iconData);
+				info.put("iconUrl", "data:image/png;base64," + app.iconData);
+				apps.put(info);
+			}
+			JSObject ret = new JSObject();
+			ret.put("apps", apps);
+			return ret;
+		});
+	}
+
+	@Test
+	public void metricsSnapshot() throws Exception {
+		SignerMetrics metrics = new SignerMetrics();
+		for (int i = 0; i < 10_000; i++) {
+			metrics.recordLatency(SignerMetrics.STAGE_PROVIDER_QUERY, 50_000L + i * 100L);
+			metrics.recordLatency(SignerMetrics.STAGE_CURSOR_READ, 5_000L + i);
+		}
+		metrics.count(FakeSigner.PACKAGE_NAME, "signEvent", SignerMetrics.OUTCOME_PROVIDER);
+		Microbench.run("result.metricsSnapshot", 2_000, metrics::snapshot);
+	}
+
+	@Test
+	public void metricsRecord() throws Exception {
+		SignerMetrics metrics = new SignerMetrics();
+		Microbench.run("metrics.recordLatency", 100_000, () -> {
+			metrics.recordLatency(SignerMetrics.STAGE_QUEUE, 12_345L);
+			return null;
+		});
+	}
+}
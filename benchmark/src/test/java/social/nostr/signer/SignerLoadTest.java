@@ -0,0 +1,286 @@
+package social.nostr.signer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drives the plugin's native layer against {@link FakeSigner}: provider throughput through
+ * {@link SignerExecutor}, signing behind a background backlog, rejections and fallbacks, and
+ * crash recovery.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SignerLoadTest {
+
+	private static final int REQUESTS = 200;
+
+	private Context context;
+	private NostrSigner signer;
+	private SignerExecutor executor;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		FakeSignerProvider.install(context);
+		FakeSigner.reset();
+		signer = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics());
+		executor = new SignerExecutor(4, 2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+		signer.release();
+		FakeSigner.reset();
+	}
+
+	@Test
+	public void providerThroughput() throws Exception {
+		FakeSigner.latencyMs = 2;
+		FakeSigner.latencyJitterMs = 3;
+		ConcurrentLinkedQueue<String[]> signed = new ConcurrentLinkedQueue<>();
+		CountDownLatch done = new CountDownLatch(REQUESTS);
+		long start = System.nanoTime();
+		for (int i = 0; i < REQUESTS; i++) {
+			String event = "{\"kind\":1,\"created_at\":1700000000,\"tags\":[],\"content\":\"load " + i + "\"}";
+			executor.execute(FakeSigner.PACKAGE_NAME, () -> {
+				try {
+					signed.add(signer.signEvent(context, FakeSigner.PACKAGE_NAME, event, FakeSigner.npub()));
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue("Timed out", done.await(60, TimeUnit.SECONDS));
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf(Locale.ROOT, "signEvent: %d requests in %.2fs, %.0f/s%n", REQUESTS, seconds, REQUESTS / seconds);
+
+		assertEquals(REQUESTS, signed.size());
+		for (String[] result : signed) {
+			assertNotNull(result);
+			JSONObject event = new JSONObject(result[1]);
+			assertEquals(result[0], event.getString("sig"));
+			assertEquals(Hex.encode(Nip01.eventId(event)), event.getString("id"));
+			assertTrue(Secp256k1.verify(Hex.decode(event.getString("id")), Hex.decode(event.getString("pubkey")),
+					Hex.decode(result[0])));
+		}
+	}
+
+	@Test
+	public void nip44RoundTrip() {
+		byte[] peerSecretKey = Hex.decode("0000000000000000000000000000000000000000000000000000000000000002");
+		String peerPubKey = Hex.encode(Secp256k1.publicKey(peerSecretKey));
+		String cipher = signer.nip44Encrypt(context, FakeSigner.PACKAGE_NAME, "hello", peerPubKey, FakeSigner.npub());
+		byte[] conversationKey = Nip44.conversationKey(peerSecretKey, Hex.decode(FakeSigner.publicKeyHex()));
+		assertEquals("hello", Nip44.decrypt(cipher, conversationKey));
+
+		String reply = Nip44.encrypt("hi back", conversationKey);
+		assertEquals("hi back", signer.nip44Decrypt(context, FakeSigner.PACKAGE_NAME, reply, peerPubKey, FakeSigner.npub()));
+	}
+
+	@Test
+	public void rejectedCombinationsGoStraightToTheIntent() throws Exception {
+		SignerRoutes routes = new SignerRoutes(60_000);
+		NostrSigner routed = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics(), routes);
+		try {
+			FakeSigner.fallbackRate = 1;
+			String note = Fixtures.EVENT_JSON;
+			String reaction = new JSONObject(Fixtures.EVENT_JSON).put("kind", 7).toString();
+			assertNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, note, FakeSigner.npub()));
+			assertNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, note, FakeSigner.npub()));
+			assertEquals(1, FakeSigner.providerQueries.get());
+			assertEquals("intent", routes.snapshot().getJSONObject(0).getString("route"));
+			assertEquals(1, routes.snapshot().getJSONObject(0).getLong("skipped"));
+
+			FakeSigner.fallbackRate = 0;
+			assertNotNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, reaction, FakeSigner.npub()));
+			assertEquals(2, FakeSigner.providerQueries.get());
+
+			routes.approvedByIntent(FakeSigner.PACKAGE_NAME, "sign_event", note);
+			assertNotNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, note, FakeSigner.npub()));
+			assertEquals(3, FakeSigner.providerQueries.get());
+
+			FakeSigner.fallbackRate = 1;
+			assertNull(routed.nip04Encrypt(context, FakeSigner.PACKAGE_NAME, "hi", FakeSigner.publicKeyHex(), FakeSigner.npub()));
+			routes.clear(FakeSigner.PACKAGE_NAME);
+			assertEquals(0, routes.snapshot().length());
+			assertNull(routed.nip04Encrypt(context, FakeSigner.PACKAGE_NAME, "hi", FakeSigner.publicKeyHex(), FakeSigner.npub()));
+			assertEquals(5, FakeSigner.providerQueries.get());
+		} finally {
+			routed.release();
+		}
+	}
+
+	@Test
+	public void rejectionsAndFallbacks() throws Exception {
+		FakeSigner.rejectionRate = 0.2;
+		FakeSigner.fallbackRate = 0.2;
+		AtomicInteger unanswered = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(REQUESTS);
+		for (int i = 0; i < REQUESTS; i++) {
+			executor.execute(FakeSigner.PACKAGE_NAME, () -> {
+				try {
+					if (signer.nip04Encrypt(context, FakeSigner.PACKAGE_NAME, "hi", FakeSigner.publicKeyHex(), FakeSigner.npub()) == null) {
+						unanswered.incrementAndGet();
+					}
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+		assertTrue("Timed out", done.await(60, TimeUnit.SECONDS));
+		assertEquals(REQUESTS, FakeSigner.providerQueries.get());
+		assertEquals(FakeSigner.rejections.get() + FakeSigner.fallbacks.get(), unanswered.get());
+		assertTrue(unanswered.get() > 0);
+	}
+
+	@Test
+	public void signBehindBackgroundWork() throws Exception {
+		FakeSigner.latencyMs = 5;
+		SignerExecutor prioritized = new SignerExecutor(4, 2, 1);
+		try {
+			long fifo = signBehindBacklog(executor, SignerExecutor.BACKGROUND, 2);
+			long interactive = signBehindBacklog(prioritized, SignerExecutor.INTERACTIVE, 1);
+			System.out.printf(Locale.ROOT, "signEvent behind %d queued decrypts: %.1fms FIFO, %.1fms interactive%n", REQUESTS,
+					fifo / 1e6, interactive / 1e6);
+		} finally {
+			prioritized.shutdown();
+		}
+	}
+
+	// Queues REQUESTS background decrypts, then times one signEvent at the given priority.
+	private long signBehindBacklog(SignerExecutor executor, int priority, int maxBackground) throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch backlog = new CountDownLatch(REQUESTS);
+		String cipher = signer.nip44Encrypt(context, FakeSigner.PACKAGE_NAME, "hello", FakeSigner.publicKeyHex(), FakeSigner.npub());
+		for (int i = 0; i < REQUESTS; i++) {
+			executor.execute(FakeSigner.PACKAGE_NAME, SignerExecutor.BACKGROUND, () -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					signer.nip44Decrypt(context, FakeSigner.PACKAGE_NAME, cipher, FakeSigner.publicKeyHex(), FakeSigner.npub());
+				} finally {
+					running.decrementAndGet();
+					backlog.countDown();
+				}
+			});
+		}
+		CountDownLatch signed = new CountDownLatch(1);
+		AtomicReference<String[]> result = new AtomicReference<>();
+		long start = System.nanoTime();
+		executor.execute(FakeSigner.PACKAGE_NAME, priority, () -> {
+			try {
+				result.set(signer.signEvent(context, FakeSigner.PACKAGE_NAME, Fixtures.EVENT_JSON, FakeSigner.npub()));
+			} finally {
+				signed.countDown();
+			}
+		});
+		assertTrue("Timed out", signed.await(60, TimeUnit.SECONDS));
+		long elapsed = System.nanoTime() - start;
+		// Asserted here, as a failure on a pool thread would not fail the test.
+		assertNotNull(result.get());
+		assertTrue("Timed out", backlog.await(60, TimeUnit.SECONDS));
+		assertTrue(maxRunning.get() <= maxBackground);
+		return elapsed;
+	}
+
+	@Test
+	public void largeEventGoesThroughPipe() throws Exception {
+		String event = contactList(5000);
+		String[] signed = signer.signEvent(context, FakeSigner.PACKAGE_NAME, event, FakeSigner.npub());
+
+		assertNotNull(signed);
+		assertEquals(1, FakeSigner.largePayloadCalls.get());
+		assertEquals(0, FakeSigner.providerQueries.get());
+		JSONObject signedEvent = new JSONObject(signed[1]);
+		assertEquals(5000, signedEvent.getJSONArray("tags").length());
+		assertTrue(Secp256k1.verify(Nip01.eventId(signedEvent), Hex.decode(FakeSigner.publicKeyHex()), Hex.decode(signed[0])));
+	}
+
+	@Test
+	public void largePayloadFallsBackToQuery() {
+		FakeSigner.largePayloads = false;
+		String[] signed = signer.signEvent(context, FakeSigner.PACKAGE_NAME, contactList(5000), FakeSigner.npub());
+
+		assertNotNull(signed);
+		assertEquals(1, FakeSigner.providerQueries.get());
+	}
+
+	@Test
+	public void signersWithoutCallAreNotAskedAgain() throws Exception {
+		SignerRoutes routes = new SignerRoutes(60_000);
+		NostrSigner routed = new NostrSigner(0, Fixtures.LARGE_PAYLOAD_THRESHOLD, new SignerMetrics(), routes);
+		try {
+			FakeSigner.largePayloads = false;
+			assertNotNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, contactList(5000), FakeSigner.npub()));
+			assertNotNull(routed.signEvent(context, FakeSigner.PACKAGE_NAME, contactList(5000), FakeSigner.npub()));
+			assertEquals(2, FakeSigner.providerQueries.get());
+
+			JSONObject route = null;
+			for (int i = 0; i < routes.snapshot().length(); i++) {
+				JSONObject entry = routes.snapshot().getJSONObject(i);
+				if (LargePayloads.route("SIGN_EVENT").equals(entry.getString("method"))) {
+					route = entry;
+				}
+			}
+			assertNotNull(route);
+			assertEquals(1, route.getLong("rejected"));
+			assertEquals(1, route.getLong("skipped"));
+		} finally {
+			routed.release();
+		}
+	}
+
+	@Test
+	public void smallPayloadUsesQuery() {
+		signer.signEvent(context, FakeSigner.PACKAGE_NAME, contactList(10), FakeSigner.npub());
+
+		assertEquals(0, FakeSigner.largePayloadCalls.get());
+		assertEquals(1, FakeSigner.providerQueries.get());
+	}
+
+	@Test
+	public void recoversAfterCrash() {
+		FakeSigner.crashRate = 1;
+		try {
+			signer.getPublicKey(context, FakeSigner.PACKAGE_NAME);
+			fail("Expected the injected crash to surface");
+		} catch (IllegalStateException e) {
+			assertEquals(1, FakeSigner.crashes.get());
+		}
+		FakeSigner.crashRate = 0;
+		assertEquals(FakeSigner.npub(), signer.getPublicKey(context, FakeSigner.PACKAGE_NAME));
+	}
+
+	// A kind 3 contact list, about 75 bytes per follow.
+	private static String contactList(int follows) {
+		StringBuilder tags = new StringBuilder();
+		for (int i = 0; i < follows; i++) {
+			if (i > 0) {
+				tags.append(',');
+			}
+			tags.append(String.format(Locale.ROOT, "[\"p\",\"%064x\"]", i));
+		}
+		return "{\"kind\":3,\"created_at\":1700000000,\"tags\":[" + tags + "],\"content\":\"\"}";
+	}
+}
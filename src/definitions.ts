@@ -1,51 +1,337 @@
+import type { PluginListenerHandle } from '@capacitor/core';
+
 export interface NostrSignerPlugin {
-  getInstalledSignerApps(): Promise<{ apps: AppInfo[] }>;
+  getInstalledSignerApps(options?: {
+    includeIcons?: boolean;
+    iconSize?: number;
+  }): Promise<{ apps: AppInfo[] }>;
+  getSignerAppIcon(options: {
+    packageName: string;
+    size?: number;
+  }): Promise<{ iconData: string; iconUrl: string }>;
   isExternalSignerInstalled(options?: {
     packageName: string;
   }): Promise<{ installed: boolean }>;
   getPublicKey(options?: {
     permissions: string;
+    priority?: SignerPriority;
   }): Promise<{ npub: string; package: string }>;
   setPackageName(options: { packageName: string }): Promise<void>;
+  logout(options?: { npub?: string }): Promise<void>;
+  getAccounts(): Promise<{ accounts: SignerAccount[] }>;
+  useLocalKey(options?: {
+    nsec?: string;
+    npub?: string;
+  }): Promise<{ npub: string; package: string }>;
+  getLocalKeys(): Promise<{ npubs: string[] }>;
+  removeLocalKey(options: { npub: string }): Promise<void>;
+  connectBunker(options: {
+    bunkerUrl: string;
+    permissions?: string;
+  }): Promise<{ npub: string; package: string }>;
   signEvent(options: {
     eventJson: string;
-    eventId: string;
-    npub: string;
+    eventId?: string;
+    npub?: string;
+    format?: 'json';
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ signature: string; id: string; event: string }>;
+  signEvent(options: {
+    eventJson: string;
+    eventId?: string;
+    npub?: string;
+    format: 'fields' | 'sig';
+    timeoutMs?: number;
+    priority?: SignerPriority;
+  }): Promise<SignedEventFields>;
+  signEvents(options: {
+    events: { eventJson: string; eventId?: string }[];
+    npub?: string;
+    format?: SignedEventFormat;
+    id?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
+  }): Promise<{ results: SignEventsResult[] }>;
   nip04Encrypt(options: {
     plainText: string;
     pubKey: string;
-    npub: string;
+    npub?: string;
     id?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ result: string; id: string }>;
   nip04Decrypt(options: {
     encryptedText: string;
     pubKey: string;
-    npub: string;
+    npub?: string;
     id?: string;
+    eventId?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ result: string; id: string }>;
   nip44Encrypt(options: {
     plainText: string;
     pubKey: string;
-    npub: string;
+    npub?: string;
     id?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ result: string; id: string }>;
   nip44Decrypt(options: {
     encryptedText: string;
     pubKey: string;
-    npub: string;
+    npub?: string;
     id?: string;
+    eventId?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ result: string; id: string }>;
+  nip04DecryptBatch(options: {
+    items: DecryptBatchItem[];
+    npub?: string;
+    batchId?: string;
+    chunkSize?: number;
+    timeoutMs?: number;
+    priority?: SignerPriority;
+  }): Promise<{ results: DecryptBatchResult[] }>;
+  nip44DecryptBatch(options: {
+    items: DecryptBatchItem[];
+    npub?: string;
+    batchId?: string;
+    chunkSize?: number;
+    timeoutMs?: number;
+    priority?: SignerPriority;
+  }): Promise<{ results: DecryptBatchResult[] }>;
   decryptZapEvent(options: {
     eventJson: string;
-    npub: string;
+    npub?: string;
     id?: string;
+    eventId?: string;
+    timeoutMs?: number;
+    priority?: SignerPriority;
   }): Promise<{ result: string; id: string }>;
+  verifyEvents(options: {
+    events: (NostrEvent | string)[];
+  }): Promise<{ results: VerifyEventResult[] }>;
+  getSignerHealth(options?: {
+    packageName?: string;
+    npub?: string;
+    probe?: boolean;
+  }): Promise<SignerHealth>;
+  cancel(options: { id: string }): Promise<{ cancelled: number }>;
+  clearCache(): Promise<void>;
+  getCacheStats(): Promise<CacheStats>;
+  getStoredDecryptions(options: {
+    items: StoredDecryptionQuery[];
+    npub?: string;
+  }): Promise<{ results: StoredDecryption[] }>;
+  getRoutingTable(options?: {
+    reset?: boolean;
+  }): Promise<{ routes: SignerRoute[] }>;
+  getQueueStats(options?: { reset?: boolean }): Promise<QueueStats>;
+  getMetrics(options?: { reset?: boolean }): Promise<SignerMetrics>;
+  addListener(
+    eventName: 'decryptBatchChunk',
+    listenerFunc: (chunk: DecryptBatchChunk) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: 'signersChanged',
+    listenerFunc: (change: SignersChange) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: 'bunkerAuthUrl',
+    listenerFunc: (challenge: BunkerAuthChallenge) => void,
+  ): Promise<PluginListenerHandle>;
+  addListener(
+    eventName: 'metrics',
+    listenerFunc: (metrics: SignerMetrics) => void,
+  ): Promise<PluginListenerHandle>;
+}
+
+export interface SignerAccount {
+  npub: string;
+  package: string;
+  permissions?: string;
+  active: boolean;
+}
+
+export interface SignerHealth {
+  packageName: string;
+  ready: boolean;
+  latencyMs?: number;
+  lastSeenAt?: number;
+}
+
+export interface NostrEvent {
+  id: string;
+  pubkey: string;
+  created_at: number;
+  kind: number;
+  tags: string[][];
+  content: string;
+  sig: string;
+}
+
+export interface VerifyEventResult {
+  id: string;
+  valid: boolean;
+  error?: string;
 }
 
 export interface AppInfo {
   name: string;
   packageName: string;
-  iconData: string;
-  iconUrl: string;
+  iconData?: string;
+  iconUrl?: string;
+}
+
+export type SignedEventFormat = 'json' | 'fields' | 'sig';
+
+export type SignerPriority = 'interactive' | 'normal' | 'background';
+
+export interface SignedEventFields {
+  id: string;
+  sig: string;
+  pubkey?: string;
+  created_at?: number;
+}
+
+export interface SignEventsResult {
+  id: string;
+  signature?: string;
+  event?: string;
+  sig?: string;
+  pubkey?: string;
+  created_at?: number;
+  error?: string;
+}
+
+export interface DecryptBatchItem {
+  encryptedText: string;
+  pubKey: string;
+  id: string;
+  eventId?: string;
+}
+
+export interface DecryptBatchResult {
+  id: string;
+  result?: string;
+  error?: string;
+}
+
+export interface DecryptBatchChunk {
+  batchId: string;
+  results: DecryptBatchResult[];
+}
+
+export interface CacheStats {
+  entries: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+  conversationKeys: ConversationKeyCacheStats;
+  store: DecryptStoreStats;
+}
+
+export interface DecryptStoreStats {
+  entries: number;
+  bytes: number;
+  maxBytes: number;
+  hits: number;
+  misses: number;
+  compactions: number;
+}
+
+export interface StoredDecryptionQuery {
+  eventId: string;
+  encryptedText?: string;
+  pubKey?: string;
+  eventJson?: string;
+}
+
+export interface StoredDecryption {
+  eventId: string;
+  method?: 'nip04_decrypt' | 'nip44_decrypt' | 'decrypt_zap_event';
+  result?: string;
+}
+
+export interface ConversationKeyCacheStats {
+  entries: number;
+  maxEntries: number;
+  hits: number;
+  misses: number;
+  evictions: number;
+}
+
+export interface SignersChange {
+  packageName: string;
+  action: 'added' | 'removed' | 'replaced';
+  installed: boolean;
+  packages: string[];
+}
+
+export interface BunkerAuthChallenge {
+  url: string;
+}
+
+export interface LatencyStats {
+  count: number;
+  mean: number;
+  p50: number;
+  p95: number;
+  p99: number;
+  max: number;
+}
+
+export interface SignerRoute {
+  packageName: string;
+  method: string;
+  kind?: number;
+  route: 'provider' | 'intent';
+  retryInMs?: number;
+  answered: number;
+  rejected: number;
+  skipped: number;
+}
+
+export interface QueueStats {
+  parallelism: number;
+  backgroundParallelism: number;
+  running: number;
+  queued: number;
+  interactive: PriorityQueueStats;
+  normal: PriorityQueueStats;
+  background: PriorityQueueStats;
+}
+
+export interface PriorityQueueStats {
+  queued: number;
+  running: number;
+  maxQueued: number;
+  started: number;
+  meanWaitMs: number;
+  maxWaitMs: number;
+}
+
+export interface SignerMetrics {
+  stages: {
+    queue?: LatencyStats;
+    providerQuery?: LatencyStats;
+    cursorRead?: LatencyStats;
+    intentRoundTrip?: LatencyStats;
+    bunkerRoundTrip?: LatencyStats;
+    verify?: LatencyStats;
+  };
+  operations: {
+    packageName: string;
+    method: string;
+    provider: number;
+    intent: number;
+    rejected: number;
+    timedOut: number;
+    cancelled: number;
+  }[];
 }
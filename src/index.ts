@@ -1,10 +1,10 @@
 import { registerPlugin } from '@capacitor/core';
 
-import { NostrSignerPlugin, AppInfo } from './definitions';
+import { NostrSignerPlugin, AppInfo, SignEventsResult } from './definitions';
 
 const NostrSignerPlugin = registerPlugin<NostrSignerPlugin>(
   'NostrSignerPlugin',
 );
 
 export * from './definitions';
-export { NostrSignerPlugin, AppInfo };
+export { NostrSignerPlugin, AppInfo, SignEventsResult };